@@ -0,0 +1,132 @@
+/*
+ * AnnotationBenchmark.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import conll2009.parser.Sentence;
+import gate.srl.ResolvedSentence;
+import gate.srl.SRL;
+import gate.srl.TokenAligner;
+
+/**
+ * Placing the arguments of a whole document: the former search of a
+ * regular expression (made by {@link SRL#regexSafe(String)}) of every
+ * argument in the document text, and the alignment of the words with
+ * the text of their sentence used by the PR now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationBenchmark {
+
+	/** Number of sentences of the document */
+	@Param({"100", "1000"})
+	public int sentences;
+
+	private String documentString;
+
+	private long[] starts;
+
+	private long[] ends;
+
+	/** Resolved sentences of the document */
+	private List<ResolvedSentence> resolved;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		List<String[]> forms = Payloads.sentences(sentences, random);
+		starts = new long[sentences];
+		ends = new long[sentences];
+		documentString = Payloads.document(forms, starts, ends);
+
+		resolved = new ArrayList<ResolvedSentence>(sentences);
+		for (String[] sentenceForms : forms) {
+			Sentence sent = Payloads.sentence(sentenceForms, Math.max(1, sentenceForms.length / 8));
+			sent.processPredArguments();
+			resolved.add(ResolvedSentence.from(sent));
+		}
+	}
+
+	/**
+	 * Pattern of the argument words separated by any white space,
+	 * searched in the whole document (all occurrences).
+	 */
+	@Benchmark
+	public void regexSearch(Blackhole blackhole) {
+		for (ResolvedSentence sent : resolved) {
+			String[] forms = sent.getForms();
+			for (ResolvedSentence.Role role : sent.getRoles()) {
+				StringBuilder patternString = new StringBuilder();
+				int[] tokens = role.getTokens();
+				for (int i = 0; i < tokens.length; i++) {
+					patternString.append("((").append(SRL.regexSafe(forms[tokens[i]])).append(')');
+					if (i < tokens.length - 1) {
+						patternString.append("(\\s)*");
+					}
+					patternString.append(')');
+				}
+
+				Matcher matcher = Pattern.compile(patternString.toString()).matcher(documentString);
+				while (matcher.find()) {
+					blackhole.consume(matcher.start());
+					blackhole.consume(matcher.end());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Words aligned with the text of their sentence once, each argument
+	 * spans from its first to its last word.
+	 */
+	@Benchmark
+	public void tokenAlignment(Blackhole blackhole) {
+		for (int s = 0; s < resolved.size(); s++) {
+			ResolvedSentence sent = resolved.get(s);
+			TokenAligner aligner = new TokenAligner(sent.getForms(), documentString, starts[s], ends[s]);
+			for (ResolvedSentence.Role role : sent.getRoles()) {
+				long start = -1;
+				long end = -1;
+				for (int index : role.getTokens()) {
+					if (aligner.isAligned(index)) {
+						if (start < 0) {
+							start = aligner.getStart(index);
+						}
+						end = aligner.getEnd(index);
+					}
+				}
+				blackhole.consume(start);
+				blackhole.consume(end);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * ParserBenchmark.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.benchmark;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import conll2009.parser.CoNLLReader;
+import conll2009.parser.Parser;
+import conll2009.parser.Sentence;
+
+/**
+ * Parsing of mate-tools answers: one sentence by {@link Parser#parse(String)}
+ * and a batch answer (sentences separated by an empty line) by
+ * {@link CoNLLReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+	/** Number of words of a sentence */
+	@Param({"10", "40", "120"})
+	public int words;
+
+	/** Number of sentences of a batch answer */
+	private static final int BATCH = 32;
+
+	/** Answer for one sentence */
+	private String sentence;
+
+	/** Answer for a batch of sentences */
+	private String batch;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		int predicates = Math.max(1, words / 8);
+		sentence = Payloads.conll(Payloads.forms(words, random), predicates);
+
+		StringBuilder rows = new StringBuilder();
+		for (int i = 0; i < BATCH; i++) {
+			rows.append(Payloads.conll(Payloads.forms(words, random), predicates));
+		}
+		batch = rows.toString();
+	}
+
+	@Benchmark
+	public Sentence parse() {
+		return new Parser().parse(sentence);
+	}
+
+	@Benchmark
+	public void readBatch(Blackhole blackhole) {
+		for (Sentence sent : new CoNLLReader(new StringReader(batch), 8192)) {
+			blackhole.consume(sent);
+		}
+	}
+
+}
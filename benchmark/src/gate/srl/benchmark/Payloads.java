@@ -0,0 +1,187 @@
+/*
+ * Payloads.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import conll2009.parser.Parser;
+import conll2009.parser.Sentence;
+
+/**
+ * Synthetic but realistic inputs of the benchmarks: CoNLL 2009 answers
+ * of mate-tools and document text. Generated from a fixed seed, so every
+ * run measures the same data.
+ */
+public final class Payloads {
+
+	/** Labels of arguments, in the order they are given to dependents */
+	private static final String[] LABELS = {"A0", "A1", "A2", "AM-TMP", "AM-LOC", "AM-MNR"};
+
+	/** Parts of speech of words which are not predicates */
+	private static final String[] TAGS = {"NN", "DT", "JJ", "IN", "NNS", "RB", "PRP", "CC"};
+
+	private Payloads() {
+	}
+
+	/**
+	 * Forms of a sentence, the last one is a full stop.
+	 *
+	 * @param words number of words
+	 * @param random source of the words
+	 * @return word forms
+	 */
+	public static String[] forms(int words, Random random) {
+		String[] forms = new String[words];
+		for (int i = 0; i < words - 1; i++) {
+			forms[i] = word(random);
+		}
+		forms[words - 1] = ".";
+		return forms;
+	}
+
+	/**
+	 * One sentence as mate-tools answers it. The dependency tree is
+	 * balanced (the head of word i is word i/2), predicates are spread
+	 * over the sentence and each has its head and its dependents as
+	 * arguments.
+	 *
+	 * @param forms word forms
+	 * @param predicates number of predicates (at most the number of words)
+	 * @return CoNLL 2009 rows ending with an empty line
+	 */
+	public static String conll(String[] forms, int predicates) {
+		int words = forms.length;
+		predicates = Math.max(0, Math.min(predicates, words));
+
+		// ids of predicates, evenly spread
+		int[] predicateIds = new int[predicates];
+		for (int k = 0; k < predicates; k++) {
+			predicateIds[k] = 1 + (int) ((long) k * words / predicates);
+		}
+
+		StringBuilder rows = new StringBuilder(words * (64 + 4 * predicates));
+		for (int id = 1; id <= words; id++) {
+			int head = id / 2;
+			int predicate = indexOf(predicateIds, id);
+			String form = forms[id - 1];
+			String lemma = form.toLowerCase();
+			String tag = (predicate >= 0) ? "VBD" : TAGS[id % TAGS.length];
+			String deprel = (head == 0) ? "ROOT" : "NMOD";
+
+			rows.append(id).append('\t').append(form)
+					.append('\t').append(lemma).append('\t').append(lemma)
+					.append('\t').append(tag).append('\t').append(tag)
+					.append("\t_\t_")
+					.append('\t').append(head).append('\t').append(head)
+					.append('\t').append(deprel).append('\t').append(deprel)
+					.append('\t').append((predicate >= 0) ? "Y" : "_")
+					.append('\t').append((predicate >= 0) ? lemma + ".01" : "_");
+
+			for (int k = 0; k < predicates; k++) {
+				rows.append('\t').append(label(predicateIds[k], id));
+			}
+			rows.append('\n');
+		}
+		return rows.append('\n').toString();
+	}
+
+	/**
+	 * Parsed sentence (arguments are not assigned to predicates yet).
+	 *
+	 * @param forms word forms
+	 * @param predicates number of predicates
+	 * @return sentence
+	 */
+	public static Sentence sentence(String[] forms, int predicates) {
+		return new Parser().parse(conll(forms, predicates));
+	}
+
+	/**
+	 * Document of sentences separated by a space; words are separated
+	 * by a space too, except the full stop.
+	 *
+	 * @param sentences forms of the sentences
+	 * @param starts start offset of each sentence (filled in)
+	 * @param ends end offset of each sentence (filled in)
+	 * @return document text
+	 */
+	public static String document(List<String[]> sentences, long[] starts, long[] ends) {
+		StringBuilder text = new StringBuilder();
+		for (int s = 0; s < sentences.size(); s++) {
+			if (s > 0) {
+				text.append(' ');
+			}
+			starts[s] = text.length();
+			String[] forms = sentences.get(s);
+			for (int i = 0; i < forms.length; i++) {
+				if (i > 0 && !".".equals(forms[i])) {
+					text.append(' ');
+				}
+				text.append(forms[i]);
+			}
+			ends[s] = text.length();
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Forms of several sentences of varying length.
+	 *
+	 * @param count number of sentences
+	 * @param random source of the words
+	 * @return forms of each sentence
+	 */
+	public static List<String[]> sentences(int count, Random random) {
+		List<String[]> sentences = new ArrayList<String[]>(count);
+		for (int s = 0; s < count; s++) {
+			sentences.add(forms(5 + random.nextInt(40), random));
+		}
+		return sentences;
+	}
+
+	/**
+	 * Argument label of a word for a predicate: the head of the predicate
+	 * and its dependents are arguments.
+	 */
+	private static String label(int predicate, int id) {
+		if (id == predicate / 2) {
+			return LABELS[0];
+		}
+		if (id / 2 == predicate) {
+			return LABELS[1 + (id % (LABELS.length - 1))];
+		}
+		return "_";
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Word of 2 - 10 lower case letters, some capitalized.
+	 */
+	private static String word(Random random) {
+		int length = 2 + random.nextInt(9);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		if (random.nextInt(8) == 0) {
+			chars[0] = Character.toUpperCase(chars[0]);
+		}
+		return new String(chars);
+	}
+
+}
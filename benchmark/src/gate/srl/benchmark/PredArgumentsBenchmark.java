@@ -0,0 +1,82 @@
+/*
+ * PredArgumentsBenchmark.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import conll2009.parser.Sentence;
+import gate.srl.ResolvedSentence;
+
+/**
+ * Assigning arguments to predicates ({@link Sentence#processPredArguments()})
+ * in a long sentence as the number of predicates grows, and reducing the
+ * result to a {@link ResolvedSentence}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredArgumentsBenchmark {
+
+	/** Number of words of the sentence */
+	@Param({"120"})
+	public int words;
+
+	/** Number of predicates of the sentence */
+	@Param({"1", "4", "16", "32"})
+	public int predicates;
+
+	private String[] forms;
+
+	/** Parsed sentence without arguments */
+	private Sentence sentence;
+
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		forms = Payloads.forms(words, new Random(42));
+	}
+
+	/**
+	 * Arguments are added to the predicates, so every call needs a newly
+	 * parsed sentence. Parsing takes a small part of the time of long
+	 * sentences, the overhead of the invocation level is acceptable.
+	 */
+	@Setup(Level.Invocation)
+	public void setupInvocation() {
+		sentence = Payloads.sentence(forms, predicates);
+	}
+
+	@Benchmark
+	public Sentence processPredArguments() {
+		sentence.processPredArguments();
+		return sentence;
+	}
+
+	@Benchmark
+	public ResolvedSentence resolve() {
+		sentence.processPredArguments();
+		return ResolvedSentence.from(sentence);
+	}
+
+}
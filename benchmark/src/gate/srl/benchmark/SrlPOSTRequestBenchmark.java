@@ -0,0 +1,129 @@
+/*
+ * SrlPOSTRequestBenchmark.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import conll2009.parser.Sentence;
+import gate.srl.SrlPOSTRequest;
+import gate.srl.server.ReferenceServer;
+
+/**
+ * Round trips of {@link SrlPOSTRequest} to the {@link ReferenceServer}
+ * stand-in on localhost: the cost of the client, HTTP and parsing of the
+ * answer without mate-tools.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SrlPOSTRequestBenchmark {
+
+	/** Response format: ordinary CoNLL, sparse rows or gzip compressed CoNLL */
+	@Param({"conll", "sparse", "gzip"})
+	public String format;
+
+	/** Number of sentences of a batch request */
+	private static final int BATCH = 16;
+
+	private ReferenceServer server;
+
+	private SrlPOSTRequest client;
+
+	private String sentence;
+
+	private List<String> batch;
+
+	@Setup
+	public void setup() throws IOException {
+		server = new ReferenceServer(null);
+		server.start(0);
+
+		client = new SrlPOSTRequest("http://localhost:" + server.getPort() + ReferenceServer.DEFAULT_PATH,
+				10000, 60000, 4);
+		client.setCompactFormat("sparse".equals(format));
+		client.setCompression("gzip".equals(format));
+		client.setMaxAsyncRequests(BATCH);
+
+		Random random = new Random(42);
+		sentence = text(Payloads.forms(25, random));
+		batch = new ArrayList<String>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			batch.add(text(Payloads.forms(25, random)));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public Sentence queryParsed() {
+		return client.queryParsed(sentence);
+	}
+
+	@Benchmark
+	public List<Sentence> queryBatchParsed() {
+		return client.queryBatchParsed(batch);
+	}
+
+	@Benchmark
+	public String query() {
+		return client.query(sentence);
+	}
+
+	/**
+	 * Sentences of a batch sent as separate asynchronous requests at once,
+	 * comparable with {@link #queryBatchParsed()}.
+	 */
+	@Benchmark
+	public List<Sentence> queryParsedAsync() {
+		List<CompletableFuture<Sentence>> futures = new ArrayList<CompletableFuture<Sentence>>(BATCH);
+		for (String text : batch) {
+			futures.add(client.queryParsedAsync(text, 0));
+		}
+		List<Sentence> sentences = new ArrayList<Sentence>(BATCH);
+		for (CompletableFuture<Sentence> future : futures) {
+			sentences.add(future.join());
+		}
+		return sentences;
+	}
+
+	private static String text(String[] forms) {
+		StringBuilder text = new StringBuilder();
+		for (String form : forms) {
+			if (text.length() > 0 && !".".equals(form)) {
+				text.append(' ');
+			}
+			text.append(form);
+		}
+		return text.toString();
+	}
+
+}
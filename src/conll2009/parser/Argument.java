@@ -52,7 +52,7 @@ public class Argument {
 	private class SortByWord_ID implements Comparator<IWord>{
 
 	    public int compare(IWord w1, IWord w2) {
-	        return Integer.parseInt(w1.getId()) - Integer.parseInt(w2.getId());
+	        return Sentence.idNumber(w1) - Sentence.idNumber(w2);
 	    }
 	}
 	
@@ -0,0 +1,391 @@
+/*
+ * CoNLLReader.java
+ *
+ * Part of CoNLL 2009 data parser.
+ */
+package conll2009.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Streaming reader of CoNLL 2009 data. Sentences (blocks of rows
+ * separated by an empty line) are read one at a time, so files of any
+ * size can be processed with memory bounded by the longest sentence.</p>
+ *
+ * <p>Rows are scanned directly in the character buffer and split into
+ * columns by TAB positions, no String is created for a whole row.</p>
+ *
+ * <p>Sparse rows (see {@link CoNLLWriter}), which contain only the
+ * non-empty columns as <code>index:value</code>, are read when
+ * {@link #setSparse(boolean)} is on.</p>
+ *
+ * <pre>
+ * CoNLLReader reader = new CoNLLReader(new File("corpus.conll"));
+ * try {
+ *     for (Sentence sentence : reader) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ *
+ * try (Stream&lt;Sentence&gt; sentences = new CoNLLReader(file).stream()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class CoNLLReader implements Iterator<Sentence>, Iterable<Sentence>, Closeable {
+
+	/* Encoding of files and streams */
+	private static final String CHARSET = "UTF-8";
+
+	/* Initial size of the character buffer (grows for longer rows) */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/* Source of the data */
+	private Reader reader;
+
+	/* Character buffer, valid data are buffer[pos .. limit-1] */
+	private char[] buffer;
+	private int pos;
+	private int limit;
+
+	/* End of input reached */
+	private boolean eof;
+
+	/* Previous row ended with '\r', the '\n' which may follow is skipped */
+	private boolean skipLineFeed;
+
+	/* Sentence read ahead by hasNext() */
+	private Sentence next;
+
+	/* Rows contain only non-empty columns as index:value */
+	private boolean sparse;
+
+	/* Column indexes and values of the current sparse row */
+	private int[] sparseColumns;
+	private String[] sparseValues;
+
+	/**
+	 * Reader of characters.
+	 *
+	 * @param reader source of CoNLL data
+	 */
+	public CoNLLReader(Reader reader) {
+		this(reader, BUFFER_SIZE);
+	}
+
+	/**
+	 * Reader of characters with the given initial buffer size (small
+	 * inputs like one server response don't need the default 64k).
+	 *
+	 * @param reader source of CoNLL data
+	 * @param bufferSize initial size of the character buffer
+	 */
+	public CoNLLReader(Reader reader, int bufferSize) {
+		this.reader = reader;
+		this.buffer = new char[Math.max(16, bufferSize)];
+	}
+
+	/**
+	 * Reader of UTF-8 encoded stream.
+	 *
+	 * @param stream source of CoNLL data
+	 */
+	public CoNLLReader(InputStream stream) {
+		this(newReader(stream));
+	}
+
+	/**
+	 * Reader of UTF-8 encoded file.
+	 *
+	 * @param file CoNLL file
+	 * @throws IOException if the file can't be opened
+	 */
+	public CoNLLReader(File file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	/**
+	 * Sets whether rows are sparse (<code>index:value</code> of non-empty
+	 * columns only) instead of all columns.
+	 *
+	 * @param sparse true for sparse rows
+	 */
+	public void setSparse(boolean sparse) {
+		this.sparse = sparse;
+	}
+
+	public boolean isSparse() {
+		return sparse;
+	}
+
+	private static Reader newReader(InputStream stream) {
+		try {
+			return new InputStreamReader(stream, CHARSET);
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the next sentence if there is any.
+	 *
+	 * @return true if there is one more sentence
+	 */
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = readSentence();
+			} catch (IOException e) {
+				throw new IllegalStateException("Error reading CoNLL data", e);
+			}
+		}
+		return next != null;
+	}
+
+	/**
+	 * Returns the next sentence.
+	 *
+	 * @return sentence
+	 */
+	public Sentence next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Sentence sentence = next;
+		next = null;
+		return sentence;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * The reader itself, so it can be used in for-each loop
+	 * (only once, data are not kept).
+	 */
+	public Iterator<Sentence> iterator() {
+		return this;
+	}
+
+	/**
+	 * Sentences of the reader as a sequential stream (only once, data 
+	 * are not kept), closing the stream closes the reader.
+	 * 
+	 * @return stream of the remaining sentences
+	 */
+	public Stream<Sentence> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(new Runnable() {
+					public void run() {
+						try {
+							close();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 */
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Reads rows up to the next empty row (or end of input).
+	 *
+	 * @return sentence, null at the end of input
+	 */
+	private Sentence readSentence() throws IOException {
+		Sentence sentence = null;
+
+		int end;
+		while ((end = findRowEnd()) >= 0) {
+			int rowStart = pos;
+			int rowEnd = end;
+
+			// move behind the line separator
+			pos = end;
+			if (pos < limit) {
+				skipLineFeed = buffer[pos] == '\r';
+				pos++;
+			}
+
+			// trim white spaces
+			while (rowStart < rowEnd && buffer[rowStart] <= ' ') {
+				rowStart++;
+			}
+			while (rowEnd > rowStart && buffer[rowEnd - 1] <= ' ') {
+				rowEnd--;
+			}
+
+			// empty row ends the sentence
+			if (rowStart == rowEnd) {
+				if (sentence != null) {
+					return sentence;
+				}
+				continue;
+			}
+
+			if (sentence == null) {
+				sentence = new Sentence();
+			}
+			if (sparse) {
+				addSparseRow(sentence, rowStart, rowEnd);
+			} else {
+				sentence.addRow(split(buffer, rowStart, rowEnd));
+			}
+		}
+
+		return sentence;
+	}
+
+	/**
+	 * Finds the end of the row starting at <code>pos</code>, reads more
+	 * data if needed.
+	 *
+	 * @return index of the line separator (or of the end of data
+	 * 		for the last row), -1 at the end of input
+	 */
+	private int findRowEnd() throws IOException {
+		int scanned = pos;
+		while (true) {
+			// '\n' of "\r\n" separator
+			if (skipLineFeed && pos < limit) {
+				if (buffer[pos] == '\n') {
+					pos++;
+				}
+				skipLineFeed = false;
+				scanned = pos;
+			}
+
+			for (int i = scanned; i < limit; i++) {
+				if (buffer[i] == '\n' || buffer[i] == '\r') {
+					return i;
+				}
+			}
+			scanned = limit;
+
+			if (eof) {
+				return (pos < limit) ? limit : -1;
+			}
+
+			// keep the unfinished row and read more data
+			int length = limit - pos;
+			if (length == buffer.length) {
+				char[] bigger = new char[buffer.length * 2];
+				System.arraycopy(buffer, pos, bigger, 0, length);
+				buffer = bigger;
+			} else {
+				System.arraycopy(buffer, pos, buffer, 0, length);
+			}
+			scanned -= pos;
+			pos = 0;
+			limit = length;
+
+			int read = reader.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		}
+	}
+
+	/**
+	 * Adds a sparse row to the sentence, each TAB separated field is
+	 * <code>index:value</code> of one non-empty column.
+	 *
+	 * @param sentence sentence being read
+	 * @param start start of the row in the buffer
+	 * @param end end of the row in the buffer
+	 */
+	private void addSparseRow(Sentence sentence, int start, int end) {
+		int count = 1;
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == '\t') {
+				count++;
+			}
+		}
+		if (sparseColumns == null || sparseColumns.length < count) {
+			sparseColumns = new int[Math.max(16, count)];
+			sparseValues = new String[sparseColumns.length];
+		}
+
+		int fields = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i < end && buffer[i] != '\t') {
+				continue;
+			}
+
+			// column index up to ':'
+			int column = 0;
+			int p = fieldStart;
+			while (p < i && buffer[p] >= '0' && buffer[p] <= '9') {
+				column = column * 10 + (buffer[p++] - '0');
+			}
+			if (p == fieldStart || p == i || buffer[p] != ':') {
+				throw new IllegalStateException("Broken sparse CoNLL row: "
+						+ new String(buffer, start, end - start));
+			}
+
+			sparseColumns[fields] = column;
+			sparseValues[fields] = new String(buffer, p + 1, i - p - 1);
+			fields++;
+			fieldStart = i + 1;
+		}
+
+		sentence.addRow(sparseColumns, sparseValues, fields);
+	}
+
+	/**
+	 * Splits a row into columns by TAB symbol.
+	 *
+	 * @param chars buffer with the row
+	 * @param start start of the row
+	 * @param end end of the row
+	 * @return columns
+	 */
+	static String[] split(char[] chars, int start, int end) {
+		int count = 1;
+		for (int i = start; i < end; i++) {
+			if (chars[i] == '\t') {
+				count++;
+			}
+		}
+
+		String[] columns = new String[count];
+		int column = 0;
+		int columnStart = start;
+		for (int i = start; i < end; i++) {
+			if (chars[i] == '\t') {
+				columns[column++] = new String(chars, columnStart, i - columnStart);
+				columnStart = i + 1;
+			}
+		}
+		columns[column] = new String(chars, columnStart, end - columnStart);
+
+		return columns;
+	}
+
+}
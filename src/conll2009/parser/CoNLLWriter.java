@@ -0,0 +1,181 @@
+/*
+ * CoNLLWriter.java
+ *
+ * Part of CoNLL 2009 data parser.
+ */
+package conll2009.parser;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>Writes sentences in CoNLL 2009 format, one row per word, sentences
+ * separated by an empty line.</p>
+ *
+ * <p>Besides the usual format with all columns (empty ones as '_'),
+ * sparse rows can be written: only the non-empty columns, each as
+ * <code>index:value</code> where index is the column position in CoNLL
+ * 2009 order (0 = ID, 13 = PRED, 14 = first APRED). Rows of wide
+ * sentences are then mostly shorter, as most APRED columns are empty.
+ * Sparse rows are read by {@link CoNLLReader#setSparse(boolean)}.</p>
+ *
+ * <pre>
+ * dense:  2	cat	_	cat	_	NN	_	_	_	3	_	SBJ	_	_	A0
+ * sparse: 0:2	1:cat	3:cat	5:NN	9:3	11:SBJ	14:A0
+ * </pre>
+ */
+public class CoNLLWriter implements Closeable, Flushable {
+
+	/* Number of columns before APRED columns */
+	private static final int COLUMNS = TokenTable.APRED;
+
+	/* Empty value */
+	private static final String EMPTY = "_";
+
+	/* Target of the data */
+	private Writer writer;
+
+	/* Write non-empty columns only */
+	private boolean sparse;
+
+	/**
+	 * Writer of all columns.
+	 *
+	 * @param writer target of CoNLL data
+	 */
+	public CoNLLWriter(Writer writer) {
+		this(writer, false);
+	}
+
+	/**
+	 * @param writer target of CoNLL data
+	 * @param sparse write non-empty columns only
+	 */
+	public CoNLLWriter(Writer writer, boolean sparse) {
+		this.writer = writer;
+		this.sparse = sparse;
+	}
+
+	/**
+	 * Writes all words of the sentence and an empty line.
+	 *
+	 * @param sentence sentence to write
+	 * @throws IOException if writing fails
+	 */
+	public void write(Sentence sentence) throws IOException {
+		// one APRED column for each predicate
+		int argColumns = sentence.getPredicates().size();
+		for (IWord word : sentence.getWords()) {
+			if (word instanceof Word2009) {
+				Word2009 w = (Word2009) word;
+				for (int i = 0; i < w.getArgCount(); i++) {
+					argColumns = Math.max(argColumns, w.getArgPredicate(i) + 1);
+				}
+			}
+		}
+
+		for (IWord word : sentence.getWords()) {
+			if (sparse) {
+				writeSparse(word);
+			} else {
+				writeDense(word, argColumns);
+			}
+			writer.write('\n');
+		}
+		writer.write('\n');
+	}
+
+	/**
+	 * All columns of one word.
+	 */
+	private void writeDense(IWord word, int argColumns) throws IOException {
+		for (int c = 0; c < COLUMNS; c++) {
+			if (c > 0) {
+				writer.write('\t');
+			}
+			writer.write(column(word, c));
+		}
+
+		// APREDs are stored sparsely, fill the gaps with '_'
+		Word2009 w = (word instanceof Word2009) ? (Word2009) word : null;
+		int arg = 0;
+		int args = (w == null) ? 0 : w.getArgCount();
+		for (int c = 0; c < argColumns; c++) {
+			writer.write('\t');
+			if (arg < args && w.getArgPredicate(arg) == c) {
+				writer.write(w.getArgLabel(arg++));
+			} else {
+				writer.write(EMPTY);
+			}
+		}
+	}
+
+	/**
+	 * Non-empty columns of one word as index:value.
+	 */
+	private void writeSparse(IWord word) throws IOException {
+		boolean first = true;
+		for (int c = 0; c < COLUMNS; c++) {
+			String value = column(word, c);
+			if (value == null || EMPTY.equals(value)) {
+				continue;
+			}
+			if (!first) {
+				writer.write('\t');
+			}
+			writer.write(Integer.toString(c));
+			writer.write(':');
+			writer.write(value);
+			first = false;
+		}
+
+		if (word instanceof Word2009) {
+			Word2009 w = (Word2009) word;
+			for (int i = 0; i < w.getArgCount(); i++) {
+				if (!first) {
+					writer.write('\t');
+				}
+				writer.write(Integer.toString(COLUMNS + w.getArgPredicate(i)));
+				writer.write(':');
+				writer.write(w.getArgLabel(i));
+				first = false;
+			}
+		}
+	}
+
+	/**
+	 * Value of a column (without APREDs).
+	 */
+	private static String column(IWord word, int column) {
+		if (word instanceof Word2009) {
+			Word2009 w = (Word2009) word;
+			return w.getTable().get(w.getRow(), column);
+		}
+
+		switch (column) {
+		case TokenTable.ID: return word.getId();
+		case TokenTable.FORM: return word.getForm();
+		case TokenTable.LEMMA: return word.getLemma();
+		case TokenTable.POS: return word.getPos();
+		default: return EMPTY;
+		}
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Closes the underlying writer.
+	 */
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	public boolean isSparse() {
+		return sparse;
+	}
+
+}
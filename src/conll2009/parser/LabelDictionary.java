@@ -0,0 +1,80 @@
+/*
+ * LabelDictionary.java
+ *
+ * Part of CoNLL 2009 data parser.
+ */
+package conll2009.parser;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Dictionary encoding of labels from small closed vocabularies
+ * (POS tags, dependency relations, argument labels, ...). Every label
+ * is stored once for the whole JVM and columns of {@link TokenTable}
+ * keep only its int code.</p>
+ *
+ * <p>Open vocabulary (word forms, lemmas, features, non-numeric IDs)
+ * must not be stored here, codes are never released.</p>
+ */
+final class LabelDictionary {
+
+	/* Code of the empty value '_' */
+	static final int EMPTY = 0;
+
+	/* Label -> code */
+	private static final ConcurrentHashMap<String, Integer> codes =
+			new ConcurrentHashMap<String, Integer>();
+
+	/* Code -> label, replaced by a bigger copy when full */
+	private static volatile String[] labels = new String[256];
+
+	/* Number of labels */
+	private static int size;
+
+	static {
+		encode("_");
+	}
+
+	private LabelDictionary() {
+	}
+
+	/**
+	 * Returns code of the label, new labels are added.
+	 *
+	 * @param label label to encode
+	 * @return code
+	 */
+	static int encode(String label) {
+		Integer code = codes.get(label);
+		if (code != null) {
+			return code.intValue();
+		}
+
+		synchronized (LabelDictionary.class) {
+			code = codes.get(label);
+			if (code != null) {
+				return code.intValue();
+			}
+
+			if (size == labels.length) {
+				String[] bigger = new String[labels.length * 2];
+				System.arraycopy(labels, 0, bigger, 0, size);
+				labels = bigger;
+			}
+			labels[size] = label;
+			codes.put(label, Integer.valueOf(size));
+			return size++;
+		}
+	}
+
+	/**
+	 * Returns the label of a code.
+	 *
+	 * @param code code returned by {@link #encode(String)}
+	 * @return label
+	 */
+	static String decode(int code) {
+		return labels[code];
+	}
+
+}
@@ -8,7 +8,10 @@ package conll2009.parser;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 /** 
  * <p>Basic parser for CoNLL 2009 text format (each word with it's features on new line, tab 
@@ -24,6 +27,9 @@ import java.io.StringReader;
  */
 public class Parser {
 	
+	/* Initial buffer size for reading one sentence */
+	private static final int READ_BUFFER_SIZE = 8192;
+	
 	/* If parsing multiple sentences */
 	private Sentence sentence;
 
@@ -40,27 +46,97 @@ public class Parser {
 	 * @return sentence
 	 * */
 	public Sentence parse(String input) {
-		String[] columns;	/* Temporary array for each parameter of the word */
-		String row;			/* One word in CoNLL format - text string */
-		IWord data; 		/* One word in CoNLL format - object */		
+		return parse(new StringReader(input));
+	}
+	
+	/**
+	 * Parses CoNLL 2009 data read from a stream (e.g. a server response)
+	 * without building the whole text first. All rows are added to one 
+	 * Sentence like in {@link #parse(String)}, empty rows are skipped.
+	 * 
+	 * @param input source of CoNLL data, it is read to the end but not closed
+	 * @return sentence
+	 * */
+	public Sentence parse(Reader input) {
+		return parse(new CoNLLReader(input, READ_BUFFER_SIZE));
+	}
+	
+	/**
+	 * Adds all rows read by the reader to one Sentence like 
+	 * {@link #parse(String)}.
+	 * 
+	 * @param input reader of CoNLL data (e.g. of sparse rows)
+	 * @return sentence
+	 * */
+	public Sentence parse(CoNLLReader input) {
+		for (Sentence block : input) {
+			// nothing parsed yet, the block itself is the sentence
+			if (sentence.getWords().isEmpty()) {
+				sentence = block;
+				continue;
+			}
+			
+			for (IWord word : block.getWords()) {
+				sentence.addWord((Word2009) word);
+			}
+		}
+		
+		return sentence;
+	}
+	
+	/**
+	 * Parses input String with several sentences in CoNLL 2009 format,
+	 * sentences are separated by an empty line. For big inputs use 
+	 * {@link CoNLLReader} directly, it doesn't need the whole text in memory.
+	 * 
+	 * @param text to parse
+	 * @return sentences in the order of input
+	 * */
+	public List<Sentence> parseAll(String input) {
+		List<Sentence> sentences = new ArrayList<Sentence>();
+		
+		for (Sentence sentence : new CoNLLReader(new StringReader(input))) {
+			sentences.add(sentence);
+		}
+		
+		return sentences;
+	}
+	
+	/**
+	 * Splits input String with several sentences in CoNLL 2009 format
+	 * into the text of the sentences (without parsing them).
+	 * 
+	 * @param text with sentences separated by an empty line
+	 * @return text of each sentence
+	 * */
+	public static List<String> splitSentences(String input) {
+		List<String> sentences = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		String row;
 		
 		BufferedReader reader = new BufferedReader(new StringReader(input));
 		
 		try {
 			while ((row = reader.readLine()) != null) {
-				// devide columns by TAB symbol
-				columns = row.trim().split("\t");
-				
-				// load data and parse CoNLL2009 format
-				data = new Word2009();
-				data = data.parseArray(columns);
-				sentence.addWord((Word2009) data);
+				// empty row ends the sentence
+				if (row.trim().length() == 0) {
+					if (current.length() > 0) {
+						sentences.add(current.toString());
+						current.setLength(0);
+					}
+					continue;
+				}
+				current.append(row).append('\n');
 			}
 		} catch(IOException e) {
 			e.printStackTrace();
 		}
 		
-		return sentence;
+		if (current.length() > 0) {
+			sentences.add(current.toString());
+		}
+		
+		return sentences;
 	}
 	
 	/**
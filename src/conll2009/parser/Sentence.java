@@ -7,7 +7,10 @@
 package conll2009.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /** 
  * <p>Class representing a sentence consisting of words.
@@ -21,10 +24,20 @@ public class Sentence {
 	
 	/* List of words */
 	private ArrayList<IWord> words;
+	
+	/* Data of the words (column storage) */
+	private TokenTable table;
 
 	/* Row of data belonging to one word */
 	private ArrayList<Predicate> predicates;
 	
+	/* Dependency tree index (by word position), built on demand */
+	private int[] childStart;
+	private int[] children;
+	
+	/* Cached subtrees of argument heads by position (words in no particular order) */
+	private List<List<IWord>> subtrees;
+	
 	
 	/**
 	 * Constructor - initialization of arraylists
@@ -32,6 +45,7 @@ public class Sentence {
 	public Sentence() {
 		this.words = new ArrayList<IWord>();
 		this.predicates = new ArrayList<Predicate>();
+		this.table = new TokenTable(32);
 	}
 	
 	/**
@@ -41,7 +55,11 @@ public class Sentence {
 	 * @param word in CoNLL 2009 format
 	 * */
 	public void addWord(Word2009 word) {
+		// the word's data are stored in the table of this sentence
+		word.moveTo(table);
+		
 		this.words.add(word);
+		this.childStart = null;
 		
 		// if the word is predicate -> list of preds
 		if (word.isPred()) {
@@ -49,61 +67,173 @@ public class Sentence {
 		}
 	}
 	
+	/**
+	 * Adds a word given by columns of CoNLL 2009 row.
+	 * 
+	 * @param columns values of the columns
+	 * @return the new word
+	 * */
+	public Word2009 addRow(String[] columns) {
+		Word2009 word = new Word2009(table, table.addRow(columns));
+		addWord(word);
+		return word;
+	}
+	
+	/**
+	 * Adds a word given by non-empty columns only (sparse row).
+	 * 
+	 * @param columns column indexes (CoNLL 2009 order)
+	 * @param values values of the columns
+	 * @param count number of columns
+	 * @return the new word
+	 * */
+	Word2009 addRow(int[] columns, String[] values, int count) {
+		int row = table.addRow();
+		for (int i = 0; i < count; i++) {
+			table.set(row, columns[i], values[i]);
+		}
+		Word2009 word = new Word2009(table, row);
+		addWord(word);
+		return word;
+	}
+	
 	/**
 	 * Goes through all argument slots for all words 
 	 * and assignes arguments to their predicates.
 	 * 
 	 * */	
 	public void processPredArguments() {
-		for (int i = 0; i < predicates.size(); i++) {
+		buildTreeIndex();
+		
+		// go through all words of a sentence, only non-empty 
+		// argument columns are stored (any number of predicates)
+		for (int j = 0; j < words.size(); j++) {
+			Word2009 word = (Word2009) words.get(j);
 			
-			// go through all words of a sentence
-			for (Iterator<IWord> j = words.iterator(); j.hasNext();) {
-				Word2009 word = (Word2009) j.next();
+			for (int k = 0; k < word.getArgCount(); k++) {
+				int i = word.getArgPredicate(k);
 				
-				// if there is more predicates than word.ARG_COLUMNS
-				// we can't process arguments (there is only space for 16 args)
-				if (i == word.maxNumberOfArgs()-1) {
+				// argument of a predicate which is not in the sentence
+				if (i >= predicates.size()) {
 					continue;
 				}
 				
-				// if argument of a word is not empty
-				if (!word.getArgsArray()[i].equals("_")) {
-					// create argument object
-					Argument arg = new Argument(predicates.get(i), word.getArgsArray()[i]);
+				// create argument object
+				Argument arg = new Argument(predicates.get(i), word.getArgLabel(k));
 
-					// recursively add all the dependent words
-					saveArgument(word, arg);
-					
-					// asign the argument to the predicate 
-					predicates.get(i).addArgument(arg);
+				// add all the dependent words
+				for (IWord dependent : getSubtree(j)) {
+					arg.addWord(dependent);
 				}
+				
+				// asign the argument to the predicate 
+				predicates.get(i).addArgument(arg);
 			}
-			
-			//System.out.println(predicates.get(i).toString());
 		}
 	}
 	
 	/**
-	 * Recursively saves dependent words of the argument. 
+	 * Builds index of children of every word from PHEAD column,
+	 * so the subtree of a word can be found without scanning 
+	 * the whole sentence for each node.
+	 * */
+	private void buildTreeIndex() {
+		if (childStart != null) {
+			return;
+		}
+		int n = words.size();
+		
+		// position of the word with given id (ids are 1..n)
+		int[] positionOfId = new int[n + 1];
+		Arrays.fill(positionOfId, -1);
+		for (int i = 0; i < n; i++) {
+			int id = idNumber(words.get(i));
+			if (id >= 0 && id <= n) {
+				positionOfId[id] = i;
+			}
+		}
+		
+		// position of the head of each word, -1 for root
+		int[] parent = new int[n];
+		int[] count = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			int phead = ((Word2009) words.get(i)).getPheadNumber();
+			parent[i] = (phead >= 0 && phead <= n) ? positionOfId[phead] : -1;
+			if (parent[i] >= 0) {
+				count[parent[i]]++;
+			}
+		}
+		
+		// children of word i are children[childStart[i] .. childStart[i+1]-1]
+		childStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			childStart[i + 1] = childStart[i] + count[i];
+		}
+		children = new int[childStart[n]];
+		int[] next = Arrays.copyOf(childStart, n);
+		for (int i = 0; i < n; i++) {
+			if (parent[i] >= 0) {
+				children[next[parent[i]]++] = i;
+			}
+		}
+		
+		subtrees = new ArrayList<List<IWord>>(Collections.<List<IWord>>nCopies(n, null));
+	}
+	
+	/**
+	 * Returns the word and all words depending on it. The subtree 
+	 * is computed once and shared by all predicates. Words are in 
+	 * the order of the search, not of their ids ({@link Argument} 
+	 * sorts its words).
 	 * 
-	 * @param argHead First word (head) of the argument.
-	 * @param arg Argument object
+	 * @param position position of the head word in the sentence
+	 * @return words of the subtree
 	 * */
-	private void saveArgument(Word2009 argHead, Argument arg) {
-		// save dependent word as a part of the argument
-		arg.addWord(argHead);
+	private List<IWord> getSubtree(int position) {
+		List<IWord> cached = subtrees.get(position);
+		if (cached != null) {
+			return cached;
+		}
 		
-		// goes through every word of a given sentence
-		for (Iterator<IWord> i = words.iterator(); i.hasNext();) {
-			Word2009 word = (Word2009) i.next();
+		List<IWord> subtree = new ArrayList<IWord>();
+		boolean[] visited = new boolean[words.size()];
+		int[] stack = new int[words.size()];
+		int top = 0;
+		
+		stack[top++] = position;
+		visited[position] = true;
+		while (top > 0) {
+			int node = stack[--top];
+			subtree.add(words.get(node));
 			
-			// if the word's id is equeal to other word's phead column,
-			// than the word is dependent on the second one
-			if (argHead.getId().equals(word.getPhead())) {
-				saveArgument(word, arg);
+			for (int c = childStart[node]; c < childStart[node + 1]; c++) {
+				// visited check protects against cycles in broken input
+				if (!visited[children[c]]) {
+					visited[children[c]] = true;
+					stack[top++] = children[c];
+				}
 			}
 		}
+		
+		subtrees.set(position, subtree);
+		return subtree;
+	}
+	
+	/**
+	 * Integer value of id column.
+	 * 
+	 * @param word word of the sentence
+	 * @return id or -1 if it is not a number (e.g. '_')
+	 * */
+	static int idNumber(IWord word) {
+		if (word instanceof Word2009) {
+			return ((Word2009) word).getIdNumber();
+		}
+		try {
+			return Integer.parseInt(word.getId().trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 	
 	/**
@@ -128,6 +258,7 @@ public class Sentence {
 
 	public void setWords(ArrayList<IWord> words) {
 		this.words = words;
+		this.childStart = null;
 	}
 
 	public ArrayList<Predicate> getPredicates() {
@@ -0,0 +1,428 @@
+/*
+ * TokenTable.java
+ *
+ * Part of CoNLL 2009 data parser.
+ */
+package conll2009.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Column storage of the words of one sentence. Instead of a row of
+ * Strings per word, every CoNLL column is one array:</p>
+ * <ul>
+ * <li>ID, HEAD, PHEAD as int,</li>
+ * <li>FORM, LEMMA, PLEMMA, FEAT, PFEAT, PRED as String (open vocabulary),</li>
+ * <li>other columns as codes of {@link LabelDictionary},</li>
+ * <li>APREDs as (column, label code) pairs of non-empty columns only,
+ * so the number of APRED columns is not limited and sentences with
+ * many predicates cost only the roles they have.</li>
+ * </ul>
+ *
+ * <p>{@link Word2009} is a view of one row of the table.</p>
+ */
+class TokenTable {
+
+	/* Column indexes (order of CoNLL 2009 format) */
+	static final int ID = 0;
+	static final int FORM = 1;
+	static final int LEMMA = 2;
+	static final int PLEMMA = 3;
+	static final int POS = 4;
+	static final int PPOS = 5;
+	static final int FEAT = 6;
+	static final int PFEAT = 7;
+	static final int HEAD = 8;
+	static final int PHEAD = 9;
+	static final int DEPREL = 10;
+	static final int PDEPREL = 11;
+	static final int FILLPRED = 12;
+	static final int PRED = 13;
+	static final int APRED = 14;
+
+	/* Numeric column value of '_' */
+	static final int NONE = -1;
+
+	/* Empty value */
+	private static final String EMPTY = "_";
+
+	/* Number of rows */
+	private int size;
+
+	/* Numeric columns, value < NONE is -(index in texts) - 2 of
+	 * a non-numeric value */
+	private int[] id;
+	private int[] head;
+	private int[] phead;
+
+	/* Non-numeric values of numeric columns of this table, null if none;
+	 * they are rare and not shared with other sentences */
+	private List<String> texts;
+
+	/* Open vocabulary columns */
+	private String[] form;
+	private String[] lemma;
+	private String[] plemma;
+	private String[] feat;
+	private String[] pfeat;
+	private String[] pred;
+
+	/* Dictionary encoded columns */
+	private int[] pos;
+	private int[] ppos;
+	private int[] deprel;
+	private int[] pdeprel;
+	private int[] fillpred;
+
+	/* APRED columns stored sparsely, for each row pairs (APRED column
+	 * index, label code) of non-empty columns sorted by column, null if
+	 * the word is no argument */
+	private int[][] args;
+
+	/* Number of APRED columns (width of the widest row) */
+	private int argColumns;
+
+	/**
+	 * Empty table.
+	 *
+	 * @param capacity expected number of rows
+	 */
+	TokenTable(int capacity) {
+		capacity = Math.max(1, capacity);
+		id = new int[capacity];
+		head = new int[capacity];
+		phead = new int[capacity];
+		form = new String[capacity];
+		lemma = new String[capacity];
+		plemma = new String[capacity];
+		feat = new String[capacity];
+		pfeat = new String[capacity];
+		pred = new String[capacity];
+		pos = new int[capacity];
+		ppos = new int[capacity];
+		deprel = new int[capacity];
+		pdeprel = new int[capacity];
+		fillpred = new int[capacity];
+		args = new int[capacity][];
+	}
+
+	/**
+	 * Adds a row with all values empty ('_').
+	 *
+	 * @return index of the row
+	 */
+	int addRow() {
+		if (size == id.length) {
+			grow();
+		}
+		int row = size++;
+
+		id[row] = NONE;
+		head[row] = NONE;
+		phead[row] = NONE;
+		form[row] = EMPTY;
+		lemma[row] = EMPTY;
+		plemma[row] = EMPTY;
+		feat[row] = EMPTY;
+		pfeat[row] = EMPTY;
+		pred[row] = EMPTY;
+		// dictionary columns are 0 = LabelDictionary.EMPTY already
+
+		return row;
+	}
+
+	/**
+	 * Adds a row with values of the given columns.
+	 *
+	 * @param columns values in CoNLL 2009 order
+	 * @return index of the row
+	 */
+	int addRow(String[] columns) {
+		int row = addRow();
+		for (int i = 0; i < columns.length; i++) {
+			set(row, i, columns[i]);
+		}
+		return row;
+	}
+
+	/**
+	 * Adds a copy of a row of other table.
+	 *
+	 * @param from source table
+	 * @param fromRow row of the source table
+	 * @return index of the new row
+	 */
+	int copyRow(TokenTable from, int fromRow) {
+		int row = addRow();
+		// non-numeric values are indexes in texts of the other table
+		id[row] = (from.id[fromRow] < NONE) ? textToNumber(from.get(fromRow, ID)) : from.id[fromRow];
+		head[row] = (from.head[fromRow] < NONE) ? textToNumber(from.get(fromRow, HEAD)) : from.head[fromRow];
+		phead[row] = (from.phead[fromRow] < NONE) ? textToNumber(from.get(fromRow, PHEAD)) : from.phead[fromRow];
+		form[row] = from.form[fromRow];
+		lemma[row] = from.lemma[fromRow];
+		plemma[row] = from.plemma[fromRow];
+		feat[row] = from.feat[fromRow];
+		pfeat[row] = from.pfeat[fromRow];
+		pred[row] = from.pred[fromRow];
+		pos[row] = from.pos[fromRow];
+		ppos[row] = from.ppos[fromRow];
+		deprel[row] = from.deprel[fromRow];
+		pdeprel[row] = from.pdeprel[fromRow];
+		fillpred[row] = from.fillpred[fromRow];
+		args[row] = (from.args[fromRow] == null) ? null : from.args[fromRow].clone();
+		argColumns = Math.max(argColumns, from.argColumns);
+		return row;
+	}
+
+	/**
+	 * Doubles the capacity of all columns.
+	 */
+	private void grow() {
+		int capacity = id.length * 2;
+		id = Arrays.copyOf(id, capacity);
+		head = Arrays.copyOf(head, capacity);
+		phead = Arrays.copyOf(phead, capacity);
+		form = Arrays.copyOf(form, capacity);
+		lemma = Arrays.copyOf(lemma, capacity);
+		plemma = Arrays.copyOf(plemma, capacity);
+		feat = Arrays.copyOf(feat, capacity);
+		pfeat = Arrays.copyOf(pfeat, capacity);
+		pred = Arrays.copyOf(pred, capacity);
+		pos = Arrays.copyOf(pos, capacity);
+		ppos = Arrays.copyOf(ppos, capacity);
+		deprel = Arrays.copyOf(deprel, capacity);
+		pdeprel = Arrays.copyOf(pdeprel, capacity);
+		fillpred = Arrays.copyOf(fillpred, capacity);
+		args = Arrays.copyOf(args, capacity);
+	}
+
+	/**
+	 * Value of a column as String.
+	 *
+	 * @param row row index
+	 * @param column column index (CoNLL 2009 order)
+	 * @return value
+	 */
+	String get(int row, int column) {
+		switch (column) {
+		case ID: return numberToString(id[row]);
+		case FORM: return form[row];
+		case LEMMA: return lemma[row];
+		case PLEMMA: return plemma[row];
+		case POS: return LabelDictionary.decode(pos[row]);
+		case PPOS: return LabelDictionary.decode(ppos[row]);
+		case FEAT: return feat[row];
+		case PFEAT: return pfeat[row];
+		case HEAD: return numberToString(head[row]);
+		case PHEAD: return numberToString(phead[row]);
+		case DEPREL: return LabelDictionary.decode(deprel[row]);
+		case PDEPREL: return LabelDictionary.decode(pdeprel[row]);
+		case FILLPRED: return LabelDictionary.decode(fillpred[row]);
+		case PRED: return pred[row];
+		default: return LabelDictionary.decode(getApredCode(row, column - APRED));
+		}
+	}
+
+	/**
+	 * Sets value of a column.
+	 *
+	 * @param row row index
+	 * @param column column index (CoNLL 2009 order)
+	 * @param value new value, null is '_'
+	 */
+	void set(int row, int column, String value) {
+		if (value == null) {
+			value = EMPTY;
+		}
+		switch (column) {
+		case ID: id[row] = stringToNumber(value); break;
+		case FORM: form[row] = value; break;
+		case LEMMA: lemma[row] = value; break;
+		// predicted lemma is mostly the same as lemma, share the instance
+		case PLEMMA: plemma[row] = value.equals(lemma[row]) ? lemma[row] : value; break;
+		case POS: pos[row] = LabelDictionary.encode(value); break;
+		case PPOS: ppos[row] = LabelDictionary.encode(value); break;
+		case FEAT: feat[row] = value; break;
+		// predicted features are mostly the same as features, share the instance
+		case PFEAT: pfeat[row] = value.equals(feat[row]) ? feat[row] : value; break;
+		case HEAD: head[row] = stringToNumber(value); break;
+		case PHEAD: phead[row] = stringToNumber(value); break;
+		case DEPREL: deprel[row] = LabelDictionary.encode(value); break;
+		case PDEPREL: pdeprel[row] = LabelDictionary.encode(value); break;
+		case FILLPRED: fillpred[row] = LabelDictionary.encode(value); break;
+		case PRED: pred[row] = value; break;
+		default: setApredCode(row, column - APRED, LabelDictionary.encode(value));
+		}
+	}
+
+	/**
+	 * @return ID of the row, NONE if it is not a number
+	 */
+	int getId(int row) {
+		return Math.max(NONE, id[row]);
+	}
+
+	/**
+	 * @return PHEAD of the row, NONE if it is not a number
+	 */
+	int getPhead(int row) {
+		return Math.max(NONE, phead[row]);
+	}
+
+	/**
+	 * @return HEAD of the row, NONE if it is not a number
+	 */
+	int getHead(int row) {
+		return Math.max(NONE, head[row]);
+	}
+
+	/**
+	 * @return true if APRED column of the row is not '_'
+	 */
+	boolean hasApred(int row, int argColumn) {
+		return getApredCode(row, argColumn) != LabelDictionary.EMPTY;
+	}
+
+	/**
+	 * @return number of non-empty APRED columns of the row
+	 */
+	int getArgCount(int row) {
+		return (args[row] == null) ? 0 : args[row].length / 2;
+	}
+
+	/**
+	 * @return APRED column index (= predicate order) of i-th argument
+	 * 		label of the row
+	 */
+	int getArgColumn(int row, int i) {
+		return args[row][2 * i];
+	}
+
+	/**
+	 * @return i-th argument label of the row
+	 */
+	String getArgLabel(int row, int i) {
+		return LabelDictionary.decode(args[row][2 * i + 1]);
+	}
+
+	/**
+	 * @return number of APRED columns
+	 */
+	int getArgColumns() {
+		return argColumns;
+	}
+
+	/**
+	 * Dictionary code of APRED column.
+	 */
+	private int getApredCode(int row, int argColumn) {
+		int[] pairs = args[row];
+		if (pairs != null) {
+			for (int i = 0; i < pairs.length; i += 2) {
+				if (pairs[i] == argColumn) {
+					return pairs[i + 1];
+				}
+			}
+		}
+		return LabelDictionary.EMPTY;
+	}
+
+	/**
+	 * Sets dictionary code of APRED column, empty value removes the pair.
+	 */
+	private void setApredCode(int row, int argColumn, int code) {
+		argColumns = Math.max(argColumns, argColumn + 1);
+		int[] pairs = args[row];
+		int length = (pairs == null) ? 0 : pairs.length;
+
+		// existing column
+		for (int i = 0; i < length; i += 2) {
+			if (pairs[i] == argColumn) {
+				if (code != LabelDictionary.EMPTY) {
+					pairs[i + 1] = code;
+					return;
+				}
+				int[] smaller = new int[length - 2];
+				System.arraycopy(pairs, 0, smaller, 0, i);
+				System.arraycopy(pairs, i + 2, smaller, i, length - i - 2);
+				args[row] = (smaller.length == 0) ? null : smaller;
+				return;
+			}
+		}
+
+		if (code == LabelDictionary.EMPTY) {
+			return;
+		}
+
+		// new column, keep pairs sorted by column
+		int at = 0;
+		while (at < length && pairs[at] < argColumn) {
+			at += 2;
+		}
+		int[] bigger = new int[length + 2];
+		if (pairs != null) {
+			System.arraycopy(pairs, 0, bigger, 0, at);
+			System.arraycopy(pairs, at, bigger, at + 2, length - at);
+		}
+		bigger[at] = argColumn;
+		bigger[at + 1] = code;
+		args[row] = bigger;
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Numeric column value of a String.
+	 */
+	private int stringToNumber(String value) {
+		if (value.length() > 0 && value.length() < 10) {
+			int number = 0;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < '0' || c > '9') {
+					number = -1;
+					break;
+				}
+				number = number * 10 + (c - '0');
+			}
+			if (number >= 0) {
+				return number;
+			}
+		}
+		return EMPTY.equals(value) ? NONE : textToNumber(value);
+	}
+
+	/**
+	 * Numeric column value of a non-numeric String, kept in texts of
+	 * this table.
+	 */
+	private int textToNumber(String value) {
+		if (texts == null) {
+			texts = new ArrayList<String>(2);
+		}
+		int index = texts.indexOf(value);
+		if (index < 0) {
+			index = texts.size();
+			texts.add(value);
+		}
+		return -index - 2;
+	}
+
+	/**
+	 * String of numeric column value.
+	 */
+	private String numberToString(int value) {
+		if (value >= 0) {
+			return Integer.toString(value);
+		}
+		return (value == NONE) ? EMPTY : texts.get(-value - 2);
+	}
+
+}
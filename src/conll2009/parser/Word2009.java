@@ -6,13 +6,17 @@
  */
 package conll2009.parser;
 
-import java.util.Arrays;
-
 /** 
  * <p>Class representing a single word in a sentence, together
  * with all it's features described by CoNLL 2009 data format:
  * http://ufal.mff.cuni.cz/conll2009-st/task-description.html#Dataformat</p> 
  * 
+ * <p>Data are not kept in the word itself, the word is a view of one row 
+ * of the column storage of its sentence (see {@link TokenTable}).</p>
+ * 
+ * <p>A null value given to the constructor or a setter is stored 
+ * as empty ('_').</p>
+ * 
  *  @version 0.1  
  *  @author jendarybak@gmail.com
  *  @link http://github.com/jendarybak/CoNLL2009_DataParser
@@ -21,19 +25,17 @@ public class Word2009 implements IWord {
 	/*
 	Data format fields:
 	ID, FORM, LEMMA, PLEMMA, POS, PPOS, FEAT, PFEAT, HEAD, PHEAD, DEPREL, PDEPREL,
-	FILLPRED, PRED, APRED1 - APRED16
+	FILLPRED, PRED, APRED1 - APREDn (one column for each predicate)
 	*/
 	
-	/* Row of data belonging to one word */
-	String dataRow[];
+	/* Table with data of the sentence, this word is one row of it */
+	private TokenTable table;
 
-	/* Array of predicate arguments */
-	String argsArray[];	
+	/* Row of data belonging to one word */
+	private int row;
 	
-	/* Number of data columns (word features) */
-	private final int COLUMNS = 30;
-
-	/* Number of data columns (word features) */
+	/* Number of APRED columns with named getters and setters, 
+	 * there can be any number of APRED columns */
 	private final int ARG_COLUMNS = 16;
 	
 	/**
@@ -42,8 +44,20 @@ public class Word2009 implements IWord {
 	 * */
 	public Word2009() {
 		super();
-		this.dataRow = new String[COLUMNS];
-		Arrays.fill(this.dataRow, "_");
+		this.table = new TokenTable(1);
+		this.row = table.addRow();
+	}
+	
+	/**
+	 * View of one row of a sentence table.
+	 * 
+	 * @param table data of the sentence
+	 * @param row row of this word
+	 * */
+	Word2009(TokenTable table, int row) {
+		super();
+		this.table = table;
+		this.row = row;
 	}
 	
 	/**
@@ -57,38 +71,11 @@ public class Word2009 implements IWord {
 			String apred4, String apred5, String apred6, String apred7, String apred8, 
 			String apred9, String apred10, String apred11, String apred12, String apred13, 
 			String apred14, String apred15, String apred16) {
-		super();
-		this.dataRow[0] = id;
-		this.dataRow[1] = form;
-		this.dataRow[2] = lemma;
-		this.dataRow[3] = plemma;
-		this.dataRow[4] = pos;
-		this.dataRow[5] = ppos;
-		this.dataRow[6] = feat;
-		this.dataRow[7] = pfeat;
-		this.dataRow[8] = head;
-		this.dataRow[9] = phead;
-		this.dataRow[10] = deprel;
-		this.dataRow[11] = pdeprel;
-		this.dataRow[12] = fillpred;
-		this.dataRow[13] = pred;
-		
-		this.dataRow[14] = apred1;
-		this.dataRow[15] = apred2;
-		this.dataRow[16] = apred3;
-		this.dataRow[17] = apred4;
-		this.dataRow[18] = apred5;
-		this.dataRow[19] = apred6;
-		this.dataRow[20] = apred7;
-		this.dataRow[21] = apred8;
-		this.dataRow[22] = apred9;
-		this.dataRow[23] = apred10;
-		this.dataRow[24] = apred11;
-		this.dataRow[25] = apred12;
-		this.dataRow[26] = apred13;
-		this.dataRow[27] = apred14;
-		this.dataRow[28] = apred15;
-		this.dataRow[29] = apred16;
+		this();
+		parseArray(new String[] {id, form, lemma, plemma, pos, ppos, feat, pfeat,
+				head, phead, deprel, pdeprel, fillpred, pred, 
+				apred1, apred2, apred3, apred4, apred5, apred6, apred7, apred8,
+				apred9, apred10, apred11, apred12, apred13, apred14, apred15, apred16});
 	}
 	
 	/**
@@ -98,15 +85,32 @@ public class Word2009 implements IWord {
 	 * */
 	public Word2009 parseArray(String[] dataArray) {
 		
-		for (int i = 0; i < dataArray.length && i < dataRow.length; i++) {
-			this.dataRow[i] = dataArray[i];
+		for (int i = 0; i < dataArray.length; i++) {
+			table.set(row, i, dataArray[i]);
 		}
 		
-		this.argsArray = Arrays.copyOfRange(this.dataRow, 
-				COLUMNS-ARG_COLUMNS, COLUMNS-1);
-		
 		return this;
 	}
+	
+	/**
+	 * Moves the data of this word to the table of a sentence.
+	 * 
+	 * @param sentenceTable table of the sentence
+	 * */
+	void moveTo(TokenTable sentenceTable) {
+		if (table != sentenceTable) {
+			row = sentenceTable.copyRow(table, row);
+			table = sentenceTable;
+		}
+	}
+	
+	TokenTable getTable() {
+		return table;
+	}
+	
+	int getRow() {
+		return row;
+	}
 		
 
 	/**
@@ -116,131 +120,131 @@ public class Word2009 implements IWord {
 	
 	/* Returns word position in the sentence */
 	public String getId() {
-		return this.dataRow[0];
+		return table.get(row, 0);
 	}
 
 	public void setId(String id) {
-		this.dataRow[0] = id;
+		table.set(row, 0, id);
 	}
 		
 	/* Word's surface form (string) */	
 	public String getForm() {
-		return this.dataRow[1];
+		return table.get(row, 1);
 	}
 
 	public void setForm(String form) {
-		this.dataRow[1] = form;
+		table.set(row, 1, form);
 	}
 	
 	/* Canonical form of the word */
 	public String getLemma() {
-		return this.dataRow[2];
+		return table.get(row, 2);
 	}
 
 	public void setLemma(String lemma) {
-		this.dataRow[2] = lemma;
+		table.set(row, 2, lemma);
 	}
 
 	/* Automatically pre-analyzed lemma */
 	public String getPlemma() {
-		return this.dataRow[3];
+		return table.get(row, 3);
 	}
 
 	public void setPlemma(String plemma) {
-		this.dataRow[3] = plemma;
+		table.set(row, 3, plemma);
 	}
 
 	/* Part of speech category */	
 	public String getPos() {
-		return this.dataRow[4];
+		return table.get(row, 4);
 	}
 
 	public void setPos(String pos) {
-		this.dataRow[4] = pos;
+		table.set(row, 4, pos);
 	}
 
 	/* Automatically pre-analyzed 
 	 * part of speech category */	
 	public String getPpos() {
-		return this.dataRow[5];
+		return table.get(row, 5);
 	}
 
 	public void setPpos(String ppos) {
-		this.dataRow[5] = ppos;
+		table.set(row, 5, ppos);
 	}
 
 	/* Morphological and lexical features */		
 	public String getFeat() {
-		return this.dataRow[6];
+		return table.get(row, 6);
 	}
 
 	public void setFeat(String feat) {
-		this.dataRow[6] = feat;
+		table.set(row, 6, feat);
 	}
 	
 	/* Automatically pre-analyzed 
 	 * morphological and lexical features */
 	public String getPfeat() {
-		return this.dataRow[7];
+		return table.get(row, 7);
 	}
 
 	public void setPfeat(String pfeat) {
-		this.dataRow[7] = pfeat;
+		table.set(row, 7, pfeat);
 	}
 
 	/* Head node for semantic role labeling */	
 	public String getHead() {
-		return this.dataRow[8];
+		return table.get(row, 8);
 	}
 
 	public void setHead(String head) {
-		this.dataRow[8] = head;
+		table.set(row, 8, head);
 	}
 
 	/* Automatically predicted head node */	
 	public String getPhead() {
-		return this.dataRow[9];
+		return table.get(row, 9);
 	}
 
 	public void setPhead(String phead) {
-		this.dataRow[9] = phead;
+		table.set(row, 9, phead);
 	}
 
 	/* Dependency relation */		
 	public String getDeprel() {
-		return this.dataRow[10];
+		return table.get(row, 10);
 	}
 
 	public void setDeprel(String deprel) {
-		this.dataRow[10] = deprel;
+		table.set(row, 10, deprel);
 	}
 
 	/* Automatically inferred dependency relation */		
 	public String getPdeprel() {
-		return this.dataRow[11];
+		return table.get(row, 11);
 	}
 
 	public void setPdeprel(String pdeprel) {
-		this.dataRow[11] = pdeprel;
+		table.set(row, 11, pdeprel);
 	}
 
 	/* Contains Y for lines where 
 	 * PRED is/should be filled */
 	public String getFillpred() {
-		return this.dataRow[12];
+		return table.get(row, 12);
 	}
 
 	public void setFillpred(String fillpred) {
-		this.dataRow[12] = fillpred;
+		table.set(row, 12, fillpred);
 	}
 
 	/* Predicate */	
 	public String getPred() {
-		return this.dataRow[13];
+		return table.get(row, 13);
 	}
 
 	public void setPred(String pred) {
-		this.dataRow[13] = pred;
+		table.set(row, 13, pred);
 	}
 	
 	/* Returns true if this word is predicate*/
@@ -254,143 +258,190 @@ public class Word2009 implements IWord {
 	
 	/* Array of PREDs' argument dependencies and labels */
 	public String getApred_01() {
-		return this.dataRow[14];
+		return table.get(row, 14);
 	}
 
 	public void setApred_01(String apred) {
-		this.dataRow[14] = apred;
+		table.set(row, 14, apred);
 	}	
 	
 	public String getApred_02() {
-		return this.dataRow[15];
+		return table.get(row, 15);
 	}
 
 	public void setApred_02(String apred) {
-		this.dataRow[15] = apred;
+		table.set(row, 15, apred);
 	}	
 	
 	public String getApred_03() {
-		return this.dataRow[16];
+		return table.get(row, 16);
 	}
 
 	public void setApred_03(String apred) {
-		this.dataRow[16] = apred;
+		table.set(row, 16, apred);
 	}	
 	
 	public String getApred_04() {
-		return this.dataRow[17];
+		return table.get(row, 17);
 	}
 
 	public void setApred_04(String apred) {
-		this.dataRow[17] = apred;
+		table.set(row, 17, apred);
 	}	
 	
 	public String getApred_05() {
-		return this.dataRow[18];
+		return table.get(row, 18);
 	}
 
 	public void setApred_05(String apred) {
-		this.dataRow[18] = apred;
+		table.set(row, 18, apred);
 	}	
 	
 	public String getApred_06() {
-		return this.dataRow[19];
+		return table.get(row, 19);
 	}
 
 	public void setApred_06(String apred) {
-		this.dataRow[19] = apred;
+		table.set(row, 19, apred);
 	}	
 	
 	public String getApred_07() {
-		return this.dataRow[20];
+		return table.get(row, 20);
 	}
 
 	public void setApred_07(String apred) {
-		this.dataRow[20] = apred;
+		table.set(row, 20, apred);
 	}	
 	
 	public String getApred_08() {
-		return this.dataRow[21];
+		return table.get(row, 21);
 	}
 
 	public void setApred_08(String apred) {
-		this.dataRow[21] = apred;
+		table.set(row, 21, apred);
 	}	
 	
 	public String getApred_09() {
-		return this.dataRow[22];
+		return table.get(row, 22);
 	}
 
 	public void setApred_09(String apred) {
-		this.dataRow[22] = apred;
+		table.set(row, 22, apred);
 	}	
 	
 	public String getApred_10() {
-		return this.dataRow[23];
+		return table.get(row, 23);
 	}
 
 	public void setApred_10(String apred) {
-		this.dataRow[23] = apred;
+		table.set(row, 23, apred);
 	}	
 	
 	public String getApred_11() {
-		return this.dataRow[24];
+		return table.get(row, 24);
 	}
 
 	public void setApred_11(String apred) {
-		this.dataRow[24] = apred;
+		table.set(row, 24, apred);
 	}	
 	
 	public String getApred_12() {
-		return this.dataRow[25];
+		return table.get(row, 25);
 	}
 
 	public void setApred_12(String apred) {
-		this.dataRow[25] = apred;
+		table.set(row, 25, apred);
 	}	
 	
 	public String getApred_13() {
-		return this.dataRow[26];
+		return table.get(row, 26);
 	}
 
 	public void setApred_13(String apred) {
-		this.dataRow[26] = apred;
+		table.set(row, 26, apred);
 	}	
 	
 	public String getApred_14() {
-		return this.dataRow[27];
+		return table.get(row, 27);
 	}
 
 	public void setApred_14(String apred) {
-		this.dataRow[27] = apred;
+		table.set(row, 27, apred);
 	}	
 	
 	public String getApred_15() {
-		return this.dataRow[28];
+		return table.get(row, 28);
 	}
 
 	public void setApred_15(String apred) {
-		this.dataRow[28] = apred;
+		table.set(row, 28, apred);
 	}	
 	
 	public String getApred_16() {
-		return this.dataRow[29];
+		return table.get(row, 29);
 	}
 
 	public void setApred_16(String apred) {
-		this.dataRow[29] = apred;
+		table.set(row, 29, apred);
 	}
 
+	/* Value of APRED column (index from 0) */
+	public String getApred(int index) {
+		return table.get(row, TokenTable.APRED + index);
+	}
+	
+	/* Returns true if APRED column (index from 0) is not '_' */
+	public boolean hasApred(int index) {
+		return table.hasApred(row, index);
+	}
+	
+	/* Number of non-empty APRED columns */
+	public int getArgCount() {
+		return table.getArgCount(row);
+	}
+	
+	/* APRED column index (= order of the predicate) of i-th 
+	 * non-empty APRED column */
+	public int getArgPredicate(int i) {
+		return table.getArgColumn(row, i);
+	}
+	
+	/* Label of i-th non-empty APRED column */
+	public String getArgLabel(int i) {
+		return table.getArgLabel(row, i);
+	}
+	
+	/* All APRED columns of the sentence, including empty ones */
 	public String[] getArgsArray(){
+		String[] argsArray = new String[maxNumberOfArgs()];
+		for (int i = 0; i < argsArray.length; i++) {
+			argsArray[i] = getApred(i);
+		}
 		return argsArray;
 	}
 	
+	/* Word position as number, -1 if it is not a number */
+	public int getIdNumber() {
+		return table.getId(row);
+	}
+	
+	/* Head node as number, -1 if it is not a number */
+	public int getHeadNumber() {
+		return table.getHead(row);
+	}
+	
+	/* Predicted head node as number, -1 if it is not a number */
+	public int getPheadNumber() {
+		return table.getPhead(row);
+	}
+	
+	/* Number of APRED columns (at least 16 as in the original format) */
 	public int maxNumberOfArgs(){
-	  return ARG_COLUMNS;
+	  return Math.max(ARG_COLUMNS, table.getArgColumns());
 	}
 	
 	public int getFormatColumns() {
-		return COLUMNS;
+		return TokenTable.APRED + maxNumberOfArgs();
 	}
 	
 	public String toString() {
@@ -410,22 +461,10 @@ public class Word2009 implements IWord {
 		out += "\nFillpred:\t" + this.getFillpred();
 		out += "\nPred:\t\t" + this.getPred();
 		
-		if(!getApred_01().equals("_")) out += "\nApred 01:\t\t" + this.getApred_01();
-		if(!getApred_02().equals("_")) out += "\nApred 02:\t\t" + this.getApred_02();
-		if(!getApred_03().equals("_")) out += "\nApred 03:\t\t" + this.getApred_03();
-		if(!getApred_04().equals("_")) out += "\nApred 04:\t\t" + this.getApred_04();
-		if(!getApred_05().equals("_")) out += "\nApred 05:\t\t" + this.getApred_05();
-		if(!getApred_06().equals("_")) out += "\nApred 06:\t\t" + this.getApred_06();
-		if(!getApred_07().equals("_")) out += "\nApred 07:\t\t" + this.getApred_07();
-		if(!getApred_08().equals("_")) out += "\nApred 08:\t\t" + this.getApred_08();
-		if(!getApred_09().equals("_")) out += "\nApred 09:\t\t" + this.getApred_09();
-		if(!getApred_10().equals("_")) out += "\nApred 10:\t\t" + this.getApred_10();
-		if(!getApred_11().equals("_")) out += "\nApred 11:\t\t" + this.getApred_11();
-		if(!getApred_12().equals("_")) out += "\nApred 12:\t\t" + this.getApred_12();
-		if(!getApred_13().equals("_")) out += "\nApred 13:\t\t" + this.getApred_13();
-		if(!getApred_14().equals("_")) out += "\nApred 14:\t\t" + this.getApred_14();
-		if(!getApred_15().equals("_")) out += "\nApred 15:\t\t" + this.getApred_15();
-		if(!getApred_16().equals("_")) out += "\nApred 16:\t\t" + this.getApred_16();
+		for (int i = 0; i < getArgCount(); i++) {
+			int column = getArgPredicate(i) + 1;
+			out += "\nApred " + (column < 10 ? "0" : "") + column + ":\t\t" + getArgLabel(i);
+		}
 		
 		
 		
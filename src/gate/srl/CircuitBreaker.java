@@ -0,0 +1,104 @@
+/*
+ * CircuitBreaker.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+/**
+ * <p>Stops sending requests to a server which keeps failing. After
+ * <code>failureThreshold</code> failures in a row the breaker opens and
+ * requests fail immediately. When the reset time passes, requests are
+ * let through again (half open): a success closes the breaker, a failure
+ * opens it for another reset time.</p>
+ *
+ * <p>All methods are synchronized, one instance guards one server.</p>
+ */
+public class CircuitBreaker {
+
+	/** State of the breaker */
+	public enum State {
+		/** Requests are sent */
+		CLOSED,
+		/** Requests fail immediately */
+		OPEN,
+		/** Requests are sent to find out if the server is back */
+		HALF_OPEN
+	}
+
+	/** Failures in a row opening the breaker, 0 = never opens */
+	private final int failureThreshold;
+
+	/** Time (ms) the breaker stays open */
+	private final long resetMillis;
+
+	private State state = State.CLOSED;
+
+	/** Failures since the last success */
+	private int failures;
+
+	/** Time the breaker opened */
+	private long openedAt;
+
+	/** Number of times the breaker opened */
+	private long trips;
+
+	/**
+	 * @param failureThreshold failures in a row opening the breaker,
+	 * 			0 = never opens
+	 * @param resetMillis time (ms) the breaker stays open
+	 */
+	public CircuitBreaker(int failureThreshold, long resetMillis) {
+		this.failureThreshold = Math.max(0, failureThreshold);
+		this.resetMillis = Math.max(0, resetMillis);
+	}
+
+	/**
+	 * @return true if a request may be sent now
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= resetMillis) {
+			state = State.HALF_OPEN;
+		}
+		return state != State.OPEN;
+	}
+
+	/**
+	 * The server answered.
+	 */
+	public synchronized void recordSuccess() {
+		failures = 0;
+		state = State.CLOSED;
+	}
+
+	/**
+	 * The server failed (no answer or an error status).
+	 */
+	public synchronized void recordFailure() {
+		if (failureThreshold == 0) {
+			return;
+		}
+		failures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			trips++;
+		}
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/** Number of times the breaker opened */
+	public synchronized long getTrips() {
+		return trips;
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * EmbeddedSrlBackend.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.util.GateRuntimeException;
+
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import conll2009.parser.CoNLLReader;
+import conll2009.parser.IWord;
+import conll2009.parser.Parser;
+import conll2009.parser.Sentence;
+
+/**
+ * <p>Backend running mate-tools pipeline in this JVM, no serialization
+ * and no network. The mate-tools jars are not needed for compiling the
+ * plugin: they are loaded from the given directory (or from the class
+ * path) and the pipeline is called through reflection.</p>
+ *
+ * <p>The pipeline is made by <code>CompletePipeline.getCompletePipeline</code>
+ * from the same command line options as mate-tools server gets
+ * (e.g. <code>-lang eng -tokenize -lemma lemma.model -tagger tagger.model
+ * -parser parser.model -srl srl.model</code>). The answer of the pipeline
+ * is printed in CoNLL 2009 format and parsed again, so the PR sees the
+ * same sentences as from the server.</p>
+ *
+ * <p>The pipeline is not thread-safe, sentences are labelled one at a
+ * time. More pipelines would need more copies of the (large) models,
+ * use more backends or mate-tools servers for parallelism.</p>
+ */
+public class EmbeddedSrlBackend implements SrlBackend {
+
+	/** Class of mate-tools pipeline */
+	public static final String PIPELINE_CLASS = "se.lth.cs.srl.CompletePipeline";
+
+	/** Class of command line options of the pipeline */
+	public static final String OPTIONS_CLASS = "se.lth.cs.srl.options.CompletePipelineCMDLineOptions";
+
+	/** Form of the artificial root word mate-tools expects before the words */
+	private static final String ROOT_FORM = "<root>";
+
+	/** mate-tools pipeline */
+	private final Object pipeline;
+
+	/** Pipeline method labelling text, null if there is none */
+	private final Method parseText;
+
+	/** Pipeline method labelling a list of words (root first) */
+	private final Method parseWords;
+
+	/** Sentences are CoNLL rows of tokens */
+	private volatile boolean preTokenized;
+
+	/**
+	 * Loads mate-tools and its models.
+	 *
+	 * @param libDirectory directory with mate-tools jars, null if they are
+	 * 			on the class path
+	 * @param options command line options of the pipeline
+	 * @throws GateRuntimeException if mate-tools can't be loaded
+	 */
+	public EmbeddedSrlBackend(File libDirectory, String[] options) {
+		try {
+			ClassLoader loader = classLoader(libDirectory);
+			Class<?> optionsClass = Class.forName(OPTIONS_CLASS, true, loader);
+			Object pipelineOptions = optionsClass.getDeclaredConstructor().newInstance();
+			optionsClass.getMethod("parseCmdLineArgs", String[].class)
+					.invoke(pipelineOptions, (Object) options);
+
+			Class<?> pipelineClass = Class.forName(PIPELINE_CLASS, true, loader);
+			Method factory = null;
+			for (Method method : pipelineClass.getMethods()) {
+				if (method.getName().equals("getCompletePipeline")
+						&& Modifier.isStatic(method.getModifiers())
+						&& method.getParameterTypes().length == 1
+						&& method.getParameterTypes()[0].isAssignableFrom(optionsClass)) {
+					factory = method;
+				}
+			}
+			if (factory == null) {
+				throw new GateRuntimeException("No getCompletePipeline method in " + PIPELINE_CLASS);
+			}
+			pipeline = factory.invoke(null, pipelineOptions);
+			parseText = method(pipelineClass, String.class);
+			parseWords = method(pipelineClass, List.class);
+
+		} catch (ClassNotFoundException e) {
+			throw new GateRuntimeException("mate-tools not found in " + libDirectory, e);
+		} catch (InvocationTargetException e) {
+			e.getCause().printStackTrace();
+			throw new GateRuntimeException("Can't load mate-tools pipeline!", e.getCause());
+		} catch (Exception e) {
+			throw new GateRuntimeException("Can't load mate-tools pipeline!", e);
+		}
+
+		if (parseText == null && parseWords == null) {
+			throw new GateRuntimeException("No parse method in " + PIPELINE_CLASS);
+		}
+	}
+
+	/**
+	 * Loader of mate-tools classes: the loader of this class if it can see
+	 * them, otherwise one with all jars of the directory.
+	 */
+	private static ClassLoader classLoader(File libDirectory) throws MalformedURLException {
+		ClassLoader parent = EmbeddedSrlBackend.class.getClassLoader();
+		try {
+			Class.forName(PIPELINE_CLASS, false, parent);
+			return parent;
+		} catch (ClassNotFoundException e) {
+			// not on the class path
+		}
+
+		List<URL> jars = new ArrayList<URL>();
+		File[] files = (libDirectory == null) ? null : libDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(".jar")) {
+					jars.add(file.toURI().toURL());
+				}
+			}
+		}
+		return new URLClassLoader(jars.toArray(new URL[jars.size()]), parent);
+	}
+
+	/**
+	 * Public method <code>parse</code> of the pipeline with one parameter.
+	 */
+	private static Method method(Class<?> pipelineClass, Class<?> parameter) {
+		try {
+			return pipelineClass.getMethod("parse", parameter);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	public String query(String sentence) {
+		return label(sentence);
+	}
+
+	public Sentence queryParsed(String sentence) {
+		return new Parser().parse(label(sentence));
+	}
+
+	public String queryBatch(List<String> sentences) {
+		StringBuilder result = new StringBuilder();
+		for (String sentence : sentences) {
+			result.append(label(sentence)).append('\n');
+		}
+		return result.toString();
+	}
+
+	public List<Sentence> queryBatchParsed(List<String> sentences) {
+		List<Sentence> result = new ArrayList<Sentence>(sentences.size());
+		for (String sentence : sentences) {
+			result.add(queryParsed(sentence));
+		}
+		return result;
+	}
+
+	public void setPreTokenized(boolean preTokenized) {
+		this.preTokenized = preTokenized;
+	}
+
+	public void shutdown() {
+	}
+
+	/**
+	 * Labels one sentence.
+	 *
+	 * @param sentence text or CoNLL rows of its tokens
+	 * @return CoNLL 2009 rows printed by mate-tools
+	 */
+	private synchronized String label(String sentence) {
+		try {
+			Object result;
+			if (parseWords != null && (preTokenized || parseText == null)) {
+				List<String> words = new ArrayList<String>();
+				words.add(ROOT_FORM);
+				words.addAll(preTokenized ? forms(sentence) : ReplaySrlBackend.tokenize(sentence));
+				result = parseWords.invoke(pipeline, words);
+			} else {
+				// tokens separated by spaces are kept by mate-tools tokenizer
+				result = parseText.invoke(pipeline, preTokenized ? join(forms(sentence)) : sentence);
+			}
+			return result.toString().trim() + "\n";
+
+		} catch (InvocationTargetException e) {
+			e.getCause().printStackTrace();
+			throw new SrlRequestException("mate-tools failed to label the sentence!", false);
+		} catch (IllegalAccessException e) {
+			throw new GateRuntimeException(e);
+		}
+	}
+
+	private static String join(List<String> forms) {
+		StringBuilder text = new StringBuilder();
+		for (String form : forms) {
+			if (text.length() > 0) {
+				text.append(' ');
+			}
+			text.append(form);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Word forms of CoNLL rows.
+	 */
+	private static List<String> forms(String rows) {
+		List<String> forms = new ArrayList<String>();
+		for (Sentence sentence : new CoNLLReader(new StringReader(rows), 1024)) {
+			for (IWord word : sentence.getWords()) {
+				forms.add(word.getForm());
+			}
+		}
+		return forms;
+	}
+
+}
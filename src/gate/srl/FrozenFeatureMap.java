@@ -0,0 +1,65 @@
+/*
+ * FrozenFeatureMap.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.util.SimpleFeatureMapImpl;
+
+import java.util.Map;
+
+/**
+ * Feature map which can't be changed after it is made, so one instance
+ * can be shared by many annotations. A PR which wants to change features
+ * of such annotation has to give it a new feature map
+ * (<code>annotation.setFeatures(Factory.newFeatureMap())</code> with the
+ * features copied).
+ */
+public class FrozenFeatureMap extends SimpleFeatureMapImpl {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Set when the map is filled */
+	private boolean frozen;
+
+	/**
+	 * @param features features of the map
+	 */
+	public FrozenFeatureMap(Map<?, ?> features) {
+		for (Map.Entry<?, ?> feature : features.entrySet()) {
+			super.put(feature.getKey(), feature.getValue());
+		}
+		frozen = true;
+	}
+
+	public Object put(Object key, Object value) {
+		checkNotFrozen();
+		return super.put(key, value);
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public void putAll(Map map) {
+		checkNotFrozen();
+		super.putAll(map);
+	}
+
+	public Object remove(Object key) {
+		checkNotFrozen();
+		return super.remove(key);
+	}
+
+	public void clear() {
+		checkNotFrozen();
+		super.clear();
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Features shared by SRL annotations can't be changed");
+		}
+	}
+
+}
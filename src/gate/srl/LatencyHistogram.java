@@ -0,0 +1,111 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with buckets growing by powers of two
+ * (microseconds). Recording is lock-free (a few atomic additions), so it
+ * can stay on in production; percentiles are approximate (upper bound of
+ * the bucket).
+ */
+public class LatencyHistogram {
+
+	/** Bucket i holds durations below 2^i microseconds */
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	/** Sum of durations (ns) */
+	private final AtomicLong total = new AtomicLong();
+
+	/** Longest duration (ns) */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanos duration in ns
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long longest = max.get();
+		while (nanos > longest && !max.compareAndSet(longest, nanos)) {
+			longest = max.get();
+		}
+	}
+
+	/**
+	 * Approximate percentile.
+	 *
+	 * @param percentile 0 - 100
+	 * @return duration in ms, 0 if nothing was recorded
+	 */
+	public double percentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100.0 * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				// upper bound of the bucket, but not above the longest one
+				return Math.min((1L << i) / 1000.0, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Forgets all durations.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/** Sum of durations (ms) */
+	public double getTotalMillis() {
+		return total.get() / 1000000.0;
+	}
+
+	/** Average duration (ms) */
+	public double getMeanMillis() {
+		long n = count.get();
+		return (n == 0) ? 0 : getTotalMillis() / n;
+	}
+
+	/** Longest duration (ms) */
+	public double getMaxMillis() {
+		return max.get() / 1000000.0;
+	}
+
+}
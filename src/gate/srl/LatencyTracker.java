@@ -0,0 +1,79 @@
+/*
+ * LatencyTracker.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last requests of a server (ring buffer) and their
+ * percentiles. Sorted values are reused until enough new latencies
+ * are recorded, so asking for a percentile for every request is cheap.
+ * All methods are synchronized.
+ */
+public class LatencyTracker {
+
+	/** Last latencies (ms) */
+	private final long[] samples;
+
+	/** Number of recorded latencies */
+	private long count;
+
+	/** Sorted copy of the samples, null if it has to be made again */
+	private long[] sorted;
+
+	/** Count when the sorted copy was made */
+	private long sortedAt;
+
+	/**
+	 * @param capacity number of last latencies kept
+	 */
+	public LatencyTracker(int capacity) {
+		this.samples = new long[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Records latency of one request.
+	 *
+	 * @param millis latency in ms
+	 */
+	public synchronized void record(long millis) {
+		samples[(int) (count % samples.length)] = millis;
+		count++;
+	}
+
+	/**
+	 * Percentile of the kept latencies.
+	 *
+	 * @param percentile 0 - 100
+	 * @return latency in ms, -1 if nothing was recorded
+	 */
+	public synchronized long percentile(double percentile) {
+		int size = (int) Math.min(count, samples.length);
+		if (size == 0) {
+			return -1;
+		}
+
+		// sort again after 1/8 of the samples changed
+		if (sorted == null || sorted.length != size || count - sortedAt > samples.length / 8) {
+			sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			sortedAt = count;
+		}
+
+		int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+		return sorted[Math.max(0, Math.min(size - 1, index))];
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * ReplaySrlBackend.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.util.GateRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import conll2009.parser.CoNLLReader;
+import conll2009.parser.CoNLLWriter;
+import conll2009.parser.IWord;
+import conll2009.parser.Sentence;
+import conll2009.parser.Word2009;
+
+/**
+ * <p>Backend replaying recorded mate-tools output, for tests and
+ * benchmarks without the models and the network.</p>
+ *
+ * <p>Sentences found in the CoNLL file (matched by their word forms) are
+ * answered with their analysis from the file. Other sentences get a
+ * trivial one: the first verb (or the second word) is the predicate, all
+ * words depend on it, its neighbours are A0 and A1. Sentences of the file
+ * are kept as CoNLL rows, each answer is parsed from them again, so the
+ * caller may modify it (arguments are added to its predicates).</p>
+ */
+public class ReplaySrlBackend implements SrlBackend {
+
+	/** Characters split from the words of plain text */
+	private static final String PUNCTUATION = ".,;:!?\"'()[]{}";
+
+	/** CoNLL rows of sentences of the file, key is forms separated by a space */
+	private final Map<String, String> known = new HashMap<String, String>();
+
+	/** Sentences are CoNLL rows of tokens */
+	private volatile boolean preTokenized;
+
+	/**
+	 * Backend answering all sentences with the trivial analysis.
+	 */
+	public ReplaySrlBackend() {
+	}
+
+	/**
+	 * @param conllFile recorded sentences, can be null
+	 * @throws IOException if the file can't be read
+	 */
+	public ReplaySrlBackend(File conllFile) throws IOException {
+		if (conllFile != null) {
+			CoNLLReader reader = new CoNLLReader(conllFile);
+			try {
+				for (Sentence sentence : reader) {
+					known.put(key(forms(sentence)), write(Collections.singletonList(sentence)));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	public String query(String sentence) {
+		return write(Collections.singletonList(analyse(sentence, preTokenized)));
+	}
+
+	public Sentence queryParsed(String sentence) {
+		return analyse(sentence, preTokenized);
+	}
+
+	public String queryBatch(List<String> sentences) {
+		return write(queryBatchParsed(sentences));
+	}
+
+	public List<Sentence> queryBatchParsed(List<String> sentences) {
+		List<Sentence> result = new ArrayList<Sentence>(sentences.size());
+		for (String sentence : sentences) {
+			result.add(analyse(sentence, preTokenized));
+		}
+		return result;
+	}
+
+	public void setPreTokenized(boolean preTokenized) {
+		this.preTokenized = preTokenized;
+	}
+
+	public void shutdown() {
+	}
+
+	/**
+	 * Analysis of one sentence: from the CoNLL file or a trivial one.
+	 *
+	 * @param text sentence text or CoNLL rows of its tokens
+	 * @param preTokenized text is CoNLL rows
+	 * @return analysed sentence
+	 */
+	public Sentence analyse(String text, boolean preTokenized) {
+		List<String> forms = new ArrayList<String>();
+		List<String> lemmas = new ArrayList<String>();
+		List<String> tags = new ArrayList<String>();
+
+		if (preTokenized) {
+			for (Sentence rows : new CoNLLReader(new StringReader(text), 1024)) {
+				for (IWord word : rows.getWords()) {
+					Word2009 w = (Word2009) word;
+					forms.add(w.getForm());
+					lemmas.add("_".equals(w.getPlemma()) ? w.getForm().toLowerCase() : w.getPlemma());
+					tags.add(w.getPpos());
+				}
+			}
+		} else {
+			for (String form : tokenize(text)) {
+				forms.add(form);
+				lemmas.add(form.toLowerCase());
+				tags.add("_");
+			}
+		}
+
+		String rows = known.get(key(forms));
+		if (rows != null) {
+			for (Sentence sentence : new CoNLLReader(new StringReader(rows), rows.length())) {
+				return sentence;
+			}
+		}
+
+		// first verb, otherwise the second word is the predicate
+		int predicate = Math.min(1, forms.size() - 1);
+		for (int i = 0; i < tags.size(); i++) {
+			if (tags.get(i).startsWith("VB")) {
+				predicate = i;
+				break;
+			}
+		}
+
+		Sentence sentence = new Sentence();
+		for (int i = 0; i < forms.size(); i++) {
+			boolean isPredicate = i == predicate;
+			String role = (i == predicate - 1) ? "A0" : (i == predicate + 1) ? "A1" : "_";
+			sentence.addRow(new String[] {
+					Integer.toString(i + 1), forms.get(i), lemmas.get(i), lemmas.get(i),
+					tags.get(i), tags.get(i), "_", "_",
+					isPredicate ? "0" : Integer.toString(predicate + 1),
+					isPredicate ? "0" : Integer.toString(predicate + 1),
+					isPredicate ? "ROOT" : "DEP", isPredicate ? "ROOT" : "DEP",
+					isPredicate ? "Y" : "_", isPredicate ? lemmas.get(i) + ".01" : "_",
+					role});
+		}
+		return sentence;
+	}
+
+	/**
+	 * Splits text into words at white spaces, punctuation at the start
+	 * or the end of a word is a word of its own.
+	 *
+	 * @param text sentence text
+	 * @return word forms
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> forms = new ArrayList<String>();
+		for (String chunk : text.trim().split("\\s+")) {
+			int start = 0;
+			int end = chunk.length();
+			List<String> trailing = new ArrayList<String>();
+
+			while (start < end && PUNCTUATION.indexOf(chunk.charAt(start)) >= 0) {
+				forms.add(chunk.substring(start, start + 1));
+				start++;
+			}
+			while (end > start && PUNCTUATION.indexOf(chunk.charAt(end - 1)) >= 0) {
+				trailing.add(0, chunk.substring(end - 1, end));
+				end--;
+			}
+			if (end > start) {
+				forms.add(chunk.substring(start, end));
+			}
+			forms.addAll(trailing);
+		}
+		return forms;
+	}
+
+	/**
+	 * Dense CoNLL rows of the sentences.
+	 */
+	private static String write(List<Sentence> sentences) {
+		StringWriter out = new StringWriter();
+		CoNLLWriter writer = new CoNLLWriter(out);
+		try {
+			for (Sentence sentence : sentences) {
+				writer.write(sentence);
+			}
+			writer.close();
+		} catch (IOException e) {
+			throw new GateRuntimeException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Word forms of a sentence.
+	 */
+	private static List<String> forms(Sentence sentence) {
+		List<String> forms = new ArrayList<String>(sentence.getWords().size());
+		for (IWord word : sentence.getWords()) {
+			forms.add(word.getForm());
+		}
+		return forms;
+	}
+
+	/**
+	 * Key of known sentences: forms separated by a space.
+	 */
+	private static String key(List<String> forms) {
+		StringBuilder key = new StringBuilder();
+		for (String form : forms) {
+			if (key.length() > 0) {
+				key.append(' ');
+			}
+			key.append(form);
+		}
+		return key.toString();
+	}
+
+}
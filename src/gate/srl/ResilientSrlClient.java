@@ -0,0 +1,585 @@
+/*
+ * ResilientSrlClient.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import conll2009.parser.Sentence;
+
+/**
+ * <p>HTTP backend: requests to one or more mate-tools SRL servers with
+ * load balancing, retries, deadlines, circuit breakers and optional
+ * hedging. Methods are the same as of {@link SrlPOSTRequest}; a request
+ * which can't be answered ends with {@link SrlRequestException}.</p>
+ *
+ * <ul>
+ * <li>Each request goes to the available server with the lowest cost
+ * of outstanding requests (estimated from the length of sentences),
+ * weighted by its average latency (see {@link SrlEndpoint}).</li>
+ * <li>Retryable failures are sent again up to <code>maxRetries</code>
+ * times after a pause growing exponentially from the backoff time, with
+ * random jitter so that clients don't retry in step. A retry goes to
+ * another server if there is one.</li>
+ * <li>The deadline bounds the whole request including retries. A request
+ * running over the deadline is abandoned (the connection is released by
+ * its read timeout).</li>
+ * <li>The circuit breaker of each server removes it from balancing after
+ * several failures in a row, it is tried again after the reset time.
+ * Optional health checks ping all servers periodically, so that a failing
+ * server is removed and a recovered one restored without waiting for
+ * requests.</li>
+ * <li>If a hedge server is given, a request which takes longer than the
+ * given percentile of recent latencies of its server is sent to the hedge
+ * server as well, the first answer wins. The hedge server also takes
+ * requests when no other server is available.</li>
+ * </ul>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public class ResilientSrlClient implements SrlBackend {
+
+	/** Latencies needed before requests are hedged */
+	private static final int MIN_HEDGE_SAMPLES = 20;
+
+	/** Balanced servers */
+	private final List<SrlEndpoint> endpoints;
+
+	/** Server for hedged requests, can be null */
+	private final SrlEndpoint hedge;
+
+	/** Start of the search for the best server, rotates to break ties */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/** Max. number of repeated attempts */
+	private int maxRetries;
+
+	/** Pause (ms) before the first retry */
+	private long backoffMillis = 100;
+
+	/** Max. pause (ms) between retries */
+	private long maxBackoffMillis = 10000;
+
+	/** Max. duration (ms) of a request including retries, 0 = no limit */
+	private long deadlineMillis;
+
+	/** Percentile of latencies after which a request is hedged */
+	private double hedgePercentile = 95;
+
+	private final Random random = new Random();
+
+	/** Threads of attempts with a deadline or hedging, created on demand */
+	private ExecutorService executor;
+
+	/** Thread of health checks, null if they are off */
+	private ScheduledExecutorService healthChecker;
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong hedged = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	/** Sentences are CoNLL rows, for the estimate of their cost */
+	private volatile boolean preTokenized;
+
+	/**
+	 * @param primary client of the server
+	 * @param hedge client of the server for hedged requests, can be null
+	 */
+	public ResilientSrlClient(SrlPOSTRequest primary, SrlPOSTRequest hedge) {
+		this(Collections.singletonList(primary), hedge);
+	}
+
+	/**
+	 * @param servers clients of the balanced servers, at least one
+	 * @param hedge client of the server for hedged requests, can be null
+	 */
+	public ResilientSrlClient(List<SrlPOSTRequest> servers, SrlPOSTRequest hedge) {
+		if (servers.isEmpty()) {
+			throw new IllegalArgumentException("No SRL server given!");
+		}
+		List<SrlEndpoint> list = new ArrayList<SrlEndpoint>(servers.size());
+		for (SrlPOSTRequest server : servers) {
+			list.add(new SrlEndpoint(server));
+		}
+		this.endpoints = Collections.unmodifiableList(list);
+		this.hedge = (hedge == null) ? null : new SrlEndpoint(hedge);
+	}
+
+	/**
+	 * Sets retries of failed requests.
+	 *
+	 * @param maxRetries max. number of repeated attempts, 0 = no retry
+	 * @param backoffMillis pause (ms) before the first retry, doubled for
+	 * 			every next one
+	 */
+	public void setRetries(int maxRetries, long backoffMillis) {
+		this.maxRetries = Math.max(0, maxRetries);
+		this.backoffMillis = Math.max(1, backoffMillis);
+	}
+
+	/**
+	 * @param deadlineMillis max. duration (ms) of a request including
+	 * 			retries, 0 = no limit
+	 */
+	public void setDeadline(long deadlineMillis) {
+		this.deadlineMillis = Math.max(0, deadlineMillis);
+	}
+
+	/**
+	 * Sets circuit breakers of the servers.
+	 *
+	 * @param failureThreshold failures in a row opening the breaker,
+	 * 			0 = no breaker
+	 * @param resetMillis time (ms) the breaker stays open
+	 */
+	public void setCircuitBreaker(int failureThreshold, long resetMillis) {
+		for (SrlEndpoint endpoint : getAllEndpoints()) {
+			endpoint.setBreaker(new CircuitBreaker(failureThreshold, resetMillis));
+		}
+	}
+
+	/**
+	 * @param hedgePercentile percentile (0 - 100) of recent latencies of
+	 * 			a server after which a request is hedged
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * Starts (or stops) periodic health checks. Every server is pinged
+	 * (see {@link SrlPOSTRequest#ping()}): an answer closes its breaker,
+	 * a failure counts as a failed request.
+	 *
+	 * @param intervalMillis time (ms) between checks, 0 = no checks
+	 */
+	public synchronized void setHealthCheck(long intervalMillis) {
+		if (healthChecker != null) {
+			healthChecker.shutdownNow();
+			healthChecker = null;
+		}
+		if (intervalMillis <= 0) {
+			return;
+		}
+
+		healthChecker = Executors.newSingleThreadScheduledExecutor(daemonThreads("SRL-health-check"));
+		healthChecker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				checkHealth();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Pings all servers once.
+	 */
+	void checkHealth() {
+		for (SrlEndpoint endpoint : getAllEndpoints()) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			try {
+				endpoint.getClient().ping();
+				endpoint.getBreaker().recordSuccess();
+			} catch (SrlRequestException e) {
+				if (e.isRetryable()) {
+					endpoint.getBreaker().recordFailure();
+				}
+			} catch (RuntimeException e) {
+				endpoint.getBreaker().recordFailure();
+			}
+		}
+	}
+
+	/**
+	 * @see SrlPOSTRequest#setPreTokenized(boolean)
+	 */
+	public void setPreTokenized(boolean preTokenized) {
+		this.preTokenized = preTokenized;
+		for (SrlEndpoint endpoint : getAllEndpoints()) {
+			endpoint.getClient().setPreTokenized(preTokenized);
+		}
+	}
+
+	/**
+	 * @see SrlPOSTRequest#query(String)
+	 */
+	public String query(final String sentence) {
+		return call(new Call<String>() {
+			public String send(SrlPOSTRequest client) {
+				return client.query(sentence);
+			}
+		}, SentenceCost.ofRequest(sentence, preTokenized));
+	}
+
+	/**
+	 * @see SrlPOSTRequest#queryParsed(String)
+	 */
+	public Sentence queryParsed(final String sentence) {
+		return call(new Call<Sentence>() {
+			public Sentence send(SrlPOSTRequest client) {
+				return client.queryParsed(sentence);
+			}
+		}, SentenceCost.ofRequest(sentence, preTokenized));
+	}
+
+	/**
+	 * @see SrlPOSTRequest#queryBatch(List)
+	 */
+	public String queryBatch(final List<String> sentences) {
+		return call(new Call<String>() {
+			public String send(SrlPOSTRequest client) {
+				return client.queryBatch(sentences);
+			}
+		}, SentenceCost.of(sentences, preTokenized));
+	}
+
+	/**
+	 * @see SrlPOSTRequest#queryBatchParsed(List)
+	 */
+	public List<Sentence> queryBatchParsed(final List<String> sentences) {
+		return call(new Call<List<Sentence>>() {
+			public List<Sentence> send(SrlPOSTRequest client) {
+				return client.queryBatchParsed(sentences);
+			}
+		}, SentenceCost.of(sentences, preTokenized));
+	}
+
+	/**
+	 * One request sent to a server.
+	 */
+	private interface Call<T> {
+		T send(SrlPOSTRequest client);
+	}
+
+	/**
+	 * Sends the request, retries retryable failures.
+	 *
+	 * @param cost estimated cost of the request
+	 */
+	private <T> T call(Call<T> call, long cost) {
+		long deadline = (deadlineMillis > 0)
+				? System.currentTimeMillis() + deadlineMillis : Long.MAX_VALUE;
+		SrlRequestException error = null;
+		SrlEndpoint[] used = new SrlEndpoint[1];
+
+		for (int attempt = 0; attempt <= maxRetries; attempt++) {
+			if (attempt > 0) {
+				if (!error.isRetryable()) {
+					break;
+				}
+				long pause = backoff(attempt);
+				if (System.currentTimeMillis() + pause >= deadline) {
+					break;
+				}
+				sleep(pause);
+				retries.incrementAndGet();
+			}
+
+			try {
+				return attempt(call, cost, deadline, used[0], used);
+			} catch (SrlRequestException e) {
+				error = e;
+			}
+		}
+
+		failures.incrementAndGet();
+		throw error;
+	}
+
+	/**
+	 * Pause before a retry: exponential backoff with jitter (half of the
+	 * pause is random).
+	 *
+	 * @param attempt number of the attempt (1 = first retry)
+	 * @return pause in ms
+	 */
+	private long backoff(int attempt) {
+		long pause = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+		long jitter;
+		synchronized (random) {
+			jitter = (long) (random.nextDouble() * (pause / 2));
+		}
+		return pause / 2 + jitter;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SrlRequestException("Interrupted while waiting for SRL server!", false);
+		}
+	}
+
+
+	/**
+	 * The best available server.
+	 *
+	 * @param cost estimated cost of the request
+	 * @param failed server which has just failed, used only if there is
+	 * 			no other one
+	 * @return server, null if none is available
+	 */
+	private SrlEndpoint choose(long cost, SrlEndpoint failed) {
+		SrlEndpoint best = null;
+		double bestScore = Double.MAX_VALUE;
+		int size = endpoints.size();
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+		for (int i = 0; i < size; i++) {
+			SrlEndpoint endpoint = endpoints.get((start + i) % size);
+			if (endpoint == failed || !endpoint.isAvailable()) {
+				continue;
+			}
+			double score = endpoint.getScore(cost);
+			if (score < bestScore) {
+				best = endpoint;
+				bestScore = score;
+			}
+		}
+
+		if (best == null && hedge != null && hedge != failed && hedge.isAvailable()) {
+			best = hedge;
+		}
+		if (best == null && failed != null && failed.isAvailable()) {
+			best = failed;
+		}
+		return best;
+	}
+
+	/**
+	 * One attempt: request to the best server (hedged if it takes long).
+	 *
+	 * @param cost estimated cost of the request
+	 * @param failed server of the previous failed attempt, null for the
+	 * 			first one
+	 * @param used the chosen server is stored at index 0
+	 */
+	private <T> T attempt(Call<T> call, long cost, long deadline, SrlEndpoint failed, 
+			SrlEndpoint[] used) {
+		SrlEndpoint endpoint = choose(cost, failed);
+		if (endpoint == null) {
+			throw new SrlRequestException("No SRL server is available (circuit breakers open)", false);
+		}
+		used[0] = endpoint;
+
+		LatencyTracker latencies = endpoint.getLatencies();
+		long hedgeDelay = (hedge != null && endpoint != hedge && hedge.isAvailable()
+				&& latencies.getCount() >= MIN_HEDGE_SAMPLES)
+				? Math.max(1, latencies.percentile(hedgePercentile)) : -1;
+
+		// no deadline and no hedging, send on this thread
+		if (deadline == Long.MAX_VALUE && hedgeDelay < 0) {
+			return send(endpoint, call, cost);
+		}
+
+		CompletionService<T> completion = new ExecutorCompletionService<T>(getExecutor());
+		Future<T> first = completion.submit(task(endpoint, call, cost));
+		Future<T> second = null;
+		int running = 1;
+
+		try {
+			if (hedgeDelay >= 0) {
+				Future<T> done = poll(completion, Math.min(hedgeDelay, remaining(deadline)));
+				if (done != null) {
+					return result(done);
+				}
+				if (remaining(deadline) > 0) {
+					second = completion.submit(task(hedge, call, cost));
+					hedged.incrementAndGet();
+					running++;
+				}
+			}
+
+			// first answer wins, a failure waits for the other request
+			SrlRequestException error = null;
+			while (running > 0) {
+				Future<T> done = poll(completion, remaining(deadline));
+				if (done == null) {
+					throw new SrlRequestException("SRL request deadline exceeded", true);
+				}
+				running--;
+				try {
+					return result(done);
+				} catch (SrlRequestException e) {
+					error = e;
+				}
+			}
+			throw error;
+
+		} finally {
+			first.cancel(true);
+			if (second != null) {
+				second.cancel(true);
+			}
+		}
+	}
+
+	private <T> Callable<T> task(final SrlEndpoint endpoint, final Call<T> call, 
+			final long cost) {
+		return new Callable<T>() {
+			public T call() {
+				return send(endpoint, call, cost);
+			}
+		};
+	}
+
+	/**
+	 * Sends the request and records the result in the breaker and load
+	 * of the server.
+	 */
+	private <T> T send(SrlEndpoint endpoint, Call<T> call, long cost) {
+		long start = System.currentTimeMillis();
+		boolean success = false;
+		endpoint.requestStarted(cost);
+		try {
+			T result = call.send(endpoint.getClient());
+			endpoint.getBreaker().recordSuccess();
+			success = true;
+			return result;
+
+		} catch (SrlRequestException e) {
+			// an answer with error status (4xx) doesn't mean the server is down
+			if (e.isRetryable()) {
+				endpoint.getBreaker().recordFailure();
+			}
+			throw e;
+
+		} finally {
+			endpoint.requestFinished(cost, System.currentTimeMillis() - start, success);
+		}
+	}
+
+	private static long remaining(long deadline) {
+		return (deadline == Long.MAX_VALUE) ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+	}
+
+	private static <T> Future<T> poll(CompletionService<T> completion, long millis) {
+		try {
+			return (millis == Long.MAX_VALUE) ? completion.take()
+					: completion.poll(Math.max(0, millis), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SrlRequestException("Interrupted while waiting for SRL server!", false);
+		}
+	}
+
+	/**
+	 * Result of a finished attempt.
+	 */
+	private static <T> T result(Future<T> future) {
+		return result(future, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Result of an attempt, waits up to the given time.
+	 */
+	private static <T> T result(Future<T> future, long millis) {
+		try {
+			return (millis == Long.MAX_VALUE) ? future.get()
+					: future.get(Math.max(0, millis), TimeUnit.MILLISECONDS);
+
+		} catch (java.util.concurrent.TimeoutException e) {
+			throw new SrlRequestException("SRL request deadline exceeded", true);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SrlRequestException("Interrupted while waiting for SRL server!", false);
+
+		} catch (java.util.concurrent.ExecutionException e) {
+			if (e.getCause() instanceof SrlRequestException) {
+				throw (SrlRequestException) e.getCause();
+			}
+			throw new SrlRequestException("Error during communication with SRL server!", -1, e.getCause());
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(daemonThreads("SRL-attempt"));
+		}
+		return executor;
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Stops health checks and threads of abandoned attempts.
+	 */
+	public synchronized void shutdown() {
+		setHealthCheck(0);
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	/** Number of repeated attempts */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/** Number of requests sent to the hedge server as well */
+	public long getHedged() {
+		return hedged.get();
+	}
+
+	/** Number of requests which failed after all attempts */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/** Balanced servers */
+	public List<SrlEndpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/** Server for hedged requests, null if there is none */
+	public SrlEndpoint getHedge() {
+		return hedge;
+	}
+
+	/** Balanced servers and the hedge server */
+	public List<SrlEndpoint> getAllEndpoints() {
+		if (hedge == null) {
+			return endpoints;
+		}
+		List<SrlEndpoint> all = new ArrayList<SrlEndpoint>(endpoints);
+		all.add(hedge);
+		return all;
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * ResolvedSentence.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import conll2009.parser.Argument;
+import conll2009.parser.IWord;
+import conll2009.parser.Predicate;
+import conll2009.parser.Sentence;
+import conll2009.parser.Word2009;
+
+/**
+ * <p>Predicate-argument structure of one sentence reduced to what is
+ * needed for annotation: word forms and, for every argument, its label,
+ * predicate and positions of its words. Positions are relative to the
+ * sentence, so the same instance can annotate any occurrence of the
+ * sentence text.</p>
+ *
+ * <p>Instances are immutable and can be shared between threads.</p>
+ */
+public class ResolvedSentence {
+
+	/** Word forms in sentence order */
+	private final String[] forms;
+
+	/** Arguments of all predicates, predicate by predicate */
+	private final Role[] roles;
+
+	/**
+	 * @param forms word forms in sentence order
+	 * @param roles arguments of all predicates
+	 */
+	public ResolvedSentence(String[] forms, Role[] roles) {
+		this.forms = forms;
+		this.roles = roles;
+	}
+
+	/**
+	 * Reduces a parsed sentence (with arguments already assigned
+	 * to predicates).
+	 *
+	 * @param sent parsed sentence
+	 * @return resolved sentence
+	 */
+	public static ResolvedSentence from(Sentence sent) {
+		List<IWord> words = sent.getWords();
+		String[] forms = new String[words.size()];
+		for (int i = 0; i < forms.length; i++) {
+			forms[i] = words.get(i).getForm();
+		}
+
+		List<Role> roles = new ArrayList<Role>();
+		for (Predicate pred : sent.getPredicates()) {
+			for (Argument arg : pred.getArguments()) {
+				int[] tokens = new int[arg.getWords().size()];
+				int count = 0;
+				for (IWord word : arg.getWords()) {
+					int index = position(word, forms.length);
+					if (index >= 0) {
+						tokens[count++] = index;
+					}
+				}
+				if (count < tokens.length) {
+					int[] valid = new int[count];
+					System.arraycopy(tokens, 0, valid, 0, count);
+					tokens = valid;
+				}
+
+				roles.add(new Role(arg.getArgType(), arg.getPredicateString(),
+						arg.getPredicateLemma(), position(pred.getPredWord(), forms.length), tokens));
+			}
+		}
+
+		return new ResolvedSentence(forms, roles.toArray(new Role[roles.size()]));
+	}
+
+	/**
+	 * Position of the word in the sentence (CoNLL ids start from 1).
+	 *
+	 * @param word word of the sentence
+	 * @param size number of words
+	 * @return position, -1 if the id is not valid
+	 */
+	private static int position(IWord word, int size) {
+		int index;
+		if (word instanceof Word2009) {
+			index = ((Word2009) word).getIdNumber() - 1;
+		} else {
+			try {
+				index = Integer.parseInt(word.getId().trim()) - 1;
+			} catch (NumberFormatException e) {
+				index = -1;
+			}
+		}
+		return (index >= 0 && index < size) ? index : -1;
+	}
+
+	/**
+	 * Cost of keeping the sentence in memory (number of words
+	 * and of argument word references).
+	 *
+	 * @return weight
+	 */
+	public int getWeight() {
+		int weight = forms.length;
+		for (Role role : roles) {
+			weight += 1 + role.getTokens().length;
+		}
+		return weight;
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public String[] getForms() {
+		return forms;
+	}
+
+	public Role[] getRoles() {
+		return roles;
+	}
+
+	/**
+	 * One argument of a predicate.
+	 */
+	public static class Role {
+
+		/** Argument type (A0, AM-TMP, ...) */
+		private final String label;
+
+		/** Predicate surface form */
+		private final String predicateForm;
+
+		/** Predicate lemma */
+		private final String predicateLemma;
+
+		/** Position of the predicate in the sentence (-1 if unknown) */
+		private final int predicate;
+
+		/** Positions of the argument words, in sentence order */
+		private final int[] tokens;
+
+		public Role(String label, String predicateForm, String predicateLemma,
+				int predicate, int[] tokens) {
+			this.label = label;
+			this.predicateForm = predicateForm;
+			this.predicateLemma = predicateLemma;
+			this.predicate = predicate;
+			this.tokens = tokens;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public String getPredicateForm() {
+			return predicateForm;
+		}
+
+		public String getPredicateLemma() {
+			return predicateLemma;
+		}
+
+		public int getPredicate() {
+			return predicate;
+		}
+
+		public int[] getTokens() {
+			return tokens;
+		}
+	}
+
+}
@@ -9,18 +9,37 @@
 
 package gate.srl;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
-import java.util.Iterator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
-import conll2009.parser.Argument;
-import conll2009.parser.IWord;
 import conll2009.parser.Parser;
-import conll2009.parser.Predicate;
 import conll2009.parser.Sentence;
 
 import gate.*;
@@ -46,7 +65,7 @@ import gate.util.*;
  */
 @CreoleResource(name = "Semantic Role Labeling", comment = "Mate-tools wrapper for GATE.")
 public class SRL extends AbstractLanguageAnalyser
-  implements ProcessingResource {
+  implements ProcessingResource, ControllerAwarePR {
 	  
 	/** 
 	 * First version of this plugin
@@ -58,6 +77,49 @@ public class SRL extends AbstractLanguageAnalyser
 
 	/** Sentence annotation name */
   private static final String SENTENCE_ANNOTATION_TYPE = "Sentence";
+
+	/** Document feature with ids of sentences SRL server failed to answer */
+	public static final String FAILED_SENTENCES_FEATURE = "srlFailedSentences";
+	
+	/** Document feature with counters and stage times of the document */
+	public static final String METRICS_FEATURE = "srlMetrics";
+	
+	/** Feature of SRL annotations: argument label */
+	public static final String ARGUMENT_TYPE_FEATURE = "apredType";
+	
+	/** Feature of SRL annotations: surface form of the predicate */
+	public static final String PREDICATE_STRING_FEATURE = "predString";
+	
+	/** Feature of SRL annotations: lemma of the predicate */
+	public static final String PREDICATE_LEMMA_FEATURE = "predLemma";
+	
+	/** Feature of SRL annotations: surface form of the argument */
+	public static final String ARGUMENT_STRING_FEATURE = "string";
+	
+	/** Sentence feature with the hash of the text sent (incremental mode) */
+	public static final String SENTENCE_HASH_FEATURE = "srlHash";
+	
+	/** Sentence feature with ids of its SRL annotations (incremental mode) */
+	public static final String SENTENCE_ANNOTATIONS_FEATURE = "srlAnnotationIds";
+	
+	/** Sentence feature with the offset of its first SRL annotation from the 
+	 * start of the sentence (incremental mode) */
+	public static final String SENTENCE_OFFSET_FEATURE = "srlOffset";
+	
+	/** Document feature with all predicates and arguments, see {@link SrlDocumentStructure} */
+	public static final String STRUCTURE_FEATURE = "srlStructure";
+
+	/** Number of columns of CoNLL 2009 rows (without APREDs) */
+	private static final int CONLL_COLUMNS = 14;
+
+	/** Backend of mate-tools server(s), see {@link ResilientSrlClient} */
+	public static final String BACKEND_HTTP = "http";
+
+	/** Backend of mate-tools in this JVM, see {@link EmbeddedSrlBackend} */
+	public static final String BACKEND_EMBEDDED = "embedded";
+
+	/** Backend of recorded output, see {@link ReplaySrlBackend} */
+	public static final String BACKEND_REPLAY = "replay";
 		  
 	  
 	/** The name of the annotation set used for input */
@@ -66,8 +128,182 @@ public class SRL extends AbstractLanguageAnalyser
 	/** The name of the annotation set used for sentences */
 	private String sentenceAnnotationSet;	
 
-	/** Address of SRL server */
+	/** Addresses of SRL servers, separated by comma or whitespace */
 	private String srlServerUrlString;
+	
+	/** http, embedded, replay or class name of an SrlBackend */
+	private String srlBackend;
+	
+	/** Directory with mate-tools jars of the embedded backend */
+	private URL mateToolsLibURL;
+	
+	/** Command line options of the embedded mate-tools pipeline */
+	private String mateToolsOptions;
+	
+	/** CoNLL file with output replayed by the replay backend */
+	private URL replayFileURL;
+	
+	/** Share the backend and request batches with copies of this PR */
+	private Boolean shareClient;
+	
+	/** Max. time (ms) a sentence waits for others to fill a shared batch */
+	private Integer sharedBatchLinger;
+	
+	/** Max. number of shared batches in flight */
+	private Integer sharedMaxConcurrentRequests;
+	
+	/** Record counters and stage times (published through JMX) */
+	private Boolean collectMetrics;
+	
+	/** Put counters and stage times of each document into its features */
+	private Boolean metricsDocumentFeatures;
+	
+	/** Send only sentences changed since the last run of the document */
+	private Boolean incrementalMode;
+	
+	/** Features of SRL annotations (all if not set) */
+	private List<String> annotationFeatures;
+	
+	/** Annotations with the same features share one (frozen) feature map */
+	private Boolean shareFeatureMaps;
+	
+	/** Store predicates and arguments in one document feature */
+	private Boolean storeStructure;
+	
+	/** Add an SRL annotation for each argument */
+	private Boolean createAnnotations;
+	
+	/** Balance batches by the estimated cost of sentences, send the longest first */
+	private Boolean lengthAwareScheduling;
+	
+	/** Send Token annotations instead of the sentence text */
+	private Boolean usePreTokenizedInput;
+	
+	/** The name of the annotation set used for tokens */
+	private String tokenAnnotationSet;
+	
+	/** Type of token annotations */
+	private String tokenAnnotationType;
+	
+	/** Token feature with part of speech, sent as PPOS */
+	private String posFeature;
+	
+	/** Token feature with lemma, sent as PLEMMA */
+	private String lemmaFeature;
+	
+	/** Timeout (ms) for connecting to SRL server */
+	private Integer connectTimeout;
+	
+	/** Timeout (ms) for reading the response of SRL server */
+	private Integer readTimeout;
+	
+	/** Max. number of connections to SRL server kept open */
+	private Integer maxConnections;
+	
+	/** Max. number of repeated attempts of a failed request */
+	private Integer maxRetries;
+	
+	/** Pause (ms) before the first retry, doubled for every next one */
+	private Integer retryBackoff;
+	
+	/** Max. duration (ms) of a request including retries, 0 = no limit */
+	private Integer requestDeadline;
+	
+	/** Failures in a row after which requests fail immediately, 0 = never */
+	private Integer circuitBreakerThreshold;
+	
+	/** Time (ms) before requests are sent again after the breaker opened */
+	private Integer circuitBreakerResetTime;
+	
+	/** Time (ms) between health checks of SRL servers, 0 = no checks */
+	private Integer healthCheckInterval;
+	
+	/** Second SRL server for hedged requests (no hedging if not set) */
+	private String hedgeServerUrlString;
+	
+	/** Percentile of latencies after which a request is hedged */
+	private Integer hedgePercentile;
+	
+	/** Skip sentences SRL server failed to answer instead of failing */
+	private Boolean skipFailedSentences;
+	
+	/** Ask SRL server for the compact (sparse CoNLL) response format */
+	private Boolean compactResponseFormat;
+	
+	/** Accept compressed responses of SRL server */
+	private Boolean compressResponses;
+	
+	/** Max. number of sentences sent to SRL server at once */
+	private Integer maxConcurrentRequests;
+	
+	/** Max. number of batches waiting between pipeline stages, 0 = no pipeline */
+	private Integer pipelineQueueSize;
+	
+	/** Max. number of sentences sent in one request */
+	private Integer batchSize;
+	
+	/** Max. size (bytes of UTF-8 text) of sentences sent in one request */
+	private Integer batchMaxBytes;
+	
+	/** File with cached responses of SRL server (no cache if not set) */
+	private URL responseCacheURL;
+	
+	/** Max. size of the response cache file in MB */
+	private Integer responseCacheMaxMB;
+	
+	/** Model tag separating cached responses of different models */
+	private String responseCacheModelTag;
+	
+	/** Persistent cache of responses, null if disabled */
+	private SrlResponseCache responseCache;
+	
+	/** Max. weight (words) of sentence structures kept in memory, 0 = no cache */
+	private Integer structureCacheSize;
+	
+	/** Time to live (s) of sentence structures kept in memory, 0 = forever */
+	private Integer structureCacheTTL;
+	
+	/** In-memory cache of resolved sentences, null if disabled */
+	private SentenceStructureCache structureCache;
+	
+	/** Backend shared by all requests of this PR (keeps connections alive) */
+	private SrlBackend srlClient;
+	
+	/** Executor for concurrent sentence processing, created on demand */
+	private transient ExecutorService executor;
+	
+	/** Number of threads of the executor */
+	private transient int executorThreads;
+	
+	/** Threads of pipeline stages, created on demand */
+	private transient ExecutorService pipelineExecutor;
+	
+	/** Dispatchers shared by copies of this PR, key is the backend configuration */
+	private static final Map<String, SharedBackend> SHARED_BACKENDS = new HashMap<String, SharedBackend>();
+	
+	/** Key of the shared dispatcher used by this PR, null if not shared */
+	private String sharedBackendKey;
+	
+	/** JVM-wide metrics, null if they are not collected */
+	private transient SrlMetrics metrics;
+	
+	/** Metrics of the document being processed, null if not asked for */
+	private transient volatile SrlMetrics documentMetrics;
+	
+	/** Features of SRL annotations of the document being processed */
+	private transient volatile Set<String> emittedFeatures;
+	
+	/** Feature maps shared in the document being processed, null if not shared */
+	private transient volatile ConcurrentHashMap<String, FeatureMap> sharedFeatureMaps;
+	
+	/** Whether SRL annotations are added to the document being processed */
+	private transient volatile boolean annotating;
+	
+	/** Structure of the document being processed, null if not stored */
+	private transient SrlDocumentStructure.Builder structureBuilder;
+	
+	/** Arguments waiting for earlier sentences, null if batches are in document order */
+	private transient OrderedArguments orderedArguments;
 	  
 	/**
 	 * Initializes this resource
@@ -76,20 +312,271 @@ public class SRL extends AbstractLanguageAnalyser
 	 * @throws ResourceInstantiationException
 	 */
 	public Resource init() throws ResourceInstantiationException {
+		metrics = (collectMetrics == null || collectMetrics.booleanValue()) 
+				? SrlMetrics.getGlobal() : null;
+		
+		String backend = backendName();
+		if (shareClient != null && shareClient.booleanValue()) {
+			srlClient = acquireSharedBackend(backend);
+		} else {
+			srlClient = newBackend(backend);
+		}
+	    
+	    if (intValue(structureCacheSize, 0) > 0) {
+	    	structureCache = new SentenceStructureCache(intValue(structureCacheSize, 0), 
+	    			intValue(structureCacheTTL, 0) * 1000L);
+	    }
+	    
+	    // responses of different servers (or models) are not mixed
+	    if (responseCacheURL != null) {
+	    	String namespace = (responseCacheModelTag == null || responseCacheModelTag.trim().length() == 0)
+	    			? (BACKEND_HTTP.equals(backend) ? srlServerUrlString : backend) 
+	    			: responseCacheModelTag.trim();
+	    	try {
+	    		responseCache = new SrlResponseCache(Files.fileFromURL(responseCacheURL), 
+	    				intValue(responseCacheMaxMB, 0) * 1024L * 1024L, namespace);
+	    	} catch (IOException e) {
+	    		throw new ResourceInstantiationException("Can't open SRL response cache.", e);
+	    	}
+	    }
+	    
+	    return this;
+	}
+	  
+	/**
+	 * Backend labelling the sentences.
+	 * 
+	 * @param backend name of the backend, see {@link #backendName()}
+	 * @return new backend
+	 * @throws ResourceInstantiationException if it can't be made
+	 */
+	private SrlBackend newBackend(String backend) throws ResourceInstantiationException {
+		if (BACKEND_HTTP.equals(backend)) {
+			return newHttpBackend();
+			
+		} else if (BACKEND_EMBEDDED.equals(backend)) {
+			String options = (mateToolsOptions == null) ? "" : mateToolsOptions.trim();
+			try {
+				return new EmbeddedSrlBackend(
+						(mateToolsLibURL == null) ? null : Files.fileFromURL(mateToolsLibURL), 
+						(options.length() == 0) ? new String[0] : options.split("\\s+"));
+			} catch (GateRuntimeException e) {
+				throw new ResourceInstantiationException("Can't load embedded mate-tools.", e);
+			}
+			
+		} else if (BACKEND_REPLAY.equals(backend)) {
+			try {
+				return new ReplaySrlBackend(
+						(replayFileURL == null) ? null : Files.fileFromURL(replayFileURL));
+			} catch (IOException e) {
+				throw new ResourceInstantiationException("Can't read recorded SRL output.", e);
+			}
+			
+		} else {
+			// class name of another backend
+			try {
+				Class<?> backendClass = Class.forName(backend, true, getClass().getClassLoader());
+				return (SrlBackend) backendClass.getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				throw new ResourceInstantiationException("Unknown SRL backend: " + backend, e);
+			}
+		}
+	}
+	
+	/**
+	 * Dispatcher shared by all copies of this PR with the same backend, 
+	 * input mode and batch settings (e.g. copies made by a multi-threaded 
+	 * corpus controller), made by the first copy.
+	 * 
+	 * @param backend name of the backend
+	 * @return shared dispatcher
+	 * @throws ResourceInstantiationException if the backend can't be made
+	 */
+	private SrlBackend acquireSharedBackend(String backend) throws ResourceInstantiationException {
+		String key = sharedBackendKey(backend);
+		synchronized (SHARED_BACKENDS) {
+			SharedBackend shared = SHARED_BACKENDS.get(key);
+			if (shared == null) {
+				SrlDispatcher dispatcher = new SrlDispatcher(newBackend(backend), 
+						intValue(batchSize, 1), intValue(batchMaxBytes, 0), 
+						intValue(sharedBatchLinger, 5), intValue(sharedMaxConcurrentRequests, 4));
+				// the input mode is part of the key, copies never change it
+				dispatcher.setPreTokenized(isPreTokenized());
+				shared = new SharedBackend(dispatcher);
+				SHARED_BACKENDS.put(key, shared);
+			}
+			shared.users++;
+			sharedBackendKey = key;
+			return shared.dispatcher;
+		}
+	}
+	
+	/**
+	 * Key of the shared dispatcher: copies share it only if they send the 
+	 * same input to the same backend in the same batches and their clients 
+	 * are configured the same way (see {@link #newHttpBackend()} and 
+	 * {@link #newClient(String)}).
+	 * 
+	 * @param backend name of the backend
+	 * @return key in the registry of shared dispatchers
+	 */
+	private String sharedBackendKey(String backend) {
+		StringBuilder key = new StringBuilder(backend);
+		for (Object setting : new Object[] {
+				// backend
+				srlServerUrlString, hedgeServerUrlString, mateToolsLibURL, mateToolsOptions, 
+				replayFileURL, isPreTokenized(), 
+				// batches
+				intValue(batchSize, 1), intValue(batchMaxBytes, 0), 
+				intValue(sharedBatchLinger, 5), intValue(sharedMaxConcurrentRequests, 4), 
+				// resilience of the client
+				intValue(maxRetries, 0), intValue(retryBackoff, 100), intValue(requestDeadline, 0), 
+				intValue(circuitBreakerThreshold, 0), intValue(circuitBreakerResetTime, 0), 
+				intValue(hedgePercentile, 95), intValue(healthCheckInterval, 0), 
+				// connections
+				intValue(connectTimeout, 0), intValue(readTimeout, 0), intValue(maxConnections, 1), 
+				compactResponseFormat != null && compactResponseFormat.booleanValue(), 
+				compressResponses != null && compressResponses.booleanValue(), 
+				metrics != null}) {
+			key.append('|').append(setting);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Releases a shared dispatcher, the last copy shuts it down.
+	 * 
+	 * @param key key of the dispatcher, see {@link #sharedBackendKey(String)}
+	 */
+	private static void releaseSharedBackend(String key) {
+		synchronized (SHARED_BACKENDS) {
+			SharedBackend shared = SHARED_BACKENDS.get(key);
+			if (shared != null && --shared.users == 0) {
+				SHARED_BACKENDS.remove(key);
+				shared.dispatcher.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Nothing to prepare, the backend is made in init().
+	 */
+	public void controllerExecutionStarted(Controller c) throws ExecutionException {
+	}
+	
+	/**
+	 * Sends sentences still waiting in the shared dispatcher.
+	 */
+	public void controllerExecutionFinished(Controller c) throws ExecutionException {
+		if (srlClient instanceof SrlDispatcher) {
+			((SrlDispatcher) srlClient).flush();
+		}
+	}
+	
+	/**
+	 * Ends sentences waiting in the shared dispatcher, so that other 
+	 * copies of this PR don't wait for them.
+	 */
+	public void controllerExecutionAborted(Controller c, Throwable t) throws ExecutionException {
+		if (srlClient instanceof SrlDispatcher) {
+			((SrlDispatcher) srlClient).failPending(
+					new GateRuntimeException("Corpus processing was aborted", t));
+		}
+	}
+	
+	/**
+	 * Backend talking to mate-tools server(s) configured by the parameters.
+	 * 
+	 * @return HTTP backend
+	 * @throws ResourceInstantiationException if an URL is missing or wrong
+	 */
+	private ResilientSrlClient newHttpBackend() throws ResourceInstantiationException {
 		// DBpedia Spotlight URL is mandatory
 	    if (srlServerUrlString == null || srlServerUrlString.length() == 0) {
 	      throw new ResourceInstantiationException("SLR server URL is missing!");
 	    }
 	    
-	    // test format of DS url
-	    try {
-	      new URL(srlServerUrlString);
-	      
-	    } catch(MalformedURLException e) {
-	      throw new ResourceInstantiationException("Wrong URL format.");
+	    // test format of DS url(s)
+	    List<SrlPOSTRequest> servers = new ArrayList<SrlPOSTRequest>();
+	    for (String url : serverUrls(srlServerUrlString)) {
+	    	try {
+	    		new URL(url);
+	    	} catch(MalformedURLException e) {
+	    		throw new ResourceInstantiationException("Wrong URL format: " + url);
+	    	}
+	    	servers.add(newClient(url));
+	    }
+	    if (servers.isEmpty()) {
+	    	throw new ResourceInstantiationException("SLR server URL is missing!");
 	    }
 	    
-	    return this;
+	    SrlPOSTRequest hedgeClient = null;
+	    if (hedgeServerUrlString != null && hedgeServerUrlString.trim().length() > 0) {
+	    	try {
+	    		new URL(hedgeServerUrlString.trim());
+	    	} catch(MalformedURLException e) {
+	    		throw new ResourceInstantiationException("Wrong URL format of hedge server.");
+	    	}
+	    	hedgeClient = newClient(hedgeServerUrlString.trim());
+	    }
+	    
+	    // one client for all sentences, so the connections can be reused
+	    ResilientSrlClient client = new ResilientSrlClient(servers, hedgeClient);
+	    client.setRetries(intValue(maxRetries, 0), intValue(retryBackoff, 100));
+	    client.setDeadline(intValue(requestDeadline, 0));
+	    client.setCircuitBreaker(intValue(circuitBreakerThreshold, 0), 
+	    		intValue(circuitBreakerResetTime, 0));
+	    client.setHedgePercentile(intValue(hedgePercentile, 95));
+	    client.setHealthCheck(intValue(healthCheckInterval, 0));
+	    return client;
+	}
+	
+	/**
+	 * Name of the backend: one of BACKEND_* constants or a class name.
+	 */
+	private String backendName() {
+		if (srlBackend == null || srlBackend.trim().length() == 0) {
+			return BACKEND_HTTP;
+		}
+		String name = srlBackend.trim();
+		for (String known : new String[] {BACKEND_HTTP, BACKEND_EMBEDDED, BACKEND_REPLAY}) {
+			if (known.equalsIgnoreCase(name)) {
+				return known;
+			}
+		}
+		return name;
+	}
+	  
+	/**
+	 * Addresses of SRL servers separated by comma, semicolon or whitespace.
+	 * 
+	 * @param urls list of addresses
+	 * @return addresses
+	 */
+	static List<String> serverUrls(String urls) {
+		List<String> list = new ArrayList<String>();
+		for (String url : urls.split("[,;\\s]+")) {
+			if (url.length() > 0) {
+				list.add(url);
+			}
+		}
+		return list;
+	}
+	  
+	/**
+	 * Client of one SRL server configured by the parameters.
+	 * 
+	 * @param url address of the server
+	 * @return client
+	 */
+	private SrlPOSTRequest newClient(String url) {
+		SrlPOSTRequest client = new SrlPOSTRequest(url, 
+	    		intValue(connectTimeout, 0), intValue(readTimeout, 0), 
+	    		intValue(maxConnections, 1));
+		client.setCompactFormat(compactResponseFormat != null && compactResponseFormat.booleanValue());
+		client.setCompression(compressResponses != null && compressResponses.booleanValue());
+		client.setMetrics(metrics);
+		return client;
 	}
 	  
 	/**
@@ -111,129 +598,1495 @@ public class SRL extends AbstractLanguageAnalyser
 	    // document in plain text
 	    String documentString = document.getContent().toString();
 
-		// get senteces' annotation 
-		AnnotationSet sentences = 
-		    document.getAnnotations(sentenceAnnotationSet).get(SENTENCE_ANNOTATION_TYPE);  
-
-		// go through all sentences in document		 
-		for (Annotation sentence : sentences) { 
-			// sentence boundaries
-			long sentenceStart = sentence.getStartNode().getOffset();
-			long sentenceEnd = sentence.getEndNode().getOffset();
+		// get senteces' annotation (in document order, so the output 
+		// annotations are always added in the same order)
+		List<Annotation> sentences = 
+		    document.getAnnotations(sentenceAnnotationSet).get(SENTENCE_ANNOTATION_TYPE).inDocumentOrder();  
 
-			// send request to SRL server
-		    SrlPOSTRequest request = new SrlPOSTRequest(srlServerUrlString);
-		    String response = request.query(documentString.substring((int)sentenceStart, (int)sentenceEnd));
-		    
-		    //System.out.println("RESPONSE from SRL server:\n" + response);
-		    if (response == null) {
-		    	fireProcessFinished();
-		    	throw new GateRuntimeException("No result returned from DBpedia Spotlight!");
-		    }
-		    
-		    Parser p = new Parser();
-		    Sentence sent = p.parse(response);
-		    sent.processPredArguments();
-		    
-		    // get the annotationSet name provided by the user, or otherwise use
-		    //the default method
-		    AnnotationSet outputAs = (outputASName == null || outputASName.length() == 0) 
-		    		? document.getAnnotations() : document.getAnnotations(outputASName);
-	
-		    // iterate over all 'Resource' entities given by DBpedia Spotlight
-		    // and annotate current document
-		    for (Predicate pred : sent.getPredicates()) {
-			    for (Argument arg : pred.getArguments()) {
-			    	
-		            String patternString = "";
-		            // prepare regex pattern: ((word_a) (\s)* (word_b))
-		            for (Iterator<IWord> i = arg.getWords().iterator(); i.hasNext();) {
-		            	
-		            	IWord word = (IWord) i.next();
-		            	patternString += "(";
-		            	patternString += "("+regexSafe(word.getForm())+")";
-		            	if (i.hasNext()) { patternString +="(\\s)*"; }
-		            	patternString +=")";
-		            	
+	    // get the annotationSet name provided by the user, or otherwise use
+	    //the default method
+	    AnnotationSet outputAs = (outputASName == null || outputASName.length() == 0) 
+	    		? document.getAnnotations() : document.getAnnotations(outputASName);
+	    
+	    // ids of sentences SRL server failed to answer
+	    List<Integer> failed = new ArrayList<Integer>();
+	    
+	    long documentStart = System.nanoTime();
+	    documentMetrics = (metricsDocumentFeatures != null && metricsDocumentFeatures.booleanValue()) 
+	    		? new SrlMetrics() : null;
+	    
+	    emittedFeatures = new HashSet<String>((annotationFeatures == null) 
+	    		? Arrays.asList(ARGUMENT_TYPE_FEATURE, PREDICATE_STRING_FEATURE, 
+	    				PREDICATE_LEMMA_FEATURE, ARGUMENT_STRING_FEATURE) 
+	    		: annotationFeatures);
+	    // the surface form differs for each argument, nothing to share then
+	    sharedFeatureMaps = (shareFeatureMaps != null && shareFeatureMaps.booleanValue() 
+	    		&& !emittedFeatures.contains(ARGUMENT_STRING_FEATURE)) 
+	    		? new ConcurrentHashMap<String, FeatureMap>() : null;
+	    annotating = (createAnnotations == null || createAnnotations.booleanValue());
+	    structureBuilder = (storeStructure != null && storeStructure.booleanValue()) 
+	    		? new SrlDocumentStructure.Builder() : null;
+	    
+	    if (sharedBackendKey != null) {
+	    	// runtime parameters changed, move to the dispatcher of the new settings
+	    	String backend = backendName();
+	    	if (!sharedBackendKey.equals(sharedBackendKey(backend))) {
+	    		String previousKey = sharedBackendKey;
+	    		try {
+	    			srlClient = acquireSharedBackend(backend);
+	    		} catch (ResourceInstantiationException e) {
+	    			throw new GateRuntimeException("Can't create shared SRL backend.", e);
+	    		}
+	    		releaseSharedBackend(previousKey);
+	    	}
+	    } else {
+	    	srlClient.setPreTokenized(isPreTokenized());
+	    }
+	    
+	    try {
+	    	List<InputSentence> inputs = prepareSentences(sentences, documentString);
+	    	if (incrementalMode != null && incrementalMode.booleanValue()) {
+	    		inputs = changedSentences(inputs, outputAs);
+	    	}
+	    	List<List<InputSentence>> batches;
+	    	if (lengthAwareScheduling != null && lengthAwareScheduling.booleanValue()) {
+	    		batches = makeBalancedBatches(inputs);
+	    		orderedArguments = new OrderedArguments(inputs.size());
+	    	} else {
+	    		batches = makeBatches(inputs);
+	    	}
+	    	record(SrlMetrics.Stage.PREPARE, documentStart);
+	    	
+	    	int window = intValue(maxConcurrentRequests, 1);
+	    	int queueSize = intValue(pipelineQueueSize, 0);
+	    	if (queueSize > 0) {
+	    		executePipelined(batches, documentString, outputAs, Math.max(1, window), 
+	    				queueSize, failed);
+	    	} else if (window <= 1) {
+	    		executeSequential(batches, documentString, outputAs, failed);
+	    	} else {
+	    		executeConcurrent(batches, documentString, outputAs, window, failed);
+	    	}
+	    	
+	    	if (structureBuilder != null) {
+	    		storeStructure(sentences, inputs);
+	    	}
+	    	
+	    	if (failed.isEmpty()) {
+	    		document.getFeatures().remove(FAILED_SENTENCES_FEATURE);
+	    	} else {
+	    		document.getFeatures().put(FAILED_SENTENCES_FEATURE, failed);
+	    	}
+	    	
+	    	record(SrlMetrics.Stage.DOCUMENT, documentStart);
+	    	if (metrics != null) {
+	    		metrics.addDocuments(1);
+	    		metrics.addSentences(inputs.size());
+	    		metrics.addFailedSentences(failed.size());
+	    	}
+	    	SrlMetrics counted = documentMetrics;
+	    	if (counted != null) {
+	    		counted.addDocuments(1);
+	    		counted.addSentences(inputs.size());
+	    		counted.addFailedSentences(failed.size());
+	    		document.getFeatures().put(METRICS_FEATURE, counted.toFeatures());
+	    	}
+	    	
+	    } finally {
+	    	documentMetrics = null;
+	    	sharedFeatureMaps = null;
+	    	structureBuilder = null;
+	    	orderedArguments = null;
+	    	// process is done, nice!
+	    	fireProcessFinished();
+	    }
+	}  
+	
+	/**
+	 * Records time of a stage into the JVM-wide metrics and the metrics 
+	 * of the document (those which are collected).
+	 * 
+	 * @param stage stage of processing
+	 * @param start start of the stage (System.nanoTime())
+	 * @return end of the stage, start of the next one
+	 */
+	private long record(SrlMetrics.Stage stage, long start) {
+		long now = System.nanoTime();
+		if (metrics != null) {
+			metrics.time(stage, now - start);
+		}
+		SrlMetrics counted = documentMetrics;
+		if (counted != null) {
+			counted.time(stage, now - start);
+		}
+		return now;
+	}
+	
+	/**
+	 * Sends sentences (or batches of them) one by one and waits 
+	 * for each reply.
+	 * 
+	 * @param batches Sentence annotations in document order
+	 * @param documentString document text
+	 * @param outputAs set for the new annotations
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void executeSequential(List<List<InputSentence>> batches, 
+			String documentString, AnnotationSet outputAs, List<Integer> failed) {
+		int done = 0;
+		for (List<InputSentence> batch : batches) { 
+			List<ResolvedSentence> sents = resolveBatch(batchTexts(batch));
+			annotateBatch(batch, sents, documentString, outputAs, failed);
+			fireProgressChanged(++done * 100 / batches.size());
+		}
+	}
+	
+	/**
+	 * Keeps up to <code>window</code> requests in flight. Sending, parsing 
+	 * and argument resolution run on the executor, the results are 
+	 * annotated on the calling thread in document order.
+	 * 
+	 * @param batches Sentence annotations in document order
+	 * @param documentString document text
+	 * @param outputAs set for the new annotations
+	 * @param window max. number of requests in flight
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void executeConcurrent(List<List<InputSentence>> batches, 
+			String documentString, AnnotationSet outputAs, int window, List<Integer> failed) {
+		ExecutorService executor = getExecutor(window);
+		LinkedList<Future<List<ResolvedSentence>>> inFlight = new LinkedList<Future<List<ResolvedSentence>>>();
+		LinkedList<List<InputSentence>> inFlightBatches = new LinkedList<List<InputSentence>>();
+		int done = 0;
+		
+		try {
+			for (List<InputSentence> batch : batches) {
+				final List<String> texts = batchTexts(batch);
+				inFlight.add(executor.submit(new Callable<List<ResolvedSentence>>() {
+					public List<ResolvedSentence> call() {
+						return resolveBatch(texts);
 					}
+				}));
+				inFlightBatches.add(batch);
+				
+				// window is full, wait for the oldest request
+				if (inFlight.size() >= window) {
+					annotateBatch(inFlightBatches.removeFirst(), await(inFlight.removeFirst()), 
+							documentString, outputAs, failed);
+					fireProgressChanged(++done * 100 / batches.size());
+				}
+			}
+			
+			while (!inFlight.isEmpty()) {
+				annotateBatch(inFlightBatches.removeFirst(), await(inFlight.removeFirst()), 
+						documentString, outputAs, failed);
+				fireProgressChanged(++done * 100 / batches.size());
+			}
+			
+		} finally {
+			// on failure don't leave the remaining requests running
+			for (Future<List<ResolvedSentence>> future : inFlight) {
+				future.cancel(true);
+			}
+		}
+	}
 	
-		            // specify features
-			    	FeatureMap fm = gate.Factory.newFeatureMap();
-			    	// argument type
-		            fm.put("apredType", arg.getArgType());
-			    	// predicate surface form
-		            fm.put("predString", arg.getPredicateString());
-			    	// predicate lemma
-		            fm.put("predLemma", arg.getPredicateLemma());		            
-	
-		            
-		            Pattern pattern = Pattern.compile(patternString);
-		            Matcher matcher = pattern.matcher(documentString);
-		            while (matcher.find()) {
-		                // add feature
-			            try {
-				            
-			            	// argument surface form
-				            fm.put("string", matcher.group());
-							outputAs.add((long)matcher.start(), (long)matcher.end(), OUTPUT_LABEL, fm);
-						} catch (InvalidOffsetException e) {
-							e.printStackTrace();
+	/**
+	 * Runs the batches through three stages connected by bounded queues:
+	 * <ol>
+	 * <li>requests and parsing of the answers, up to <code>window</code> 
+	 * in flight on the request executor,</li>
+	 * <li>resolution of predicate structures and argument offsets on a 
+	 * pipeline thread,</li>
+	 * <li>writing of the annotations on the calling thread, in document 
+	 * order.</li>
+	 * </ol>
+	 * A full queue stops the stage before it, so no more than 
+	 * <code>queueSize</code> batches of answers wait in each queue even 
+	 * for a huge document.
+	 * 
+	 * @param batches Sentence annotations in document order
+	 * @param documentString document text
+	 * @param outputAs set for the new annotations
+	 * @param window max. number of requests in flight
+	 * @param queueSize max. number of batches waiting for the next stage
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void executePipelined(final List<List<InputSentence>> batches, 
+			final String documentString, AnnotationSet outputAs, int window, int queueSize, 
+			List<Integer> failed) {
+		final ExecutorService requests = getExecutor(window);
+		final Semaphore inFlight = new Semaphore(window);
+		final BlockingQueue<Future<FetchedBatch>> fetched = 
+				new ArrayBlockingQueue<Future<FetchedBatch>>(queueSize);
+		final BlockingQueue<PipelineBatch> resolved = new ArrayBlockingQueue<PipelineBatch>(queueSize);
+		ExecutorService stages = getPipelineExecutor();
+		
+		// stage 1: requests in document order
+		Future<?> sender = stages.submit(new Runnable() {
+			public void run() {
+				try {
+					for (List<InputSentence> batch : batches) {
+						final List<String> texts = batchTexts(batch);
+						inFlight.acquire();
+						FutureTask<FetchedBatch> task = new FutureTask<FetchedBatch>(
+								new Callable<FetchedBatch>() {
+							public FetchedBatch call() {
+								try {
+									return fetchBatch(texts);
+								} finally {
+									inFlight.release();
+								}
+							}
+						});
+						try {
+							requests.execute(task);
+						} catch (RuntimeException e) {
+							// executor was shut down, the next stage gets the error
+							task = failedTask(e);
+						}
+						fetched.put(task);
+					}
+				} catch (InterruptedException e) {
+					// pipeline was cancelled
+				}
+			}
+		});
+		
+		// stage 2: resolution, errors are passed to the last stage
+		Future<?> resolver = stages.submit(new Runnable() {
+			public void run() {
+				try {
+					for (List<InputSentence> batch : batches) {
+						PipelineBatch ready;
+						try {
+							List<ResolvedSentence> sents = resolve(await(fetched.take()));
+							ready = new PipelineBatch(batch, argumentSpans(batch, sents, documentString), null);
+						} catch (RuntimeException e) {
+							ready = new PipelineBatch(batch, null, e);
 						}
-		            }	
-				}			
+						resolved.put(ready);
+						if (ready.error != null) {
+							return;
+						}
+					}
+				} catch (InterruptedException e) {
+					// pipeline was cancelled
+				}
+			}
+		});
+		
+		// stage 3: annotations on this thread
+		int done = 0;
+		try {
+			for (int i = 0; i < batches.size(); i++) {
+				PipelineBatch ready = take(resolved);
+				if (ready.error != null) {
+					throw ready.error;
+				}
+				addArguments(ready.batch, ready.spans, outputAs, failed);
+				fireProgressChanged(++done * 100 / batches.size());
+			}
+			
+		} finally {
+			// on failure don't leave the stages and requests running
+			sender.cancel(true);
+			resolver.cancel(true);
+			for (Future<FetchedBatch> future : fetched) {
+				future.cancel(true);
 			}
 		}
-	    
-	    // process is done, nice!
-	    fireProcessFinished();
-	}  
+	}
 	
 	/**
-	 * Conversion of Regular expression special characters
-	 * that may occur in the text to safe notation.
+	 * Task which failed with the given exception.
+	 */
+	private static FutureTask<FetchedBatch> failedTask(final RuntimeException e) {
+		FutureTask<FetchedBatch> task = new FutureTask<FetchedBatch>(new Callable<FetchedBatch>() {
+			public FetchedBatch call() {
+				throw e;
+			}
+		});
+		task.run();
+		return task;
+	}
+	
+	/**
+	 * Takes the next item of a pipeline queue, waits if it is empty.
+	 */
+	private static <T> T take(BlockingQueue<T> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GateRuntimeException("Interrupted while waiting for SRL server!");
+		}
+	}
+	
+	/**
+	 * Pairs Sentence annotations with the text sent to SRL server: 
+	 * the covered text, or CoNLL rows of the tokens in pre-tokenized 
+	 * mode (sentences without tokens are skipped then).
 	 * 
-	 * @param string to check for unsafe characters
-	 * @return regex safe string
+	 * @param sentences Sentence annotations in document order
+	 * @param documentString document text
+	 * @return input sentences in document order
 	 */
-	public static String regexSafe(String aRegexFragment){
-	    final StringBuilder result = new StringBuilder();
-
-	    final StringCharacterIterator iterator = 
-	      new StringCharacterIterator(aRegexFragment)
-	    ;
-	    char character =  iterator.current();
-	    while (character != CharacterIterator.DONE ){
-	      /*
-	       All literals need to have backslashes doubled.
-	      */
-	      if (character == '.') {
-	        result.append("\\.");
-	      }
-	      else if (character == '\\') {
-	        result.append("\\\\");
-	      }
-	      else if (character == '?') {
-	        result.append("\\?");
-	      }
-	      else if (character == '*') {
-	        result.append("\\*");
-	      }
-	      else if (character == '+') {
-	        result.append("\\+");
-	      }
-	      else if (character == '&') {
-	        result.append("\\&");
-	      }
-	      else if (character == ':') {
-	        result.append("\\:");
-	      }
-	      else if (character == '{') {
-	        result.append("\\{");
-	      }
-	      else if (character == '}') {
-	        result.append("\\}");
-	      }
-	      else if (character == '[') {
+	private List<InputSentence> prepareSentences(List<Annotation> sentences, 
+			String documentString) {
+		List<InputSentence> inputs = new ArrayList<InputSentence>(sentences.size());
+		
+		if (!isPreTokenized()) {
+			for (Annotation sentence : sentences) {
+				inputs.add(new InputSentence(sentence, sentenceText(sentence, documentString), null));
+			}
+			return inputs;
+		}
+		
+		AnnotationSet tokenAs = (tokenAnnotationSet == null || tokenAnnotationSet.length() == 0) 
+				? document.getAnnotations() : document.getAnnotations(tokenAnnotationSet);
+		String type = (tokenAnnotationType == null || tokenAnnotationType.length() == 0) 
+				? ANNIEConstants.TOKEN_ANNOTATION_TYPE : tokenAnnotationType;
+		AnnotationSet allTokens = tokenAs.get(type);
+		
+		for (Annotation sentence : sentences) {
+			List<Annotation> tokens = allTokens.getContained(sentence.getStartNode().getOffset(), 
+					sentence.getEndNode().getOffset()).inDocumentOrder();
+			if (!tokens.isEmpty()) {
+				inputs.add(new InputSentence(sentence, conllRows(tokens, documentString), tokens));
+			}
+		}
+		return inputs;
+	}
+	
+	/**
+	 * Writes tokens as CoNLL 2009 rows: ID, FORM and (if the tokens have 
+	 * the features) PLEMMA and PPOS, other columns are empty.
+	 * 
+	 * @param tokens token annotations in document order
+	 * @param documentString document text
+	 * @return one row for each token
+	 */
+	private String conllRows(List<Annotation> tokens, String documentString) {
+		StringBuilder rows = new StringBuilder(tokens.size() * 32);
+		
+		for (int i = 0; i < tokens.size(); i++) {
+			Annotation token = tokens.get(i);
+			FeatureMap features = token.getFeatures();
+			
+			String[] columns = new String[CONLL_COLUMNS];
+			Arrays.fill(columns, "_");
+			columns[0] = Integer.toString(i + 1);
+			columns[1] = documentString.substring(token.getStartNode().getOffset().intValue(), 
+					token.getEndNode().getOffset().intValue());
+			columns[3] = featureValue(features, lemmaFeature);
+			columns[5] = featureValue(features, posFeature);
+			
+			for (int c = 0; c < columns.length; c++) {
+				if (c > 0) {
+					rows.append('\t');
+				}
+				rows.append(conllValue(columns[c]));
+			}
+			rows.append('\n');
+		}
+		return rows.toString();
+	}
+	
+	/**
+	 * Value of a token feature.
+	 * 
+	 * @param features token features
+	 * @param name feature name, can be null
+	 * @return value or '_' if not set
+	 */
+	private static String featureValue(FeatureMap features, String name) {
+		if (name == null || name.length() == 0 || features == null) {
+			return "_";
+		}
+		Object value = features.get(name);
+		return (value == null) ? "_" : value.toString();
+	}
+	
+	/**
+	 * Column value without characters separating rows and columns.
+	 * 
+	 * @param value column value
+	 * @return value safe for CoNLL row, '_' if it is empty
+	 */
+	private static String conllValue(String value) {
+		String safe = value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ').trim();
+		return (safe.length() == 0) ? "_" : safe;
+	}
+	
+	/**
+	 * Incremental mode: keeps SRL annotations of sentences whose text is 
+	 * the same as in the last run (by the hash in their features) and 
+	 * removes those of changed sentences, which are sent again. If the 
+	 * structure is stored, kept sentences must be in the previous one too: 
+	 * a Sentence annotation made again has a new id and is sent again.
+	 * 
+	 * @param inputs all input sentences in document order
+	 * @param outputAs set with SRL annotations of the last run
+	 * @return new and changed sentences in document order
+	 */
+	private List<InputSentence> changedSentences(List<InputSentence> inputs, 
+			AnnotationSet outputAs) {
+		Set<Integer> structured = null;
+		if (structureBuilder != null) {
+			structured = new HashSet<Integer>();
+			SrlDocumentStructure previous = previousStructure();
+			for (int s = 0; previous != null && s < previous.getSentenceCount(); s++) {
+				structured.add(previous.getSentenceId(s));
+			}
+		}
+		
+		List<InputSentence> changed = new ArrayList<InputSentence>();
+		for (InputSentence sentence : inputs) {
+			sentence.hash = contentHash(sentence.text);
+			boolean keep = (structured == null || structured.contains(sentence.annotation.getId())) 
+					&& keepAnnotations(sentence, outputAs);
+			if (!keep) {
+				removeAnnotations(sentence, outputAs);
+				changed.add(sentence);
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * Checks whether the sentence is the same as when its SRL annotations 
+	 * were made and they are all still there. Annotations left behind by 
+	 * a moved sentence (e.g. the text was imported again) are shifted to 
+	 * its new offset.
+	 * 
+	 * @param sentence input sentence with its hash
+	 * @param outputAs set with SRL annotations of the last run
+	 * @return true if the annotations of the sentence are valid
+	 */
+	private boolean keepAnnotations(InputSentence sentence, AnnotationSet outputAs) {
+		FeatureMap features = sentence.annotation.getFeatures();
+		Object ids = features.get(SENTENCE_ANNOTATIONS_FEATURE);
+		if (!sentence.hash.equals(features.get(SENTENCE_HASH_FEATURE)) 
+				|| !(ids instanceof Collection)) {
+			return false;
+		}
+		
+		long start = sentence.annotation.getStartNode().getOffset();
+		long end = sentence.annotation.getEndNode().getOffset();
+		List<Annotation> previous = new ArrayList<Annotation>();
+		boolean inside = true;
+		for (Object id : (Collection<?>) ids) {
+			Annotation annotation = (id instanceof Integer) ? outputAs.get((Integer) id) : null;
+			if (annotation == null) {
+				return false;
+			}
+			previous.add(annotation);
+			inside &= annotation.getStartNode().getOffset() >= start 
+					&& annotation.getEndNode().getOffset() <= end;
+		}
+		if (inside) {
+			return true;
+		}
+		
+		// the sentence moved, its annotations did not (edits of the text 
+		// before the sentence moved both, so they are placed relative to 
+		// the sentence)
+		Object offset = features.get(SENTENCE_OFFSET_FEATURE);
+		if (!(offset instanceof Number)) {
+			return false;
+		}
+		long delta = start + ((Number) offset).longValue() 
+				- previous.get(0).getStartNode().getOffset();
+		for (Annotation annotation : previous) {
+			if (annotation.getStartNode().getOffset() + delta < start 
+					|| annotation.getEndNode().getOffset() + delta > end) {
+				return false;
+			}
+		}
+		
+		List<Integer> shifted = new ArrayList<Integer>(previous.size());
+		for (Annotation annotation : previous) {
+			outputAs.remove(annotation);
+			try {
+				shifted.add(outputAs.add(annotation.getStartNode().getOffset() + delta, 
+						annotation.getEndNode().getOffset() + delta, 
+						annotation.getType(), annotation.getFeatures()));
+			} catch (InvalidOffsetException e) {
+				throw new GateRuntimeException(e);
+			}
+		}
+		features.put(SENTENCE_ANNOTATIONS_FEATURE, shifted);
+		return true;
+	}
+	
+	/**
+	 * Removes SRL annotations made for the previous version of a changed 
+	 * sentence: the recorded ones and those inside the sentence (made 
+	 * before the sentence was annotated again or without incremental mode).
+	 * 
+	 * @param sentence changed input sentence
+	 * @param outputAs set with SRL annotations of the last run
+	 */
+	private static void removeAnnotations(InputSentence sentence, AnnotationSet outputAs) {
+		FeatureMap features = sentence.annotation.getFeatures();
+		Object ids = features.get(SENTENCE_ANNOTATIONS_FEATURE);
+		if (ids instanceof Collection) {
+			for (Object id : (Collection<?>) ids) {
+				Annotation annotation = (id instanceof Integer) ? outputAs.get((Integer) id) : null;
+				if (annotation != null) {
+					outputAs.remove(annotation);
+				}
+			}
+		}
+		
+		AnnotationSet contained = outputAs.getContained(sentence.annotation.getStartNode().getOffset(), 
+				sentence.annotation.getEndNode().getOffset()).get(OUTPUT_LABEL);
+		for (Annotation annotation : new ArrayList<Annotation>(contained)) {
+			outputAs.remove(annotation);
+		}
+		
+		features.remove(SENTENCE_HASH_FEATURE);
+		features.remove(SENTENCE_ANNOTATIONS_FEATURE);
+		features.remove(SENTENCE_OFFSET_FEATURE);
+	}
+	
+	/**
+	 * Hash of the text sent for a sentence (SHA-1 in hex).
+	 * 
+	 * @param text sentence text or CoNLL rows
+	 * @return hash
+	 */
+	private static String contentHash(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+			StringBuilder hash = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hash.append(Character.forDigit((b >> 4) & 0xF, 16));
+				hash.append(Character.forDigit(b & 0xF, 16));
+			}
+			return hash.toString();
+		} catch (Exception e) {
+			throw new GateRuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Splits sentences into batches sent in one request. A batch is closed
+	 * when it has <code>batchSize</code> sentences or when the next sentence
+	 * would exceed <code>batchMaxBytes</code> (UTF-8) of text.
+	 * 
+	 * @param sentences input sentences in document order
+	 * @return batches in document order
+	 */
+	private List<List<InputSentence>> makeBatches(List<InputSentence> sentences) {
+		int maxSentences = Math.max(1, intValue(batchSize, 1));
+		int maxBytes = intValue(batchMaxBytes, 0);
+		
+		List<List<InputSentence>> batches = new ArrayList<List<InputSentence>>();
+		List<InputSentence> batch = new ArrayList<InputSentence>();
+		int batchBytes = 0;
+		
+		for (InputSentence sentence : sentences) {
+			int bytes = 0;
+			if (maxSentences > 1 && maxBytes > 0) {
+				bytes = utf8Length(sentence.text);
+			}
+			
+			if (!batch.isEmpty() && (batch.size() >= maxSentences 
+					|| (maxBytes > 0 && batchBytes + bytes > maxBytes))) {
+				batches.add(batch);
+				batch = new ArrayList<InputSentence>();
+				batchBytes = 0;
+			}
+			batch.add(sentence);
+			batchBytes += bytes;
+		}
+		
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+	
+	/**
+	 * Splits sentences into batches of about the same estimated cost 
+	 * (see {@link SentenceCost}), the most expensive batches first. 
+	 * From the longest sentence on, each sentence goes to the cheapest 
+	 * batch which has room for it (<code>batchSize</code> and 
+	 * <code>batchMaxBytes</code>), so a long sentence doesn't hold up 
+	 * a batch of short ones and the last requests are the short ones.
+	 * 
+	 * @param sentences input sentences in document order
+	 * @return batches, sentences of each batch in document order
+	 */
+	private List<List<InputSentence>> makeBalancedBatches(List<InputSentence> sentences) {
+		int maxSentences = Math.max(1, intValue(batchSize, 1));
+		int maxBytes = intValue(batchMaxBytes, 0);
+		
+		long totalBytes = 0;
+		for (int i = 0; i < sentences.size(); i++) {
+			InputSentence sentence = sentences.get(i);
+			sentence.position = i;
+			sentence.cost = SentenceCost.of((sentence.tokens != null) 
+					? sentence.tokens.size() : SentenceCost.words(sentence.text, false));
+			if (maxSentences > 1 && maxBytes > 0) {
+				sentence.bytes = utf8Length(sentence.text);
+				totalBytes += sentence.bytes;
+			}
+		}
+		List<InputSentence> longestFirst = new ArrayList<InputSentence>(sentences);
+		Collections.sort(longestFirst, new Comparator<InputSentence>() {
+			public int compare(InputSentence s1, InputSentence s2) {
+				return (s1.cost == s2.cost) ? 0 : (s1.cost > s2.cost) ? -1 : 1;
+			}
+		});
+		
+		// at least as many batches as the limits need, cheapest on top
+		int count = (sentences.size() + maxSentences - 1) / maxSentences;
+		if (maxSentences > 1 && maxBytes > 0) {
+			count = (int) Math.max(count, (totalBytes + maxBytes - 1) / maxBytes);
+		}
+		Comparator<CostBatch> byCost = new Comparator<CostBatch>() {
+			public int compare(CostBatch b1, CostBatch b2) {
+				return (b1.cost == b2.cost) ? 0 : (b1.cost < b2.cost) ? -1 : 1;
+			}
+		};
+		PriorityQueue<CostBatch> open = new PriorityQueue<CostBatch>(Math.max(1, count), byCost);
+		List<CostBatch> all = new ArrayList<CostBatch>(count);
+		for (int i = 0; i < count; i++) {
+			CostBatch batch = new CostBatch();
+			open.add(batch);
+			all.add(batch);
+		}
+		
+		List<CostBatch> skipped = new ArrayList<CostBatch>();
+		for (InputSentence sentence : longestFirst) {
+			CostBatch batch = open.poll();
+			while (batch != null && !batch.fits(sentence, maxBytes)) {
+				skipped.add(batch);
+				batch = open.poll();
+			}
+			if (batch == null) {
+				batch = new CostBatch();
+				all.add(batch);
+			}
+			batch.add(sentence);
+			
+			// full batches are left out
+			if (batch.sentences.size() < maxSentences) {
+				open.add(batch);
+			}
+			open.addAll(skipped);
+			skipped.clear();
+		}
+		
+		Collections.sort(all, Collections.reverseOrder(byCost));
+		List<List<InputSentence>> batches = new ArrayList<List<InputSentence>>(all.size());
+		for (CostBatch batch : all) {
+			if (!batch.sentences.isEmpty()) {
+				Collections.sort(batch.sentences, new Comparator<InputSentence>() {
+					public int compare(InputSentence s1, InputSentence s2) {
+						return s1.position - s2.position;
+					}
+				});
+				batches.add(batch.sentences);
+			}
+		}
+		return batches;
+	}
+	
+	/**
+	 * Number of bytes of the text in UTF-8.
+	 * 
+	 * @param text to measure
+	 * @return length in bytes
+	 */
+	static int utf8Length(String text) {
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes += 1;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				// surrogate pair = one 4 byte character
+				bytes += 4;
+				i++;
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Texts of sentences in a batch.
+	 * 
+	 * @param batch input sentences
+	 * @return texts sent to SRL server
+	 */
+	private static List<String> batchTexts(List<InputSentence> batch) {
+		List<String> texts = new ArrayList<String>(batch.size());
+		for (InputSentence sentence : batch) {
+			texts.add(sentence.text);
+		}
+		return texts;
+	}
+	
+	/**
+	 * Waits for result of a sentence task, errors are rethrown 
+	 * as GateRuntimeException.
+	 * 
+	 * @param future sentence task
+	 * @return resolved sentence
+	 */
+	private static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GateRuntimeException("Interrupted while waiting for SRL server!");
+			
+		} catch (java.util.concurrent.ExecutionException e) {
+			if (e.getCause() instanceof GateRuntimeException) {
+				throw (GateRuntimeException) e.getCause();
+			}
+			throw new GateRuntimeException("Error during processing of a sentence!", e.getCause());
+		}
+	}
+	
+	/**
+	 * Text of a sentence annotation.
+	 * 
+	 * @param sentence annotation
+	 * @param documentString document text
+	 * @return covered text
+	 */
+	private static String sentenceText(Annotation sentence, String documentString) {
+		// sentence boundaries
+		long sentenceStart = sentence.getStartNode().getOffset();
+		long sentenceEnd = sentence.getEndNode().getOffset();
+		
+		return documentString.substring((int)sentenceStart, (int)sentenceEnd);
+	}
+	
+	/**
+	 * Resolves predicate-argument structure of sentences. Sentences found 
+	 * in the structure cache are neither sent nor parsed, the rest is sent
+	 * in one batch. Safe to call from several threads.
+	 * 
+	 * @param texts sentence texts
+	 * @return resolved sentences in the same order, null for sentences
+	 * 		SRL server failed to answer (if they are skipped)
+	 */
+	private List<ResolvedSentence> resolveBatch(List<String> texts) {
+		return resolve(fetchBatch(texts));
+	}
+	
+	/**
+	 * First half of {@link #resolveBatch(List)}: takes sentences found in 
+	 * the structure cache, sends the rest and parses the answers.
+	 * 
+	 * @param texts sentence texts
+	 * @return cached and parsed sentences
+	 */
+	private FetchedBatch fetchBatch(List<String> texts) {
+		FetchedBatch fetched = new FetchedBatch(texts.size());
+		
+		for (int i = 0; i < texts.size(); i++) {
+			if (structureCache != null) {
+				fetched.resolved[i] = structureCache.get(texts.get(i));
+			}
+			if (fetched.resolved[i] == null) {
+				fetched.missing.add(texts.get(i));
+				fetched.missingIndexes.add(i);
+			}
+		}
+		
+		if (!fetched.missing.isEmpty()) {
+			long start = System.nanoTime();
+			fetched.parsed = parseBatch(fetched.missing);
+			start = record(SrlMetrics.Stage.REQUEST, start);
+			
+			for (Sentence sent : fetched.parsed) {
+				if (sent != null) {
+					sent.processPredArguments();
+				}
+			}
+			record(SrlMetrics.Stage.PRED_ARGUMENTS, start);
+		}
+		return fetched;
+	}
+	
+	/**
+	 * Second half of {@link #resolveBatch(List)}: resolves the parsed 
+	 * sentences and puts them in the structure cache.
+	 * 
+	 * @param fetched cached and parsed sentences
+	 * @return resolved sentences in the order of the batch, null for 
+	 * 		sentences SRL server failed to answer
+	 */
+	private List<ResolvedSentence> resolve(FetchedBatch fetched) {
+		if (fetched.parsed != null) {
+			long start = System.nanoTime();
+			for (int i = 0; i < fetched.parsed.size(); i++) {
+				if (fetched.parsed.get(i) == null) {
+					continue;
+				}
+				ResolvedSentence sent = ResolvedSentence.from(fetched.parsed.get(i));
+				fetched.resolved[fetched.missingIndexes.get(i)] = sent;
+				if (structureCache != null) {
+					structureCache.put(fetched.missing.get(i), sent);
+				}
+			}
+			record(SrlMetrics.Stage.RESOLVE, start);
+		}
+		
+		return Arrays.asList(fetched.resolved);
+	}
+	
+	/**
+	 * Sends the sentence to SRL server and parses the response. 
+	 * Safe to call from several threads.
+	 * 
+	 * @param text sentence text
+	 * @return parsed sentence, null if SRL server failed to answer
+	 */
+	private Sentence parseSentence(String text) {
+		Sentence sent;
+		
+		if (responseCache == null) {
+			// response is parsed while it is read from the connection
+			try {
+				sent = srlClient.queryParsed(text);
+			} catch (SrlRequestException e) {
+				return skipFailed(e);
+			}
+			
+		} else {
+			// cached response or send request to SRL server
+		    String response = responseCache.get(text);
+		    if (response == null) {
+		    	try {
+		    		response = query(text);
+		    	} catch (SrlRequestException e) {
+		    		return skipFailed(e);
+		    	}
+		    }
+		    
+		    //System.out.println("RESPONSE from SRL server:\n" + response);
+		    if (response == null) {
+		    	throw new GateRuntimeException("No result returned from SRL server!");
+		    }
+		    
+		    long start = System.nanoTime();
+		    Parser p = new Parser();
+		    sent = p.parse(response);
+		    record(SrlMetrics.Stage.PARSE, start);
+		}
+	    
+	    return sent;
+	}
+	
+	/**
+	 * Failed request: rethrown, or null if failed sentences are skipped.
+	 * 
+	 * @param e failure of the request
+	 * @return null
+	 */
+	private <T> T skipFailed(SrlRequestException e) {
+		if (metrics != null) {
+			metrics.addErrors(1);
+		}
+		SrlMetrics counted = documentMetrics;
+		if (counted != null) {
+			counted.addErrors(1);
+		}
+		if (skipFailedSentences != null && !skipFailedSentences.booleanValue()) {
+			throw e;
+		}
+		return null;
+	}
+	
+	/**
+	 * Batch that failed or wasn't answered sentence by sentence: counted, 
+	 * its sentences are sent again one by one and each of them is skipped 
+	 * or rethrown on its own.
+	 */
+	private void batchFallback() {
+		for (SrlMetrics counted : new SrlMetrics[] {metrics, documentMetrics}) {
+			if (counted != null) {
+				counted.addBatchFallbacks(1);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the sentence to SRL server and stores the response 
+	 * in the response cache (if it is used).
+	 * 
+	 * @param text sentence text
+	 * @return response of the server
+	 */
+	private String query(String text) {
+		String response = srlClient.query(text);
+		if (response != null && responseCache != null) {
+			responseCache.put(text, response);
+		}
+		return response;
+	}
+	
+	/**
+	 * Sends a batch of sentences in one request. If the server does not 
+	 * return one sentence for each of them (it doesn't support batches)
+	 * or the request fails, sentences are sent again one by one, so one 
+	 * failing sentence doesn't spoil the others. Safe to call from several 
+	 * threads.
+	 * 
+	 * @param texts sentence texts
+	 * @return parsed sentences in the same order, null for failed ones
+	 */
+	private List<Sentence> parseBatch(List<String> texts) {
+		if (responseCache != null) {
+			return parseBatchCached(texts);
+		}
+		
+		List<Sentence> sents = new ArrayList<Sentence>(texts.size());
+		
+		if (texts.size() > 1) {
+			try {
+				sents = srlClient.queryBatchParsed(texts);
+			} catch (SrlRequestException e) {
+				// the sentences are tried one by one below
+			}
+			
+			if (sents.size() == texts.size()) {
+				return sents;
+			}
+			batchFallback();
+			sents = new ArrayList<Sentence>(texts.size());
+		}
+		
+		for (String text : texts) {
+			sents.add(parseSentence(text));
+		}
+		return sents;
+	}
+	
+	/**
+	 * Same as {@link #parseBatch(List)}, but only sentences which are 
+	 * not in the response cache are sent and their responses are cached.
+	 * 
+	 * @param texts sentence texts
+	 * @return parsed sentences in the same order
+	 */
+	private List<Sentence> parseBatchCached(List<String> texts) {
+		String[] responses = new String[texts.size()];
+		List<String> missing = new ArrayList<String>();
+		List<Integer> missingIndexes = new ArrayList<Integer>();
+		
+		for (int i = 0; i < texts.size(); i++) {
+			responses[i] = responseCache.get(texts.get(i));
+			if (responses[i] == null) {
+				missing.add(texts.get(i));
+				missingIndexes.add(i);
+			}
+		}
+		
+		if (missing.size() > 1) {
+			String response = null;
+			try {
+				response = srlClient.queryBatch(missing);
+			} catch (SrlRequestException e) {
+				// the sentences are tried one by one below
+			}
+			List<String> blocks = (response == null) 
+					? new ArrayList<String>() : Parser.splitSentences(response);
+			
+			// one block for each sentence, otherwise ask one by one
+			if (blocks.size() == missing.size()) {
+				for (int i = 0; i < blocks.size(); i++) {
+					responses[missingIndexes.get(i)] = blocks.get(i);
+					responseCache.put(missing.get(i), blocks.get(i));
+				}
+			} else {
+				batchFallback();
+			}
+		}
+		
+		List<Sentence> sents = new ArrayList<Sentence>(texts.size());
+		for (int i = 0; i < texts.size(); i++) {
+			if (responses[i] == null) {
+				try {
+					responses[i] = query(texts.get(i));
+				} catch (SrlRequestException e) {
+					sents.add(this.<Sentence>skipFailed(e));
+					continue;
+				}
+			}
+			if (responses[i] == null) {
+		    	throw new GateRuntimeException("No result returned from SRL server!");
+			}
+			long start = System.nanoTime();
+			sents.add(new Parser().parse(responses[i]));
+			record(SrlMetrics.Stage.PARSE, start);
+		}
+		return sents;
+	}
+	
+	/**
+	 * Adds annotations for all sentences of a batch.
+	 * 
+	 * @param batch input sentences
+	 * @param sents resolved sentences (same order as the input)
+	 * @param documentString document text
+	 * @param outputAs set for the new annotations
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void annotateBatch(List<InputSentence> batch, List<ResolvedSentence> sents, 
+			String documentString, AnnotationSet outputAs, List<Integer> failed) {
+		addArguments(batch, argumentSpans(batch, sents, documentString), outputAs, failed);
+	}
+	
+	/**
+	 * Arguments of all sentences of a batch. Doesn't touch the document, 
+	 * so it can run on another thread than GATE.
+	 * 
+	 * @param batch input sentences
+	 * @param sents resolved sentences (same order as the input)
+	 * @param documentString document text
+	 * @return arguments of each sentence, null for failed sentences
+	 */
+	private List<List<ArgumentSpan>> argumentSpans(List<InputSentence> batch, 
+			List<ResolvedSentence> sents, String documentString) {
+		long start = System.nanoTime();
+		long tokens = 0;
+		long predicates = 0;
+		long arguments = 0;
+		
+		List<List<ArgumentSpan>> spans = new ArrayList<List<ArgumentSpan>>(sents.size());
+		for (int i = 0; i < sents.size(); i++) {
+			ResolvedSentence sent = sents.get(i);
+			if (sent == null) {
+				spans.add(null);
+				continue;
+			}
+			List<ArgumentSpan> sentenceSpans = argumentSpans(batch.get(i), sent, documentString);
+			spans.add(sentenceSpans);
+			
+			tokens += sent.getForms().length;
+			arguments += sentenceSpans.size();
+			// roles of one predicate are next to each other
+			int predicate = Integer.MIN_VALUE;
+			for (ResolvedSentence.Role role : sent.getRoles()) {
+				if (role.getPredicate() != predicate) {
+					predicate = role.getPredicate();
+					predicates++;
+				}
+			}
+		}
+		
+		record(SrlMetrics.Stage.ALIGN, start);
+		for (SrlMetrics counted : new SrlMetrics[] {metrics, documentMetrics}) {
+			if (counted != null) {
+				counted.addTokens(tokens);
+				counted.addPredicates(predicates);
+				counted.addArguments(arguments);
+			}
+		}
+		return spans;
+	}
+	
+	/**
+	 * Adds annotations of the arguments of a batch. If batches are not 
+	 * in document order, arguments wait until the earlier sentences are 
+	 * done.
+	 * 
+	 * @param batch input sentences
+	 * @param spans arguments of each sentence, null for failed ones
+	 * @param outputAs set for the new annotations
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void addArguments(List<InputSentence> batch, List<List<ArgumentSpan>> spans, 
+			AnnotationSet outputAs, List<Integer> failed) {
+		OrderedArguments ordered = orderedArguments;
+		if (ordered == null) {
+			writeArguments(batch, spans, outputAs, failed);
+			return;
+		}
+		
+		for (int i = 0; i < batch.size(); i++) {
+			ordered.put(batch.get(i), spans.get(i));
+		}
+		List<InputSentence> ready = new ArrayList<InputSentence>();
+		List<List<ArgumentSpan>> readySpans = new ArrayList<List<ArgumentSpan>>();
+		ordered.takeReady(ready, readySpans);
+		if (!ready.isEmpty()) {
+			writeArguments(ready, readySpans, outputAs, failed);
+		}
+	}
+	
+	/**
+	 * Writes annotations of the arguments of sentences.
+	 * 
+	 * @param batch input sentences
+	 * @param spans arguments of each sentence, null for failed ones
+	 * @param outputAs set for the new annotations
+	 * @param failed ids of sentences SRL server failed to answer
+	 */
+	private void writeArguments(List<InputSentence> batch, List<List<ArgumentSpan>> spans, 
+			AnnotationSet outputAs, List<Integer> failed) {
+		long start = System.nanoTime();
+		for (int i = 0; i < spans.size(); i++) {
+			InputSentence sentence = batch.get(i);
+			if (spans.get(i) == null) {
+				failed.add(sentence.annotation.getId());
+				continue;
+			}
+			
+			if (structureBuilder != null) {
+				structureBuilder.addSentence(sentence.annotation.getId());
+			}
+			
+			// ids are recorded in incremental mode
+			List<Integer> ids = (sentence.hash == null) 
+					? null : new ArrayList<Integer>(spans.get(i).size());
+			long firstStart = -1;
+			for (ArgumentSpan span : spans.get(i)) {
+				if (structureBuilder != null) {
+					ResolvedSentence.Role role = span.role;
+					structureBuilder.addArgument(sentence.annotation, role.getLabel(), 
+							role.getPredicateForm(), role.getPredicateLemma(), 
+							span.predicateStart, span.predicateEnd, span.start, span.end);
+				}
+				if (!annotating) {
+					continue;
+				}
+	            try {
+	            	Integer id = outputAs.add(span.start, span.end, OUTPUT_LABEL, span.features);
+	            	if (ids != null) {
+	            		ids.add(id);
+	            	}
+	            	if (firstStart < 0) {
+	            		firstStart = span.start;
+	            	}
+				} catch (InvalidOffsetException e) {
+					e.printStackTrace();
+				}
+			}
+			
+			if (ids != null) {
+				FeatureMap features = sentence.annotation.getFeatures();
+				features.put(SENTENCE_HASH_FEATURE, sentence.hash);
+				features.put(SENTENCE_ANNOTATIONS_FEATURE, ids);
+				if (ids.isEmpty()) {
+					features.remove(SENTENCE_OFFSET_FEATURE);
+				} else {
+					features.put(SENTENCE_OFFSET_FEATURE, 
+							firstStart - sentence.annotation.getStartNode().getOffset());
+				}
+			}
+		}
+		record(SrlMetrics.Stage.ANNOTATE, start);
+	}
+	
+	/**
+	 * Finds arguments of the sentence in the text. Words are aligned 
+	 * with the sentence text once (or take offsets of the sent tokens 
+	 * if the server kept them), the argument then spans from its first 
+	 * to its last word.
+	 * 
+	 * @param sentence input sentence
+	 * @param sent resolved sentence
+	 * @param documentString document text
+	 * @return one span for each argument found in the text
+	 */
+	private List<ArgumentSpan> argumentSpans(InputSentence sentence, ResolvedSentence sent, 
+			String documentString) {
+		TokenAligner aligner;
+		if (sentence.tokens != null && sentence.tokens.size() == sent.getForms().length) {
+			aligner = new TokenAligner(sentence.tokens);
+		} else {
+			aligner = new TokenAligner(sent.getForms(), documentString, 
+					sentence.annotation.getStartNode().getOffset(), 
+					sentence.annotation.getEndNode().getOffset());
+		}
+		
+		List<ArgumentSpan> spans = new ArrayList<ArgumentSpan>(sent.getRoles().length);
+		
+	    // iterate over all arguments given by SRL server
+	    for (ResolvedSentence.Role role : sent.getRoles()) {
+	    	
+	    	// first and last word found in the text
+	    	long start = -1;
+	    	long end = -1;
+	    	for (int index : role.getTokens()) {
+	    		if (aligner.isAligned(index)) {
+	    			if (start < 0) {
+	    				start = aligner.getStart(index);
+	    			}
+	    			end = aligner.getEnd(index);
+	    		}
+	    	}
+	    	
+	    	// argument is not in the text
+	    	if (start < 0 || end <= start) {
+	    		continue;
+	    	}
+	    	
+	    	// predicate offsets are kept only in the document structure
+	    	int predicate = role.getPredicate();
+	    	boolean predicateFound = predicate >= 0 && aligner.isAligned(predicate);
+
+            spans.add(new ArgumentSpan(role, start, end, 
+            		predicateFound ? aligner.getStart(predicate) : -1, 
+            		predicateFound ? aligner.getEnd(predicate) : -1, 
+            		annotating ? argumentFeatures(role, documentString, start, end) : null));
+		}
+	    return spans;
+	}
+	
+	/**
+	 * Puts the structure of the annotated sentences into the document 
+	 * feature. In incremental mode sentences which were not sent keep 
+	 * their predicates and arguments from the previous structure.
+	 * 
+	 * @param sentences Sentence annotations in document order
+	 * @param inputs sentences sent in this run
+	 */
+	private void storeStructure(List<Annotation> sentences, List<InputSentence> inputs) {
+		SrlDocumentStructure previous = (incrementalMode != null && incrementalMode.booleanValue()) 
+				? previousStructure() : null;
+		
+		Set<Integer> sent = new HashSet<Integer>();
+		for (InputSentence input : inputs) {
+			sent.add(input.annotation.getId());
+		}
+		document.getFeatures().put(STRUCTURE_FEATURE, structureBuilder.build(sentences, previous, sent));
+	}
+	
+	/**
+	 * Structure stored in the document by the last run.
+	 * 
+	 * @return structure, null if there is none or it is broken
+	 */
+	private SrlDocumentStructure previousStructure() {
+		try {
+			return SrlDocumentStructure.get(document);
+		} catch (IllegalArgumentException e) {
+			// broken feature, all sentences are sent again
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Features of an argument annotation, only those chosen by 
+	 * <code>annotationFeatures</code>. Labels and lemmas are interned; 
+	 * if feature maps are shared, arguments with the same label of the 
+	 * same predicate (form and lemma) get one frozen map.
+	 * 
+	 * @param role argument
+	 * @param documentString document text
+	 * @param start start offset of the argument
+	 * @param end end offset of the argument
+	 * @return feature map
+	 */
+	private FeatureMap argumentFeatures(ResolvedSentence.Role role, String documentString, 
+			long start, long end) {
+		Set<String> emitted = emittedFeatures;
+		ConcurrentHashMap<String, FeatureMap> shared = sharedFeatureMaps;
+		
+		String key = null;
+		if (shared != null) {
+			key = role.getLabel() + '\t' + role.getPredicateForm() + '\t' + role.getPredicateLemma();
+			FeatureMap features = shared.get(key);
+			if (features != null) {
+				return features;
+			}
+		}
+		
+		FeatureMap fm = gate.Factory.newFeatureMap();
+		if (emitted.contains(ARGUMENT_TYPE_FEATURE)) {
+			// argument type
+			fm.put(ARGUMENT_TYPE_FEATURE, intern(role.getLabel()));
+		}
+		if (emitted.contains(PREDICATE_STRING_FEATURE)) {
+			// predicate surface form
+			fm.put(PREDICATE_STRING_FEATURE, intern(role.getPredicateForm()));
+		}
+		if (emitted.contains(PREDICATE_LEMMA_FEATURE)) {
+			// predicate lemma
+			fm.put(PREDICATE_LEMMA_FEATURE, intern(role.getPredicateLemma()));
+		}
+		if (emitted.contains(ARGUMENT_STRING_FEATURE)) {
+			// argument surface form
+			fm.put(ARGUMENT_STRING_FEATURE, documentString.substring((int) start, (int) end));
+		}
+		
+		if (shared == null) {
+			return fm;
+		}
+		FeatureMap frozen = new FrozenFeatureMap(fm);
+		FeatureMap previous = shared.putIfAbsent(key, frozen);
+		return (previous == null) ? frozen : previous;
+	}
+	
+	/**
+	 * Shared instance of a label or lemma repeated in many annotations.
+	 * 
+	 * @param value string, can be null
+	 * @return interned string
+	 */
+	private static String intern(String value) {
+		return (value == null) ? null : value.intern();
+	}
+	
+	/**
+	 * Returns executor for sentence tasks. Virtual threads are used
+	 * when the JVM has them, otherwise a pool of <code>window</code> 
+	 * daemon threads.
+	 * 
+	 * @param window max. number of sentences in flight
+	 * @return executor
+	 */
+	private synchronized ExecutorService getExecutor(int window) {
+		if (executor != null && executorThreads >= window) {
+			return executor;
+		}
+		if (executor != null) {
+			executor.shutdown();
+		}
+		
+		try {
+			// Java 21+
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			executor = (ExecutorService) factory.invoke(null);
+			executorThreads = Integer.MAX_VALUE;
+			
+		} catch (Exception e) {
+			executor = Executors.newFixedThreadPool(window, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SRL-request");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executorThreads = window;
+		}
+		return executor;
+	}
+	
+	/**
+	 * Returns executor for the stages of {@link #executePipelined}.
+	 * 
+	 * @return executor
+	 */
+	private synchronized ExecutorService getPipelineExecutor() {
+		if (pipelineExecutor == null) {
+			pipelineExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SRL-pipeline");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pipelineExecutor;
+	}
+	
+	/**
+	 * Releases threads of this resource.
+	 */
+	public synchronized void cleanup() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (pipelineExecutor != null) {
+			pipelineExecutor.shutdownNow();
+			pipelineExecutor = null;
+		}
+		if (sharedBackendKey != null) {
+			releaseSharedBackend(sharedBackendKey);
+			sharedBackendKey = null;
+		} else if (srlClient != null) {
+			srlClient.shutdown();
+		}
+		if (responseCache != null) {
+			responseCache.close();
+			responseCache = null;
+		}
+		super.cleanup();
+	}
+
+	/**
+	 * Value of optional numeric parameter.
+	 * 
+	 * @param value parameter value, can be null
+	 * @param defaultValue used when the value is not set
+	 * @return int value
+	 */
+	private static int intValue(Integer value, int defaultValue) {
+		return (value == null) ? defaultValue : value.intValue();
+	}
+	
+	/**
+	 * @return true if Token annotations are sent instead of the text
+	 */
+	private boolean isPreTokenized() {
+		return usePreTokenizedInput != null && usePreTokenizedInput.booleanValue();
+	}
+	
+	/**
+	 * Conversion of Regular expression special characters
+	 * that may occur in the text to safe notation.
+	 * 
+	 * @param string to check for unsafe characters
+	 * @return regex safe string
+	 */
+	public static String regexSafe(String aRegexFragment){
+	    final StringBuilder result = new StringBuilder();
+
+	    final StringCharacterIterator iterator = 
+	      new StringCharacterIterator(aRegexFragment)
+	    ;
+	    char character =  iterator.current();
+	    while (character != CharacterIterator.DONE ){
+	      /*
+	       All literals need to have backslashes doubled.
+	      */
+	      if (character == '.') {
+	        result.append("\\.");
+	      }
+	      else if (character == '\\') {
+	        result.append("\\\\");
+	      }
+	      else if (character == '?') {
+	        result.append("\\?");
+	      }
+	      else if (character == '*') {
+	        result.append("\\*");
+	      }
+	      else if (character == '+') {
+	        result.append("\\+");
+	      }
+	      else if (character == '&') {
+	        result.append("\\&");
+	      }
+	      else if (character == ':') {
+	        result.append("\\:");
+	      }
+	      else if (character == '{') {
+	        result.append("\\{");
+	      }
+	      else if (character == '}') {
+	        result.append("\\}");
+	      }
+	      else if (character == '[') {
 	        result.append("\\[");
 	      }
 	      else if (character == ']') {
@@ -270,55 +2123,1004 @@ public class SRL extends AbstractLanguageAnalyser
 	  
 	  
 	/**
-	 * Returns the name of the AnnotationSet that has been provided to
-	 * create the AnnotationSet
+	 * Returns the name of the AnnotationSet that has been provided to
+	 * create the AnnotationSet
+	 */
+	public String getOutputASName() {
+		return this.outputASName;
+	}
+	  
+	/**
+	 * Sets the AnnonationSet name, that is used to create the
+	 * AnnotationSet
+	 * 
+	 * @param outputAS
+	 */
+	public void setOutputASName(String outputASName) {
+		this.outputASName = outputASName;
+	}
+
+	/**
+	 * Gets the AnnonationSet name for sentences
+	 * 
+	 * @return name of the annotation set sentences
+	 */
+	public String getSentenceAnnotationSet() {
+		return sentenceAnnotationSet;
+	}
+
+	/**
+	 * Sets the AnnonationSet name for sentences
+	 * 
+	 * @param name of the annotation set sentences
+	 */
+	public void setSentenceAnnotationSet(String sentenceAnnotationSet) {
+		this.sentenceAnnotationSet = sentenceAnnotationSet;
+	}
+
+	/**
+	 * Returns the URL(s) of servers where mate-tools are running. 
+	 * @return url of server
+	 */
+	public String getSrlServerUrlString() {
+		return this.srlServerUrlString;
+	}
+
+	/**
+	 * Sets the URL of server where mate-tools are running. Several 
+	 * servers can be given separated by comma or whitespace, sentences 
+	 * are spread across them.
+	 * @param url of server
+	 */
+	public void setSrlServerUrlString(String srlServerUrlString) {
+		this.srlServerUrlString = srlServerUrlString.trim();
+	}
+
+	/**
+	 * Returns true if Token annotations are sent instead of the text.
+	 * @return pre-tokenized mode
+	 */
+	public Boolean getUsePreTokenizedInput() {
+		return usePreTokenizedInput;
+	}
+
+	/**
+	 * Sets whether Token annotations (with POS and lemma) are sent 
+	 * to SRL server instead of the sentence text, so the server doesn't
+	 * tokenize and tag the text again.
+	 * @param usePreTokenizedInput pre-tokenized mode
+	 */
+	public void setUsePreTokenizedInput(Boolean usePreTokenizedInput) {
+		this.usePreTokenizedInput = usePreTokenizedInput;
+	}
+
+	/**
+	 * Gets the AnnonationSet name for tokens
+	 * @return name of the annotation set with tokens
+	 */
+	public String getTokenAnnotationSet() {
+		return tokenAnnotationSet;
+	}
+
+	/**
+	 * Sets the AnnonationSet name for tokens
+	 * @param name of the annotation set with tokens
+	 */
+	public void setTokenAnnotationSet(String tokenAnnotationSet) {
+		this.tokenAnnotationSet = tokenAnnotationSet;
+	}
+
+	/**
+	 * Returns the type of token annotations.
+	 * @return annotation type
+	 */
+	public String getTokenAnnotationType() {
+		return tokenAnnotationType;
+	}
+
+	/**
+	 * Sets the type of token annotations (Token if not set).
+	 * @param tokenAnnotationType annotation type
+	 */
+	public void setTokenAnnotationType(String tokenAnnotationType) {
+		this.tokenAnnotationType = tokenAnnotationType;
+	}
+
+	/**
+	 * Returns the token feature sent as part of speech.
+	 * @return feature name
+	 */
+	public String getPosFeature() {
+		return posFeature;
+	}
+
+	/**
+	 * Sets the token feature sent as part of speech (PPOS column).
+	 * @param posFeature feature name
+	 */
+	public void setPosFeature(String posFeature) {
+		this.posFeature = posFeature;
+	}
+
+	/**
+	 * Returns the token feature sent as lemma.
+	 * @return feature name
+	 */
+	public String getLemmaFeature() {
+		return lemmaFeature;
+	}
+
+	/**
+	 * Sets the token feature sent as lemma (PLEMMA column).
+	 * @param lemmaFeature feature name
+	 */
+	public void setLemmaFeature(String lemmaFeature) {
+		this.lemmaFeature = lemmaFeature;
+	}
+
+	/**
+	 * Returns the timeout (ms) for connecting to SRL server.
+	 * @return connect timeout
+	 */
+	public Integer getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Sets the timeout (ms) for connecting to SRL server, 0 means no timeout.
+	 * @param connectTimeout in ms
+	 */
+	public void setConnectTimeout(Integer connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the timeout (ms) for reading the response of SRL server.
+	 * @return read timeout
+	 */
+	public Integer getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the timeout (ms) for reading the response of SRL server, 
+	 * 0 means no timeout.
+	 * @param readTimeout in ms
+	 */
+	public void setReadTimeout(Integer readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Returns the max. number of connections to SRL server.
+	 * @return size of connection pool
+	 */
+	public Integer getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the max. number of connections to SRL server kept open.
+	 * @param maxConnections size of connection pool
+	 */
+	public void setMaxConnections(Integer maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Returns the max. number of repeated attempts of a failed request.
+	 * @return retries
+	 */
+	public Integer getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the max. number of repeated attempts of a failed request 
+	 * (network errors and server errors only), 0 means no retry.
+	 * @param maxRetries retries
+	 */
+	public void setMaxRetries(Integer maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Returns the pause (ms) before the first retry.
+	 * @return backoff in ms
+	 */
+	public Integer getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	/**
+	 * Sets the pause (ms) before the first retry, it is doubled for 
+	 * every next retry and randomized a bit.
+	 * @param retryBackoff backoff in ms
+	 */
+	public void setRetryBackoff(Integer retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	/**
+	 * Returns the max. duration (ms) of a request including retries.
+	 * @return deadline in ms
+	 */
+	public Integer getRequestDeadline() {
+		return requestDeadline;
+	}
+
+	/**
+	 * Sets the max. duration (ms) of a request including retries, 
+	 * 0 means no limit.
+	 * @param requestDeadline deadline in ms
+	 */
+	public void setRequestDeadline(Integer requestDeadline) {
+		this.requestDeadline = requestDeadline;
+	}
+
+	/**
+	 * Returns the number of failures in a row opening the circuit breaker.
+	 * @return failure threshold
+	 */
+	public Integer getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	/**
+	 * Sets the number of failures in a row after which requests fail 
+	 * immediately (circuit breaker opens), 0 means never.
+	 * @param circuitBreakerThreshold failure threshold
+	 */
+	public void setCircuitBreakerThreshold(Integer circuitBreakerThreshold) {
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	/**
+	 * Returns the time (ms) the circuit breaker stays open.
+	 * @return reset time in ms
+	 */
+	public Integer getCircuitBreakerResetTime() {
+		return circuitBreakerResetTime;
+	}
+
+	/**
+	 * Sets the time (ms) after which requests are tried again when 
+	 * the circuit breaker opened.
+	 * @param circuitBreakerResetTime reset time in ms
+	 */
+	public void setCircuitBreakerResetTime(Integer circuitBreakerResetTime) {
+		this.circuitBreakerResetTime = circuitBreakerResetTime;
+	}
+
+	/**
+	 * Returns the backend labelling the sentences.
+	 * @return backend name
+	 */
+	public String getSrlBackend() {
+		return srlBackend;
+	}
+
+	/**
+	 * Sets the backend labelling the sentences: <code>http</code> 
+	 * (mate-tools server), <code>embedded</code> (mate-tools in this JVM), 
+	 * <code>replay</code> (recorded output) or class name of an 
+	 * {@link SrlBackend}.
+	 * @param srlBackend backend name
+	 */
+	public void setSrlBackend(String srlBackend) {
+		this.srlBackend = srlBackend;
+	}
+
+	/**
+	 * Returns the directory with mate-tools jars.
+	 * @return url of directory
+	 */
+	public URL getMateToolsLibURL() {
+		return mateToolsLibURL;
+	}
+
+	/**
+	 * Sets the directory with mate-tools jars of the embedded backend.
+	 * @param mateToolsLibURL url of directory
+	 */
+	public void setMateToolsLibURL(URL mateToolsLibURL) {
+		this.mateToolsLibURL = mateToolsLibURL;
+	}
+
+	/**
+	 * Returns the command line options of embedded mate-tools.
+	 * @return options
+	 */
+	public String getMateToolsOptions() {
+		return mateToolsOptions;
+	}
+
+	/**
+	 * Sets the command line options of embedded mate-tools pipeline 
+	 * (models, language), the same as of mate-tools server.
+	 * @param mateToolsOptions options separated by whitespace
+	 */
+	public void setMateToolsOptions(String mateToolsOptions) {
+		this.mateToolsOptions = mateToolsOptions;
+	}
+
+	/**
+	 * Returns the CoNLL file replayed by the replay backend.
+	 * @return url of file
+	 */
+	public URL getReplayFileURL() {
+		return replayFileURL;
+	}
+
+	/**
+	 * Sets the CoNLL file with recorded output of mate-tools replayed 
+	 * by the replay backend.
+	 * @param replayFileURL url of file
+	 */
+	public void setReplayFileURL(URL replayFileURL) {
+		this.replayFileURL = replayFileURL;
+	}
+
+	/**
+	 * Returns true if the backend is shared with copies of this PR.
+	 * @return share client
+	 */
+	public Boolean getShareClient() {
+		return shareClient;
+	}
+
+	/**
+	 * Sets whether copies of this PR with the same backend, input, batch 
+	 * and client settings (e.g. made by a multi-threaded corpus controller) 
+	 * share one client. Their sentences are sent in common batches (up to 
+	 * batchSize sentences) within a common window of requests in flight.
+	 * @param shareClient share client
+	 */
+	public void setShareClient(Boolean shareClient) {
+		this.shareClient = shareClient;
+	}
+
+	/**
+	 * Returns the max. time (ms) a sentence waits for a shared batch.
+	 * @return linger time in ms
 	 */
-	public String getOutputASName() {
-		return this.outputASName;
+	public Integer getSharedBatchLinger() {
+		return sharedBatchLinger;
 	}
-	  
+
 	/**
-	 * Sets the AnnonationSet name, that is used to create the
-	 * AnnotationSet
-	 * 
-	 * @param outputAS
+	 * Sets the max. time (ms) a sentence waits for sentences of other 
+	 * documents to fill a shared batch.
+	 * @param sharedBatchLinger linger time in ms
 	 */
-	public void setOutputASName(String outputASName) {
-		this.outputASName = outputASName;
+	public void setSharedBatchLinger(Integer sharedBatchLinger) {
+		this.sharedBatchLinger = sharedBatchLinger;
 	}
 
 	/**
-	 * Gets the AnnonationSet name for sentences
-	 * 
-	 * @return name of the annotation set sentences
+	 * Returns the max. number of shared batches in flight.
+	 * @return window size
 	 */
-	public String getSentenceAnnotationSet() {
-		return sentenceAnnotationSet;
+	public Integer getSharedMaxConcurrentRequests() {
+		return sharedMaxConcurrentRequests;
 	}
 
 	/**
-	 * Sets the AnnonationSet name for sentences
-	 * 
-	 * @param name of the annotation set sentences
+	 * Sets the max. number of shared batches in flight (for all copies 
+	 * of this PR together).
+	 * @param sharedMaxConcurrentRequests window size
 	 */
-	public void setSentenceAnnotationSet(String sentenceAnnotationSet) {
-		this.sentenceAnnotationSet = sentenceAnnotationSet;
+	public void setSharedMaxConcurrentRequests(Integer sharedMaxConcurrentRequests) {
+		this.sharedMaxConcurrentRequests = sharedMaxConcurrentRequests;
+	}
+
+	/**
+	 * Returns whether counters and stage times are recorded.
+	 * @return collect metrics
+	 */
+	public Boolean getCollectMetrics() {
+		return collectMetrics;
+	}
+
+	/**
+	 * Sets whether counters and stage times are recorded. They are 
+	 * shared by all copies of this PR in the JVM and published through 
+	 * JMX as MBean gate.srl:type=SrlMetrics.
+	 * @param collectMetrics collect metrics
+	 */
+	public void setCollectMetrics(Boolean collectMetrics) {
+		this.collectMetrics = collectMetrics;
+	}
+
+	/**
+	 * Returns whether metrics of each document are put into its features.
+	 * @return metrics document features
+	 */
+	public Boolean getMetricsDocumentFeatures() {
+		return metricsDocumentFeatures;
+	}
+
+	/**
+	 * Sets whether counters and stage times (ms) of each document are 
+	 * put into its feature srlMetrics.
+	 * @param metricsDocumentFeatures metrics document features
+	 */
+	public void setMetricsDocumentFeatures(Boolean metricsDocumentFeatures) {
+		this.metricsDocumentFeatures = metricsDocumentFeatures;
+	}
+
+	/**
+	 * Returns whether only sentences changed since the last run are sent.
+	 * @return incremental mode
+	 */
+	public Boolean getIncrementalMode() {
+		return incrementalMode;
+	}
+
+	/**
+	 * Sets whether only sentences changed since the last run are sent. 
+	 * Sentences keep the hash of their text and the ids of their SRL 
+	 * annotations in features; annotations of unchanged sentences are 
+	 * kept, those of changed sentences are replaced.
+	 * @param incrementalMode incremental mode
+	 */
+	public void setIncrementalMode(Boolean incrementalMode) {
+		this.incrementalMode = incrementalMode;
+	}
+
+	/**
+	 * Returns the features of SRL annotations.
+	 * @return feature names
+	 */
+	public List<String> getAnnotationFeatures() {
+		return annotationFeatures;
+	}
+
+	/**
+	 * Sets the features of SRL annotations: apredType, predString, 
+	 * predLemma and string (surface form of the argument). Not set 
+	 * means all of them.
+	 * @param annotationFeatures feature names
+	 */
+	public void setAnnotationFeatures(List<String> annotationFeatures) {
+		this.annotationFeatures = annotationFeatures;
+	}
+
+	/**
+	 * Returns whether annotations with the same features share one map.
+	 * @return share feature maps
+	 */
+	public Boolean getShareFeatureMaps() {
+		return shareFeatureMaps;
+	}
+
+	/**
+	 * Sets whether arguments with the same label of the same predicate 
+	 * share one feature map in a document. Used only if the string 
+	 * feature is not emitted. Shared maps can't be changed.
+	 * @param shareFeatureMaps share feature maps
+	 */
+	public void setShareFeatureMaps(Boolean shareFeatureMaps) {
+		this.shareFeatureMaps = shareFeatureMaps;
+	}
+
+	/**
+	 * Returns whether predicates and arguments are stored in a document feature.
+	 * @return store structure
+	 */
+	public Boolean getStoreStructure() {
+		return storeStructure;
+	}
+
+	/**
+	 * Sets whether predicates and arguments of the document are stored 
+	 * in its feature srlStructure (see {@link SrlDocumentStructure}), 
+	 * which makes annotations on demand.
+	 * @param storeStructure store structure
+	 */
+	public void setStoreStructure(Boolean storeStructure) {
+		this.storeStructure = storeStructure;
+	}
+
+	/**
+	 * Returns whether an SRL annotation is added for each argument.
+	 * @return create annotations
+	 */
+	public Boolean getCreateAnnotations() {
+		return createAnnotations;
+	}
+
+	/**
+	 * Sets whether an SRL annotation is added for each argument. Turned 
+	 * off with storeStructure, the document keeps only the structure.
+	 * @param createAnnotations create annotations
+	 */
+	public void setCreateAnnotations(Boolean createAnnotations) {
+		this.createAnnotations = createAnnotations;
+	}
+
+	/**
+	 * Returns whether batches are balanced by the length of sentences.
+	 * @return length-aware scheduling
+	 */
+	public Boolean getLengthAwareScheduling() {
+		return lengthAwareScheduling;
+	}
+
+	/**
+	 * Sets whether batches are balanced by the estimated cost of their 
+	 * sentences (square of the number of words) and the most expensive 
+	 * ones are sent first, so the last requests of a document are short. 
+	 * Annotations are still added in document order: arguments of a 
+	 * sentence wait until the earlier sentences are done.
+	 * @param lengthAwareScheduling length-aware scheduling
+	 */
+	public void setLengthAwareScheduling(Boolean lengthAwareScheduling) {
+		this.lengthAwareScheduling = lengthAwareScheduling;
+	}
+
+	/**
+	 * Returns the time (ms) between health checks of SRL servers.
+	 * @return interval in ms
+	 */
+	public Integer getHealthCheckInterval() {
+		return healthCheckInterval;
+	}
+
+	/**
+	 * Sets the time (ms) between health checks of SRL servers, 0 = no 
+	 * checks. A server failing the check is not used until it answers 
+	 * again.
+	 * @param healthCheckInterval interval in ms
+	 */
+	public void setHealthCheckInterval(Integer healthCheckInterval) {
+		this.healthCheckInterval = healthCheckInterval;
 	}
 
 	/**
-	 * Returns the URL of server where mate-tools are running. 
+	 * Returns the URL of the server for hedged requests.
 	 * @return url of server
 	 */
-	public String getSrlServerUrlString() {
-		return this.srlServerUrlString;
+	public String getHedgeServerUrlString() {
+		return hedgeServerUrlString;
 	}
 
 	/**
-	 * Sets the URL of server where mate-tools are running. 
+	 * Sets the URL of a second server with mate-tools. Slow requests 
+	 * are sent to it as well and the first answer is used.
 	 * @param url of server
 	 */
-	public void setSrlServerUrlString(String srlServerUrlString) {
-		this.srlServerUrlString = srlServerUrlString.trim();
+	public void setHedgeServerUrlString(String hedgeServerUrlString) {
+		this.hedgeServerUrlString = hedgeServerUrlString;
+	}
+
+	/**
+	 * Returns the percentile of latencies after which a request is hedged.
+	 * @return percentile
+	 */
+	public Integer getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * Sets the percentile (of recent latencies of SRL server) after which 
+	 * a request is sent to the hedge server as well.
+	 * @param hedgePercentile percentile
+	 */
+	public void setHedgePercentile(Integer hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * Returns true if sentences SRL server failed to answer are skipped.
+	 * @return skip failed sentences
+	 */
+	public Boolean getSkipFailedSentences() {
+		return skipFailedSentences;
+	}
+
+	/**
+	 * Sets whether sentences SRL server failed to answer are skipped 
+	 * (their ids are stored in document feature srlFailedSentences)
+	 * instead of failing the whole document.
+	 * @param skipFailedSentences skip failed sentences
+	 */
+	public void setSkipFailedSentences(Boolean skipFailedSentences) {
+		this.skipFailedSentences = skipFailedSentences;
+	}
+
+	/**
+	 * Returns true if the compact response format is requested.
+	 * @return compact format
+	 */
+	public Boolean getCompactResponseFormat() {
+		return compactResponseFormat;
+	}
+
+	/**
+	 * Sets whether SRL server is asked for CoNLL rows with non-empty 
+	 * columns only. Servers which don't support it answer as usual.
+	 * @param compactResponseFormat compact format
+	 */
+	public void setCompactResponseFormat(Boolean compactResponseFormat) {
+		this.compactResponseFormat = compactResponseFormat;
+	}
+
+	/**
+	 * Returns true if compressed responses are accepted.
+	 * @return compression
+	 */
+	public Boolean getCompressResponses() {
+		return compressResponses;
+	}
+
+	/**
+	 * Sets whether SRL server may send gzip/deflate compressed responses.
+	 * @param compressResponses compression
+	 */
+	public void setCompressResponses(Boolean compressResponses) {
+		this.compressResponses = compressResponses;
+	}
+
+	/**
+	 * Returns the max. number of sentences sent to SRL server at once.
+	 * @return size of the in-flight window
+	 */
+	public Integer getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * Sets the max. number of sentences sent to SRL server at once, 
+	 * 1 means sentences are processed one after another.
+	 * @param maxConcurrentRequests size of the in-flight window
+	 */
+	public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	/**
+	 * Returns the max. number of batches waiting between pipeline stages.
+	 * @return queue size
+	 */
+	public Integer getPipelineQueueSize() {
+		return pipelineQueueSize;
+	}
+
+	/**
+	 * Sets the max. number of batches waiting between pipeline stages 
+	 * (requests, resolution, annotation), 0 = no pipeline, stages run 
+	 * one after another (default).
+	 * @param pipelineQueueSize queue size
+	 */
+	public void setPipelineQueueSize(Integer pipelineQueueSize) {
+		this.pipelineQueueSize = pipelineQueueSize;
+	}
+
+	/**
+	 * Returns the max. number of sentences sent in one request.
+	 * @return batch size
+	 */
+	public Integer getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the max. number of sentences sent in one request, 
+	 * 1 means one sentence per request.
+	 * @param batchSize batch size
+	 */
+	public void setBatchSize(Integer batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the max. size of sentences sent in one request.
+	 * @return size in bytes
+	 */
+	public Integer getBatchMaxBytes() {
+		return batchMaxBytes;
+	}
+
+	/**
+	 * Sets the max. size (bytes of UTF-8 text) of sentences sent in 
+	 * one request, 0 means no limit.
+	 * @param batchMaxBytes size in bytes
+	 */
+	public void setBatchMaxBytes(Integer batchMaxBytes) {
+		this.batchMaxBytes = batchMaxBytes;
+	}
+
+	/**
+	 * Returns the file with cached responses of SRL server.
+	 * @return cache file
+	 */
+	public URL getResponseCacheURL() {
+		return responseCacheURL;
+	}
+
+	/**
+	 * Sets the file with cached responses of SRL server, 
+	 * null means responses are not cached.
+	 * @param responseCacheURL cache file
+	 */
+	public void setResponseCacheURL(URL responseCacheURL) {
+		this.responseCacheURL = responseCacheURL;
+	}
+
+	/**
+	 * Returns the max. size of the response cache file.
+	 * @return size in MB
+	 */
+	public Integer getResponseCacheMaxMB() {
+		return responseCacheMaxMB;
+	}
+
+	/**
+	 * Sets the max. size of the response cache file, 0 means no limit.
+	 * @param responseCacheMaxMB size in MB
+	 */
+	public void setResponseCacheMaxMB(Integer responseCacheMaxMB) {
+		this.responseCacheMaxMB = responseCacheMaxMB;
+	}
+
+	/**
+	 * Returns the model tag of cached responses.
+	 * @return model tag
+	 */
+	public String getResponseCacheModelTag() {
+		return responseCacheModelTag;
+	}
+
+	/**
+	 * Sets the model tag of cached responses (server URL is used if 
+	 * not set). Change it when the model of the server changes.
+	 * @param responseCacheModelTag model tag
+	 */
+	public void setResponseCacheModelTag(String responseCacheModelTag) {
+		this.responseCacheModelTag = responseCacheModelTag;
+	}
+
+	/**
+	 * Returns the max. weight of sentence structures kept in memory.
+	 * @return weight (number of words and argument words)
+	 */
+	public Integer getStructureCacheSize() {
+		return structureCacheSize;
+	}
+
+	/**
+	 * Sets the max. weight of sentence structures kept in memory (number 
+	 * of words plus words of arguments), 0 means no cache.
+	 * @param structureCacheSize weight
+	 */
+	public void setStructureCacheSize(Integer structureCacheSize) {
+		this.structureCacheSize = structureCacheSize;
+	}
+
+	/**
+	 * Returns the time to live of sentence structures kept in memory.
+	 * @return time in seconds
+	 */
+	public Integer getStructureCacheTTL() {
+		return structureCacheTTL;
+	}
+
+	/**
+	 * Sets the time to live of sentence structures kept in memory, 
+	 * 0 means they don't expire.
+	 * @param structureCacheTTL time in seconds
+	 */
+	public void setStructureCacheTTL(Integer structureCacheTTL) {
+		this.structureCacheTTL = structureCacheTTL;
+	}
+
+	/**
+	 * Returns the number of sentences found in the structure cache.
+	 * @return cache hits
+	 */
+	public long getStructureCacheHits() {
+		return (structureCache == null) ? 0 : structureCache.getHits();
+	}
+
+	/**
+	 * Returns the number of sentences answered from the response cache.
+	 * @return cache hits
+	 */
+	public long getResponseCacheHits() {
+		return (responseCache == null) ? 0 : responseCache.getHits();
+	}
+
+	/**
+	 * Returns the number of sentences not found in the response cache.
+	 * @return cache misses
+	 */
+	public long getResponseCacheMisses() {
+		return (responseCache == null) ? 0 : responseCache.getMisses();
+	}
+
+	/**
+	 * Sentence annotation with the text sent to SRL server.
+	 */
+	private static class InputSentence {
+		
+		/** Sentence annotation */
+		private final Annotation annotation;
+		
+		/** Sentence text or CoNLL rows of its tokens */
+		private final String text;
+		
+		/** Tokens of the rows, null if the text is sent */
+		private final List<Annotation> tokens;
+		
+		/** Hash of the text, null if not in incremental mode */
+		private String hash;
+		
+		/** Index in document order (length-aware scheduling) */
+		private int position;
+		
+		/** Estimated cost of parsing (length-aware scheduling) */
+		private long cost;
+		
+		/** Length of the text in UTF-8, 0 if not needed */
+		private int bytes;
+		
+		InputSentence(Annotation annotation, String text, List<Annotation> tokens) {
+			this.annotation = annotation;
+			this.text = text;
+			this.tokens = tokens;
+		}
+	}
+
+	/**
+	 * Sentences of a batch taken from the structure cache or parsed from 
+	 * the answer of SRL server, see {@link SRL#fetchBatch(List)}.
+	 */
+	private static class FetchedBatch {
+		
+		/** Resolved sentences, null if not resolved yet */
+		private final ResolvedSentence[] resolved;
+		
+		/** Texts of sentences not found in the cache */
+		private final List<String> missing = new ArrayList<String>();
+		
+		/** Indexes of the missing sentences in the batch */
+		private final List<Integer> missingIndexes = new ArrayList<Integer>();
+		
+		/** Parsed missing sentences, null for failed ones */
+		private List<Sentence> parsed;
+		
+		FetchedBatch(int size) {
+			this.resolved = new ResolvedSentence[size];
+		}
+	}
+
+	/**
+	 * Batch being filled by {@link SRL#makeBalancedBatches(List)}.
+	 */
+	private static class CostBatch {
+		
+		private final List<InputSentence> sentences = new ArrayList<InputSentence>();
+		
+		private long cost;
+		
+		private int bytes;
+		
+		/** The sentence doesn't exceed the max. size of the batch (an empty batch takes any) */
+		boolean fits(InputSentence sentence, int maxBytes) {
+			return sentences.isEmpty() || maxBytes <= 0 || bytes + sentence.bytes <= maxBytes;
+		}
+		
+		void add(InputSentence sentence) {
+			sentences.add(sentence);
+			cost += sentence.cost;
+			bytes += sentence.bytes;
+		}
+	}
+
+	/**
+	 * Arguments of sentences which came before the earlier sentences 
+	 * of the document, used on the calling thread only.
+	 */
+	private static class OrderedArguments {
+		
+		/** Sentences which came, by position */
+		private final InputSentence[] sentences;
+		
+		/** Their arguments, null for failed sentences */
+		private final List<List<ArgumentSpan>> spans;
+		
+		/** Position of the first sentence not written yet */
+		private int next;
+		
+		OrderedArguments(int size) {
+			sentences = new InputSentence[size];
+			spans = new ArrayList<List<ArgumentSpan>>(Collections.<List<ArgumentSpan>>nCopies(size, null));
+		}
+		
+		void put(InputSentence sentence, List<ArgumentSpan> sentenceSpans) {
+			sentences[sentence.position] = sentence;
+			spans.set(sentence.position, sentenceSpans);
+		}
+		
+		/**
+		 * Moves the sentences following the written ones without a gap 
+		 * to the given lists.
+		 */
+		void takeReady(List<InputSentence> ready, List<List<ArgumentSpan>> readySpans) {
+			while (next < sentences.length && sentences[next] != null) {
+				ready.add(sentences[next]);
+				readySpans.add(spans.get(next));
+				sentences[next] = null;
+				spans.set(next, null);
+				next++;
+			}
+		}
+	}
+
+	/**
+	 * Argument annotation waiting to be added to the document.
+	 */
+	private static class ArgumentSpan {
+		
+		private final ResolvedSentence.Role role;
+		
+		private final long start;
+		
+		private final long end;
+		
+		/** Offsets of the predicate, -1 if it is not in the text */
+		private final long predicateStart;
+		
+		private final long predicateEnd;
+		
+		/** Features of the annotation, null if annotations are not added */
+		private final FeatureMap features;
+		
+		ArgumentSpan(ResolvedSentence.Role role, long start, long end, 
+				long predicateStart, long predicateEnd, FeatureMap features) {
+			this.role = role;
+			this.start = start;
+			this.end = end;
+			this.predicateStart = predicateStart;
+			this.predicateEnd = predicateEnd;
+			this.features = features;
+		}
+	}
+
+	/**
+	 * Batch passed to the last pipeline stage: its arguments or the error 
+	 * which stopped the pipeline.
+	 */
+	private static class PipelineBatch {
+		
+		private final List<InputSentence> batch;
+		
+		/** Arguments of each sentence, null for failed sentences */
+		private final List<List<ArgumentSpan>> spans;
+		
+		private final RuntimeException error;
+		
+		PipelineBatch(List<InputSentence> batch, List<List<ArgumentSpan>> spans, 
+				RuntimeException error) {
+			this.batch = batch;
+			this.spans = spans;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Dispatcher shared by copies of this PR and the number of its users.
+	 */
+	private static class SharedBackend {
+		
+		private final SrlDispatcher dispatcher;
+		
+		private int users;
+		
+		SharedBackend(SrlDispatcher dispatcher) {
+			this.dispatcher = dispatcher;
+		}
 	}
 
 } // class SRL
@@ -0,0 +1,112 @@
+/*
+ * SentenceCost.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.List;
+
+/**
+ * Estimated cost of parsing sentences by mate-tools. Parsing time grows
+ * faster than the length of a sentence (the dependency parser scores
+ * pairs of words, the labeler runs for each predicate), so the cost is
+ * the square of the number of words. Only the ratio of costs matters:
+ * they are used to balance batches and the load of SRL servers.
+ */
+public class SentenceCost {
+
+	/** Cost of a request without any words (HTTP, parsing of the answer) */
+	private static final long REQUEST_COST = 16;
+
+	private SentenceCost() {
+	}
+
+	/**
+	 * Cost of a sentence with the given number of words.
+	 *
+	 * @param words number of words
+	 * @return cost
+	 */
+	public static long of(int words) {
+		return (long) words * words;
+	}
+
+	/**
+	 * Cost of a sentence sent to SRL server.
+	 *
+	 * @param text sentence text, or CoNLL rows if pre-tokenized
+	 * @param preTokenized text is CoNLL rows
+	 * @return cost
+	 */
+	public static long of(String text, boolean preTokenized) {
+		return of(words(text, preTokenized));
+	}
+
+	/**
+	 * Cost of a request with the given sentences.
+	 *
+	 * @param texts sentence texts, or CoNLL rows if pre-tokenized
+	 * @param preTokenized texts are CoNLL rows
+	 * @return cost
+	 */
+	public static long of(List<String> texts, boolean preTokenized) {
+		long cost = REQUEST_COST;
+		for (String text : texts) {
+			cost += of(text, preTokenized);
+		}
+		return cost;
+	}
+
+	/**
+	 * Cost of a request with one sentence.
+	 *
+	 * @param text sentence text, or CoNLL rows if pre-tokenized
+	 * @param preTokenized text is CoNLL rows
+	 * @return cost
+	 */
+	public static long ofRequest(String text, boolean preTokenized) {
+		return REQUEST_COST + of(text, preTokenized);
+	}
+
+	/**
+	 * Number of words of a sentence: rows in CoNLL, otherwise parts
+	 * separated by white space (the tokenizer of mate-tools splits
+	 * punctuation too, the estimate is close enough).
+	 *
+	 * @param text sentence text, or CoNLL rows if pre-tokenized
+	 * @param preTokenized text is CoNLL rows
+	 * @return number of words
+	 */
+	public static int words(String text, boolean preTokenized) {
+		int words = 0;
+		if (preTokenized) {
+			boolean empty = true;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == '\n') {
+					if (!empty) {
+						words++;
+					}
+					empty = true;
+				} else if (c != '\r') {
+					empty = false;
+				}
+			}
+			return empty ? words : words + 1;
+		}
+
+		boolean inWord = false;
+		for (int i = 0; i < text.length(); i++) {
+			boolean space = Character.isWhitespace(text.charAt(i));
+			if (!space && !inWord) {
+				words++;
+			}
+			inWord = !space;
+		}
+		return words;
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * SentenceStructureCache.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>In-memory LRU cache of resolved sentences keyed by normalised
+ * sentence text (trimmed, white spaces collapsed). Repeated sentences
+ * (disclaimers, headers, quotations) are annotated without any request
+ * or parsing.</p>
+ *
+ * <p>The cache is bounded by total weight (see
+ * {@link ResolvedSentence#getWeight()}), entries older than the time
+ * to live are not used. All methods are synchronized.</p>
+ */
+public class SentenceStructureCache {
+
+	/** Max. total weight of cached sentences */
+	private final long maxWeight;
+
+	/** Time to live of an entry in ms, 0 means forever */
+	private final long ttlMillis;
+
+	/** Key -> entry, iteration from least to most recently used */
+	private final LinkedHashMap<String, Entry> entries =
+			new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+
+	/** Weight of all entries */
+	private long weight;
+
+	/** Number of sentences found in the cache */
+	private long hits;
+
+	/** Number of sentences not found in the cache */
+	private long misses;
+
+	/**
+	 * @param maxWeight max. total weight of cached sentences
+	 * @param ttlMillis time to live of an entry in ms, 0 = forever
+	 */
+	public SentenceStructureCache(long maxWeight, long ttlMillis) {
+		this.maxWeight = maxWeight;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Returns resolved structure of the sentence.
+	 *
+	 * @param text sentence text
+	 * @return cached structure or null
+	 */
+	public synchronized ResolvedSentence get(String text) {
+		String key = normalize(text);
+		Entry entry = entries.get(key);
+
+		if (entry != null && ttlMillis > 0
+				&& System.currentTimeMillis() - entry.created > ttlMillis) {
+			remove(key);
+			entry = null;
+		}
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.sentence;
+	}
+
+	/**
+	 * Stores resolved structure of the sentence, least recently used
+	 * sentences are removed when the cache is full.
+	 *
+	 * @param text sentence text
+	 * @param sentence resolved structure
+	 */
+	public synchronized void put(String text, ResolvedSentence sentence) {
+		int entryWeight = sentence.getWeight();
+		if (entryWeight > maxWeight) {
+			return;
+		}
+
+		String key = normalize(text);
+		remove(key);
+		entries.put(key, new Entry(sentence, entryWeight));
+		weight += entryWeight;
+
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (weight > maxWeight && eldest.hasNext()) {
+			weight -= eldest.next().getValue().weight;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	private void remove(String key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			weight -= old.weight;
+		}
+	}
+
+	/**
+	 * Key of the sentence: trimmed text with white space sequences
+	 * replaced by one space.
+	 *
+	 * @param text sentence text
+	 * @return key
+	 */
+	static String normalize(String text) {
+		StringBuilder key = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = key.length() > 0;
+			} else {
+				if (space) {
+					key.append(' ');
+					space = false;
+				}
+				key.append(c);
+			}
+		}
+		return key.toString();
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Cached sentence with its weight and time of creation.
+	 */
+	private static class Entry {
+
+		private final ResolvedSentence sentence;
+
+		private final int weight;
+
+		private final long created;
+
+		Entry(ResolvedSentence sentence, int weight) {
+			this.sentence = sentence;
+			this.weight = weight;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * SrlBackend.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.List;
+
+import conll2009.parser.Sentence;
+
+/**
+ * <p>Source of semantic role labeling of sentences. The answers are
+ * sentences in CoNLL 2009 format, as returned by mate-tools.</p>
+ *
+ * <ul>
+ * <li>{@link ResilientSrlClient} - mate-tools HTTP server(s),</li>
+ * <li>{@link EmbeddedSrlBackend} - mate-tools pipeline in this JVM,</li>
+ * <li>{@link ReplaySrlBackend} - recorded CoNLL output (tests and
+ * benchmarks).</li>
+ * </ul>
+ *
+ * <p>Other implementations need a public constructor without parameters,
+ * so they can be given to the PR by class name. Implementations must be
+ * thread-safe; a failed request ends with {@link SrlRequestException}
+ * (or another {@link gate.util.GateRuntimeException}).</p>
+ */
+public interface SrlBackend {
+
+	/**
+	 * Labels one sentence.
+	 *
+	 * @param sentence text (or CoNLL rows of its tokens if pre-tokenized)
+	 * @return CoNLL 2009 rows of the sentence
+	 */
+	public String query(String sentence);
+
+	/**
+	 * Labels one sentence.
+	 *
+	 * @param sentence text (or CoNLL rows of its tokens if pre-tokenized)
+	 * @return all rows of the answer in one sentence
+	 */
+	public Sentence queryParsed(String sentence);
+
+	/**
+	 * Labels several sentences.
+	 *
+	 * @param sentences texts (or CoNLL rows of tokens if pre-tokenized)
+	 * @return CoNLL 2009 rows of all the sentences separated by an empty line
+	 */
+	public String queryBatch(List<String> sentences);
+
+	/**
+	 * Labels several sentences.
+	 *
+	 * @param sentences texts (or CoNLL rows of tokens if pre-tokenized)
+	 * @return sentences in the order of the request
+	 */
+	public List<Sentence> queryBatchParsed(List<String> sentences);
+
+	/**
+	 * Sets whether sentences are given as CoNLL 2009 rows of tokens
+	 * (ID, FORM, PLEMMA and PPOS columns) instead of text.
+	 *
+	 * @param preTokenized true for CoNLL rows
+	 */
+	public void setPreTokenized(boolean preTokenized);
+
+	/**
+	 * Releases threads, connections and models of the backend.
+	 */
+	public void shutdown();
+
+}
@@ -0,0 +1,433 @@
+/*
+ * SrlDispatcher.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import conll2009.parser.Parser;
+import conll2009.parser.Sentence;
+
+/**
+ * <p>Backend collecting sentences of all threads (documents) into common
+ * batches for another backend. A sentence waits until its batch is full
+ * or until the linger time passes, and until there is a free place in
+ * the window of requests in flight. Answers are routed back to the
+ * threads which asked.</p>
+ *
+ * <p>A batch request which fails, or returns another number of sentences,
+ * is sent again sentence by sentence, so a failure of one sentence ends
+ * only the request of its own document.</p>
+ *
+ * <p>Used for short documents (tweets, titles), which would never fill
+ * a batch on their own, when one dispatcher is shared by copies of the
+ * PR running in parallel.</p>
+ */
+public class SrlDispatcher implements SrlBackend {
+
+	/** Backend the batches are sent to */
+	private final SrlBackend backend;
+
+	/** Max. number of sentences in one batch */
+	private final int maxBatchSize;
+
+	/** Max. size (bytes of UTF-8) of sentences in one batch, 0 = no limit */
+	private final int maxBatchBytes;
+
+	/** Max. time (ms) a sentence waits for other sentences */
+	private final long lingerMillis;
+
+	/** Max. number of batches in flight */
+	private final int window;
+
+	/** Guards the queues and the counter of batches in flight */
+	private final Object lock = new Object();
+
+	/** Sentences waiting for a parsed answer */
+	private final LinkedList<Pending<Sentence>> parsedQueue = new LinkedList<Pending<Sentence>>();
+
+	/** Sentences waiting for a text answer */
+	private final LinkedList<Pending<String>> textQueue = new LinkedList<Pending<String>>();
+
+	/** Number of batches in flight */
+	private int inFlight;
+
+	/** Send waiting sentences now, without waiting for the linger time */
+	private boolean flush;
+
+	private boolean running = true;
+
+	/** Thread forming the batches */
+	private final Thread dispatcher;
+
+	/** Threads sending the batches */
+	private final ExecutorService executor;
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong sentences = new AtomicLong();
+
+	/**
+	 * @param backend backend the batches are sent to
+	 * @param maxBatchSize max. number of sentences in one batch
+	 * @param maxBatchBytes max. size (bytes) of sentences in one batch,
+	 * 			0 = no limit
+	 * @param lingerMillis max. time (ms) a sentence waits for others
+	 * @param window max. number of batches in flight
+	 */
+	public SrlDispatcher(SrlBackend backend, int maxBatchSize, int maxBatchBytes,
+			long lingerMillis, int window) {
+		this.backend = backend;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxBatchBytes = Math.max(0, maxBatchBytes);
+		this.lingerMillis = Math.max(0, lingerMillis);
+		this.window = Math.max(1, window);
+
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SRL-batch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "SRL-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	public String query(String sentence) {
+		return enqueue(textQueue, sentence).await();
+	}
+
+	public Sentence queryParsed(String sentence) {
+		return enqueue(parsedQueue, sentence).await();
+	}
+
+	public String queryBatch(List<String> sentences) {
+		StringBuilder result = new StringBuilder();
+		for (Pending<String> pending : enqueue(textQueue, sentences)) {
+			result.append(pending.await()).append('\n');
+		}
+		return result.toString();
+	}
+
+	public List<Sentence> queryBatchParsed(List<String> sentences) {
+		List<Sentence> result = new ArrayList<Sentence>(sentences.size());
+		for (Pending<Sentence> pending : enqueue(parsedQueue, sentences)) {
+			result.add(pending.await());
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the input mode of the backend. All users of a dispatcher must
+	 * use the same mode.
+	 */
+	public void setPreTokenized(boolean preTokenized) {
+		backend.setPreTokenized(preTokenized);
+	}
+
+	/**
+	 * Sends the waiting sentences without waiting for the linger time.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			flush = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Ends all waiting sentences with the given failure.
+	 *
+	 * @param cause reason, e.g. aborted processing
+	 */
+	public void failPending(RuntimeException cause) {
+		synchronized (lock) {
+			for (Pending<Sentence> pending : parsedQueue) {
+				pending.fail(cause);
+			}
+			for (Pending<String> pending : textQueue) {
+				pending.fail(cause);
+			}
+			parsedQueue.clear();
+			textQueue.clear();
+		}
+	}
+
+	/**
+	 * Stops the threads, fails the waiting sentences and shuts the
+	 * backend down.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			running = false;
+			lock.notifyAll();
+		}
+		failPending(new SrlRequestException("SRL dispatcher was shut down", false));
+		executor.shutdownNow();
+		backend.shutdown();
+	}
+
+	/**
+	 * Adds one sentence to a queue.
+	 */
+	private <T> Pending<T> enqueue(LinkedList<Pending<T>> queue, String text) {
+		List<Pending<T>> pending = enqueue(queue, Collections.singletonList(text));
+		return pending.get(0);
+	}
+
+	/**
+	 * Adds sentences to a queue, they stay together if they fit in a batch.
+	 */
+	private <T> List<Pending<T>> enqueue(LinkedList<Pending<T>> queue, List<String> texts) {
+		List<Pending<T>> added = new ArrayList<Pending<T>>(texts.size());
+		long now = System.currentTimeMillis();
+		for (String text : texts) {
+			added.add(new Pending<T>(text, now));
+		}
+
+		synchronized (lock) {
+			if (!running) {
+				throw new SrlRequestException("SRL dispatcher was shut down", false);
+			}
+			queue.addAll(added);
+			lock.notifyAll();
+		}
+		return added;
+	}
+
+	/**
+	 * Loop of the dispatcher thread: forms a batch when one is ready and
+	 * the window has a free place.
+	 */
+	private void dispatch() {
+		synchronized (lock) {
+			while (running) {
+				long now = System.currentTimeMillis();
+				long wait = -1;
+
+				if (inFlight < window) {
+					long parsedWait = readyIn(parsedQueue, now);
+					long textWait = readyIn(textQueue, now);
+
+					if (parsedWait == 0 && (textWait != 0 || oldest(parsedQueue) <= oldest(textQueue))) {
+						send(parsedQueue, true);
+						continue;
+					}
+					if (textWait == 0) {
+						send(textQueue, false);
+						continue;
+					}
+					wait = (parsedWait < 0) ? textWait
+							: (textWait < 0) ? parsedWait : Math.min(parsedWait, textWait);
+				}
+				if (wait < 0 && parsedQueue.isEmpty() && textQueue.isEmpty()) {
+					flush = false;
+				}
+
+				try {
+					if (wait < 0) {
+						lock.wait();
+					} else {
+						lock.wait(wait);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Time until the first batch of the queue is ready.
+	 *
+	 * @return 0 = ready now, -1 = empty queue, otherwise time in ms
+	 */
+	private <T> long readyIn(List<Pending<T>> queue, long now) {
+		if (queue.isEmpty()) {
+			return -1;
+		}
+		if (flush || queue.size() >= maxBatchSize) {
+			return 0;
+		}
+		if (maxBatchBytes > 0) {
+			int bytes = 0;
+			for (Pending<T> pending : queue) {
+				bytes += pending.bytes;
+				if (bytes >= maxBatchBytes) {
+					return 0;
+				}
+			}
+		}
+		return Math.max(0, queue.get(0).enqueued + lingerMillis - now);
+	}
+
+	private static <T> long oldest(List<Pending<T>> queue) {
+		return queue.isEmpty() ? Long.MAX_VALUE : queue.get(0).enqueued;
+	}
+
+	/**
+	 * Takes one batch from the queue and sends it on the executor.
+	 * Called with the lock held.
+	 */
+	private <T> void send(LinkedList<Pending<T>> queue, final boolean parsed) {
+		final List<Pending<T>> batch = new ArrayList<Pending<T>>();
+		int bytes = 0;
+		while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+			Pending<T> next = queue.getFirst();
+			if (!batch.isEmpty() && maxBatchBytes > 0 && bytes + next.bytes > maxBatchBytes) {
+				break;
+			}
+			batch.add(queue.removeFirst());
+			bytes += next.bytes;
+		}
+
+		inFlight++;
+		batches.incrementAndGet();
+		sentences.addAndGet(batch.size());
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						answer(batch, parsed);
+					} finally {
+						synchronized (lock) {
+							inFlight--;
+							lock.notifyAll();
+						}
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight--;
+			for (Pending<T> pending : batch) {
+				pending.fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Sends the batch to the backend and completes its sentences.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> void answer(List<Pending<T>> batch, boolean parsed) {
+		List<String> texts = new ArrayList<String>(batch.size());
+		for (Pending<T> pending : batch) {
+			texts.add(pending.text);
+		}
+
+		if (batch.size() > 1) {
+			List<?> answers = null;
+			try {
+				answers = parsed ? backend.queryBatchParsed(texts)
+						: Parser.splitSentences(backend.queryBatch(texts));
+			} catch (RuntimeException e) {
+				// sent again one by one
+			}
+			if (answers != null && answers.size() == batch.size()) {
+				for (int i = 0; i < batch.size(); i++) {
+					batch.get(i).complete((T) answers.get(i));
+				}
+				return;
+			}
+		}
+
+		for (Pending<T> pending : batch) {
+			try {
+				pending.complete((T) (parsed ? backend.queryParsed(pending.text)
+						: backend.query(pending.text)));
+			} catch (RuntimeException e) {
+				pending.fail(e);
+			}
+		}
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	/** Backend the batches are sent to */
+	public SrlBackend getBackend() {
+		return backend;
+	}
+
+	/** Number of sent batches */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/** Number of sentences in sent batches */
+	public long getSentences() {
+		return sentences.get();
+	}
+
+	/**
+	 * Sentence waiting for its answer.
+	 */
+	private static class Pending<T> {
+
+		private final String text;
+
+		/** Size of the text in UTF-8 */
+		private final int bytes;
+
+		/** Time the sentence was queued */
+		private final long enqueued;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private volatile T answer;
+
+		private volatile RuntimeException error;
+
+		Pending(String text, long enqueued) {
+			this.text = text;
+			this.bytes = SRL.utf8Length(text);
+			this.enqueued = enqueued;
+		}
+
+		void complete(T answer) {
+			this.answer = answer;
+			done.countDown();
+		}
+
+		void fail(RuntimeException error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		/**
+		 * Waits for the answer, rethrows the failure.
+		 */
+		T await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SrlRequestException("Interrupted while waiting for SRL server!", false);
+			}
+			if (error != null) {
+				throw error;
+			}
+			return answer;
+		}
+	}
+
+}
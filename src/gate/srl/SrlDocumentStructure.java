@@ -0,0 +1,645 @@
+/*
+ * SrlDocumentStructure.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.FeatureMap;
+import gate.util.GateRuntimeException;
+import gate.util.InvalidOffsetException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Predicates and arguments of a whole document in a few arrays, kept
+ * as one document feature ({@link SRL#STRUCTURE_FEATURE}) instead of
+ * an annotation for each argument. Offsets are stored relative to their
+ * sentence and labels, predicate forms and lemmas as ids of a string
+ * table.</p>
+ *
+ * <p>Predicates and arguments are made only when asked for, by sentence
+ * or by offset range, as {@link PredicateView}s or as GATE annotations
+ * ({@link #annotate(Document, AnnotationSet, String, long, long)}).</p>
+ *
+ * <p>{@link #toString()} gives the compact text form, which the
+ * constructor taking a String reads again, so the feature survives
+ * saving the document as GATE XML.</p>
+ */
+public class SrlDocumentStructure implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Header of the text form */
+	private static final String VERSION = "SRL1";
+
+	/** Radix of numbers in the text form */
+	private static final int RADIX = 36;
+
+	/** Labels, predicate forms and lemmas */
+	private final String[] strings;
+
+	/** Ids of Sentence annotations */
+	private final int[] sentenceIds;
+
+	private final long[] sentenceStarts;
+
+	private final long[] sentenceEnds;
+
+	/** Index of the first role of each sentence, one more item at the end */
+	private final int[] firstRoles;
+
+	/** Label of each argument (string id) */
+	private final int[] labels;
+
+	/** Form of the predicate of each argument (string id) */
+	private final int[] predicateForms;
+
+	/** Lemma of the predicate of each argument (string id) */
+	private final int[] predicateLemmas;
+
+	/** Offsets of the predicate in its sentence, -1 if not in the text */
+	private final int[] predicateStarts;
+
+	private final int[] predicateEnds;
+
+	/** Offsets of the argument in its sentence */
+	private final int[] argumentStarts;
+
+	private final int[] argumentEnds;
+
+	private SrlDocumentStructure(Builder builder, int sentences, int roles) {
+		strings = builder.strings.toArray(new String[builder.strings.size()]);
+		sentenceIds = new int[sentences];
+		sentenceStarts = new long[sentences];
+		sentenceEnds = new long[sentences];
+		firstRoles = new int[sentences + 1];
+		labels = new int[roles];
+		predicateForms = new int[roles];
+		predicateLemmas = new int[roles];
+		predicateStarts = new int[roles];
+		predicateEnds = new int[roles];
+		argumentStarts = new int[roles];
+		argumentEnds = new int[roles];
+	}
+
+	/**
+	 * Reads the text form made by {@link #toString()}.
+	 *
+	 * @param encoded text form
+	 * @throws IllegalArgumentException if the text is not a structure
+	 */
+	public SrlDocumentStructure(String encoded) {
+		String[] parts = encoded.split("\n", -1);
+		if (parts.length != 3 || !VERSION.equals(parts[0])) {
+			throw new IllegalArgumentException("Not an SRL structure");
+		}
+
+		List<String> table = new ArrayList<String>();
+		if (parts[1].length() > 0) {
+			for (String value : parts[1].split("\t", -1)) {
+				table.add(unescape(value));
+			}
+		}
+		strings = table.toArray(new String[table.size()]);
+
+		Numbers numbers = new Numbers(parts[2]);
+		int sentences = (int) numbers.next();
+		int roles = (int) numbers.next();
+		sentenceIds = new int[sentences];
+		sentenceStarts = new long[sentences];
+		sentenceEnds = new long[sentences];
+		firstRoles = new int[sentences + 1];
+		labels = new int[roles];
+		predicateForms = new int[roles];
+		predicateLemmas = new int[roles];
+		predicateStarts = new int[roles];
+		predicateEnds = new int[roles];
+		argumentStarts = new int[roles];
+		argumentEnds = new int[roles];
+
+		long start = 0;
+		int role = 0;
+		for (int s = 0; s < sentences; s++) {
+			sentenceIds[s] = (int) numbers.next();
+			start += numbers.next();
+			sentenceStarts[s] = start;
+			sentenceEnds[s] = start + numbers.next();
+			firstRoles[s] = role;
+			int count = (int) numbers.next();
+			for (int r = 0; r < count; r++, role++) {
+				labels[role] = (int) numbers.next();
+				predicateForms[role] = (int) numbers.next();
+				predicateLemmas[role] = (int) numbers.next();
+				predicateStarts[role] = (int) numbers.next() - 1;
+				predicateEnds[role] = (int) numbers.next() - 1;
+				argumentStarts[role] = (int) numbers.next();
+				argumentEnds[role] = (int) numbers.next();
+			}
+		}
+		firstRoles[sentences] = role;
+	}
+
+	/**
+	 * Structure stored in the document by the SRL PR.
+	 *
+	 * @param document document
+	 * @return structure, null if the document has none
+	 */
+	public static SrlDocumentStructure get(Document document) {
+		Object value = document.getFeatures().get(SRL.STRUCTURE_FEATURE);
+		if (value instanceof SrlDocumentStructure) {
+			return (SrlDocumentStructure) value;
+		}
+		if (value instanceof String) {
+			return new SrlDocumentStructure((String) value);
+		}
+		return null;
+	}
+
+	/*
+	 * Sentences
+	 * */
+
+	public int getSentenceCount() {
+		return sentenceIds.length;
+	}
+
+	/** Id of the Sentence annotation */
+	public int getSentenceId(int sentence) {
+		return sentenceIds[sentence];
+	}
+
+	public long getSentenceStart(int sentence) {
+		return sentenceStarts[sentence];
+	}
+
+	public long getSentenceEnd(int sentence) {
+		return sentenceEnds[sentence];
+	}
+
+	/**
+	 * Finds the sentence containing an offset.
+	 *
+	 * @param offset document offset
+	 * @return index of the sentence, -1 if no sentence contains it
+	 */
+	public int findSentence(long offset) {
+		int s = firstSentenceEndingAfter(offset);
+		return (s < sentenceStarts.length && sentenceStarts[s] <= offset) ? s : -1;
+	}
+
+	/**
+	 * Index of the first sentence ending after the offset (sentences
+	 * are in document order and don't overlap).
+	 */
+	private int firstSentenceEndingAfter(long offset) {
+		int low = 0;
+		int high = sentenceEnds.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sentenceEnds[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Predicates and arguments
+	 * */
+
+	/**
+	 * Predicates of one sentence with their arguments.
+	 *
+	 * @param sentence index of the sentence
+	 * @return predicates in the order of the SRL server
+	 */
+	public List<PredicateView> getPredicates(int sentence) {
+		List<PredicateView> predicates = new ArrayList<PredicateView>();
+		PredicateView current = null;
+		for (int role = firstRoles[sentence]; role < firstRoles[sentence + 1]; role++) {
+			// arguments of one predicate are next to each other
+			if (current == null || !current.isPredicateOf(role)) {
+				current = new PredicateView(sentence, role);
+				predicates.add(current);
+			}
+			current.arguments.add(new ArgumentView(current, role));
+		}
+		return predicates;
+	}
+
+	/**
+	 * Predicates of the sentences overlapping a range.
+	 *
+	 * @param start start offset of the range
+	 * @param end end offset of the range
+	 * @return predicates in document order
+	 */
+	public List<PredicateView> getPredicates(long start, long end) {
+		List<PredicateView> predicates = new ArrayList<PredicateView>();
+		for (int s = firstSentenceEndingAfter(start); s < sentenceStarts.length
+				&& sentenceStarts[s] < end; s++) {
+			predicates.addAll(getPredicates(s));
+		}
+		return predicates;
+	}
+
+	/**
+	 * Number of arguments of all predicates.
+	 *
+	 * @return number of arguments
+	 */
+	public int getArgumentCount() {
+		return labels.length;
+	}
+
+	/**
+	 * Makes the annotations the SRL PR would have made for the arguments
+	 * of the sentences overlapping a range.
+	 *
+	 * @param document document (for the string feature)
+	 * @param outputAs set for the new annotations
+	 * @param type annotation type, e.g. "SRL"
+	 * @param start start offset of the range
+	 * @param end end offset of the range
+	 * @return ids of the new annotations
+	 */
+	public List<Integer> annotate(Document document, AnnotationSet outputAs, String type,
+			long start, long end) {
+		String documentString = document.getContent().toString();
+		List<Integer> ids = new ArrayList<Integer>();
+		for (PredicateView predicate : getPredicates(start, end)) {
+			for (ArgumentView argument : predicate.getArguments()) {
+				FeatureMap fm = gate.Factory.newFeatureMap();
+				fm.put(SRL.ARGUMENT_TYPE_FEATURE, argument.getLabel());
+				fm.put(SRL.PREDICATE_STRING_FEATURE, predicate.getForm());
+				fm.put(SRL.PREDICATE_LEMMA_FEATURE, predicate.getLemma());
+				fm.put(SRL.ARGUMENT_STRING_FEATURE,
+						documentString.substring((int) argument.getStart(), (int) argument.getEnd()));
+				try {
+					ids.add(outputAs.add(argument.getStart(), argument.getEnd(), type, fm));
+				} catch (InvalidOffsetException e) {
+					throw new GateRuntimeException(e);
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Compact text form: a header, the string table and numbers in radix
+	 * 36 (offsets relative to the sentence, sentence starts as differences).
+	 */
+	public String toString() {
+		StringBuilder text = new StringBuilder(VERSION).append('\n');
+		for (int i = 0; i < strings.length; i++) {
+			if (i > 0) {
+				text.append('\t');
+			}
+			text.append(escape(strings[i]));
+		}
+		text.append('\n');
+
+		Numbers numbers = new Numbers(text);
+		numbers.add(sentenceIds.length).add(labels.length);
+		long previousStart = 0;
+		for (int s = 0; s < sentenceIds.length; s++) {
+			numbers.add(sentenceIds[s]).add(sentenceStarts[s] - previousStart)
+					.add(sentenceEnds[s] - sentenceStarts[s]).add(firstRoles[s + 1] - firstRoles[s]);
+			previousStart = sentenceStarts[s];
+			for (int role = firstRoles[s]; role < firstRoles[s + 1]; role++) {
+				numbers.add(labels[role]).add(predicateForms[role]).add(predicateLemmas[role])
+						.add(predicateStarts[role] + 1).add(predicateEnds[role] + 1)
+						.add(argumentStarts[role]).add(argumentEnds[role]);
+			}
+		}
+		return text.toString();
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "\\0";
+		}
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+	}
+
+	private static String unescape(String value) {
+		if ("\\0".equals(value)) {
+			return null;
+		}
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				result.append((next == 't') ? '\t' : (next == 'n') ? '\n' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Numbers of the text form separated by a comma.
+	 */
+	private static class Numbers {
+
+		private final StringBuilder text;
+
+		private final String input;
+
+		private int position;
+
+		private boolean first = true;
+
+		Numbers(StringBuilder text) {
+			this.text = text;
+			this.input = null;
+		}
+
+		Numbers(String input) {
+			this.text = null;
+			this.input = input;
+		}
+
+		Numbers add(long value) {
+			if (!first) {
+				text.append(',');
+			}
+			first = false;
+			text.append(Long.toString(value, RADIX));
+			return this;
+		}
+
+		long next() {
+			int end = input.indexOf(',', position);
+			if (end < 0) {
+				end = input.length();
+			}
+			try {
+				return Long.parseLong(input.substring(position, end), RADIX);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Broken SRL structure", e);
+			} finally {
+				position = end + 1;
+			}
+		}
+	}
+
+	/**
+	 * Predicate of a sentence, made on demand.
+	 */
+	public class PredicateView {
+
+		private final int sentence;
+
+		/** First argument (role) of the predicate */
+		private final int role;
+
+		private final List<ArgumentView> arguments = new ArrayList<ArgumentView>();
+
+		PredicateView(int sentence, int role) {
+			this.sentence = sentence;
+			this.role = role;
+		}
+
+		/** The role has the same predicate */
+		boolean isPredicateOf(int other) {
+			return predicateStarts[other] == predicateStarts[role]
+					&& predicateForms[other] == predicateForms[role]
+					&& predicateLemmas[other] == predicateLemmas[role];
+		}
+
+		/** Index of the sentence */
+		public int getSentence() {
+			return sentence;
+		}
+
+		public String getForm() {
+			return strings[predicateForms[role]];
+		}
+
+		public String getLemma() {
+			return strings[predicateLemmas[role]];
+		}
+
+		/** Start offset in the document, -1 if not found in the text */
+		public long getStart() {
+			return (predicateStarts[role] < 0) ? -1 : sentenceStarts[sentence] + predicateStarts[role];
+		}
+
+		/** End offset in the document, -1 if not found in the text */
+		public long getEnd() {
+			return (predicateEnds[role] < 0) ? -1 : sentenceStarts[sentence] + predicateEnds[role];
+		}
+
+		public List<ArgumentView> getArguments() {
+			return Collections.unmodifiableList(arguments);
+		}
+
+		public String toString() {
+			return getLemma() + "[" + getStart() + "," + getEnd() + "]" + arguments;
+		}
+	}
+
+	/**
+	 * Argument of a predicate, made on demand.
+	 */
+	public class ArgumentView {
+
+		private final PredicateView predicate;
+
+		private final int role;
+
+		ArgumentView(PredicateView predicate, int role) {
+			this.predicate = predicate;
+			this.role = role;
+		}
+
+		public PredicateView getPredicate() {
+			return predicate;
+		}
+
+		public String getLabel() {
+			return strings[labels[role]];
+		}
+
+		/** Start offset in the document */
+		public long getStart() {
+			return sentenceStarts[predicate.sentence] + argumentStarts[role];
+		}
+
+		/** End offset in the document */
+		public long getEnd() {
+			return sentenceStarts[predicate.sentence] + argumentEnds[role];
+		}
+
+		public String toString() {
+			return getLabel() + "[" + getStart() + "," + getEnd() + "]";
+		}
+	}
+
+	/**
+	 * Collects the sentences of a document as they are annotated.
+	 * Not thread-safe, sentences are added on the GATE thread.
+	 */
+	public static class Builder {
+
+		/** String table */
+		private final List<String> strings = new ArrayList<String>();
+
+		/** String -> id in the table */
+		private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+		/** Arguments of added sentences, key is the id of the Sentence annotation */
+		private final Map<Integer, List<int[]>> sentenceRoles = new HashMap<Integer, List<int[]>>();
+
+		/**
+		 * Adds a sentence without arguments (or before its arguments).
+		 *
+		 * @param sentenceId id of the Sentence annotation
+		 */
+		public void addSentence(int sentenceId) {
+			if (!sentenceRoles.containsKey(sentenceId)) {
+				sentenceRoles.put(sentenceId, new ArrayList<int[]>());
+			}
+		}
+
+		/**
+		 * Adds an argument of a sentence.
+		 *
+		 * @param sentence Sentence annotation
+		 * @param label argument label
+		 * @param predicateForm form of the predicate
+		 * @param predicateLemma lemma of the predicate
+		 * @param predicateStart start offset of the predicate, -1 if not found
+		 * @param predicateEnd end offset of the predicate, -1 if not found
+		 * @param argumentStart start offset of the argument
+		 * @param argumentEnd end offset of the argument
+		 */
+		public void addArgument(Annotation sentence, String label, String predicateForm,
+				String predicateLemma, long predicateStart, long predicateEnd,
+				long argumentStart, long argumentEnd) {
+			long base = sentence.getStartNode().getOffset();
+			addSentence(sentence.getId());
+			sentenceRoles.get(sentence.getId()).add(new int[] {
+					id(label), id(predicateForm), id(predicateLemma),
+					(predicateStart < 0) ? -1 : (int) (predicateStart - base),
+					(predicateEnd < 0) ? -1 : (int) (predicateEnd - base),
+					(int) (argumentStart - base), (int) (argumentEnd - base)});
+		}
+
+		/**
+		 * Makes the structure of the sentences in document order. Sentences
+		 * which were not added are taken from the previous structure
+		 * (incremental mode), unless they were sent again.
+		 *
+		 * @param sentences Sentence annotations in document order
+		 * @param previous structure of the last run, can be null
+		 * @param sent ids of sentences sent in this run
+		 * @return structure
+		 */
+		public SrlDocumentStructure build(List<Annotation> sentences,
+				SrlDocumentStructure previous, Set<Integer> sent) {
+			Map<Integer, Integer> previousIndexes = new HashMap<Integer, Integer>();
+			if (previous != null) {
+				for (int s = 0; s < previous.getSentenceCount(); s++) {
+					previousIndexes.put(previous.getSentenceId(s), s);
+				}
+			}
+
+			// sentences and the number of their roles
+			List<Annotation> stored = new ArrayList<Annotation>();
+			int roles = 0;
+			for (Annotation sentence : sentences) {
+				List<int[]> added = sentenceRoles.get(sentence.getId());
+				Integer old = sent.contains(sentence.getId()) ? null : previousIndexes.get(sentence.getId());
+				if (added != null) {
+					roles += added.size();
+				} else if (old != null) {
+					roles += previous.firstRoles[old + 1] - previous.firstRoles[old];
+				} else {
+					continue;
+				}
+				stored.add(sentence);
+			}
+
+			// strings of the previous structure get ids in this one (before
+			// the structure copies the table)
+			int[] previousStrings = null;
+			if (previous != null) {
+				previousStrings = new int[previous.strings.length];
+				for (int i = 0; i < previousStrings.length; i++) {
+					previousStrings[i] = id(previous.strings[i]);
+				}
+			}
+
+			SrlDocumentStructure structure = new SrlDocumentStructure(this, stored.size(), roles);
+			int role = 0;
+			for (int s = 0; s < stored.size(); s++) {
+				Annotation sentence = stored.get(s);
+				structure.sentenceIds[s] = sentence.getId();
+				structure.sentenceStarts[s] = sentence.getStartNode().getOffset();
+				structure.sentenceEnds[s] = sentence.getEndNode().getOffset();
+				structure.firstRoles[s] = role;
+
+				List<int[]> added = sentenceRoles.get(sentence.getId());
+				if (added != null) {
+					for (int[] values : added) {
+						structure.setRole(role++, values[0], values[1], values[2],
+								values[3], values[4], values[5], values[6]);
+					}
+				} else {
+					int old = previousIndexes.get(sentence.getId());
+					for (int r = previous.firstRoles[old]; r < previous.firstRoles[old + 1]; r++) {
+						structure.setRole(role++, previousStrings[previous.labels[r]],
+								previousStrings[previous.predicateForms[r]],
+								previousStrings[previous.predicateLemmas[r]],
+								previous.predicateStarts[r], previous.predicateEnds[r],
+								previous.argumentStarts[r], previous.argumentEnds[r]);
+					}
+				}
+			}
+			structure.firstRoles[stored.size()] = role;
+			return structure;
+		}
+
+		/** Id of a string in the table, new strings are added */
+		private int id(String value) {
+			Integer id = stringIds.get(value);
+			if (id == null) {
+				id = strings.size();
+				strings.add(value);
+				stringIds.put(value, id);
+			}
+			return id;
+		}
+	}
+
+	private void setRole(int role, int label, int predicateForm, int predicateLemma,
+			int predicateStart, int predicateEnd, int argumentStart, int argumentEnd) {
+		labels[role] = label;
+		predicateForms[role] = predicateForm;
+		predicateLemmas[role] = predicateLemma;
+		predicateStarts[role] = predicateStart;
+		predicateEnds[role] = predicateEnd;
+		argumentStarts[role] = argumentStart;
+		argumentEnds[role] = argumentEnd;
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * SrlEndpoint.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>One SRL server of a {@link ResilientSrlClient}: its client, circuit
+ * breaker and load. The load is the estimated cost of outstanding
+ * requests (see {@link SentenceCost}) and a moving average of latency
+ * per unit of cost; the server with the lowest
+ * <code>(outstanding cost + cost of the request) * latency per cost</code>
+ * gets the next request, so one long sentence counts as much as many
+ * short ones.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public class SrlEndpoint {
+
+	/** Number of latencies kept for percentiles */
+	private static final int LATENCY_SAMPLES = 256;
+
+	/** Weight of a new latency in the moving average */
+	private static final double AVERAGE_WEIGHT = 0.2;
+
+	/** Latency per cost of a server without answers, it is tried first */
+	private static final double MIN_COST_LATENCY = 1e-6;
+
+	/** Client of the server */
+	private final SrlPOSTRequest client;
+
+	/** Breaker of the server, replaced when settings change */
+	private volatile CircuitBreaker breaker = new CircuitBreaker(0, 0);
+
+	/** Recent latencies */
+	private final LatencyTracker latencies = new LatencyTracker(LATENCY_SAMPLES);
+
+	/** Requests sent and not answered yet */
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/** Estimated cost of the outstanding requests */
+	private final AtomicLong outstandingCost = new AtomicLong();
+
+	/** Number of sent requests */
+	private final AtomicLong requests = new AtomicLong();
+
+	/** Moving average of latency (ms), 0 until the first answer */
+	private double averageLatency;
+
+	/** Moving average of latency (ms) per unit of cost, 0 until the first answer */
+	private double averageCostLatency;
+
+	/**
+	 * @param client client of the server
+	 */
+	public SrlEndpoint(SrlPOSTRequest client) {
+		this.client = client;
+	}
+
+	/**
+	 * @return true if requests may be sent to the server now
+	 */
+	public boolean isAvailable() {
+		return breaker.allowRequest();
+	}
+
+	/**
+	 * Expected time of the next request on this server including the
+	 * outstanding ones, lower is better.
+	 *
+	 * @param cost estimated cost of the request
+	 * @return score
+	 */
+	double getScore(long cost) {
+		double latency;
+		synchronized (this) {
+			latency = averageCostLatency;
+		}
+		return (outstandingCost.get() + Math.max(1, cost)) * Math.max(MIN_COST_LATENCY, latency);
+	}
+
+	/**
+	 * A request is being sent.
+	 *
+	 * @param cost estimated cost of the request
+	 */
+	void requestStarted(long cost) {
+		outstanding.incrementAndGet();
+		outstandingCost.addAndGet(cost);
+		requests.incrementAndGet();
+	}
+
+	/**
+	 * A request ended.
+	 *
+	 * @param cost estimated cost of the request
+	 * @param millis duration of the request
+	 * @param success the server answered
+	 */
+	void requestFinished(long cost, long millis, boolean success) {
+		outstanding.decrementAndGet();
+		outstandingCost.addAndGet(-cost);
+		if (success) {
+			latencies.record(millis);
+			double costLatency = (double) millis / Math.max(1, cost);
+			synchronized (this) {
+				averageLatency = (averageLatency == 0) ? millis
+						: averageLatency + AVERAGE_WEIGHT * (millis - averageLatency);
+				averageCostLatency = (averageCostLatency == 0) ? costLatency
+						: averageCostLatency + AVERAGE_WEIGHT * (costLatency - averageCostLatency);
+			}
+		}
+	}
+
+	void setBreaker(CircuitBreaker breaker) {
+		this.breaker = breaker;
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public SrlPOSTRequest getClient() {
+		return client;
+	}
+
+	public CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	public LatencyTracker getLatencies() {
+		return latencies;
+	}
+
+	/** Requests sent and not answered yet */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/** Estimated cost of requests sent and not answered yet */
+	public long getOutstandingCost() {
+		return outstandingCost.get();
+	}
+
+	/** Number of sent requests */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/** Moving average of latency (ms) */
+	public synchronized double getAverageLatency() {
+		return averageLatency;
+	}
+
+	public String toString() {
+		return client.getSrlUrl().toString();
+	}
+
+}
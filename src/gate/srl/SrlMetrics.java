@@ -0,0 +1,288 @@
+/*
+ * SrlMetrics.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Counters and stage timers of the SRL PR. Recording costs a few atomic
+ * additions, so the metrics can stay on in production.</p>
+ *
+ * <p>All copies of the PR (and their clients) record into one JVM-wide
+ * instance ({@link #getGlobal()}), which is published through JMX as
+ * {@value #OBJECT_NAME}. The PR can record a document into its own
+ * instance too, to write it into document features.</p>
+ */
+public class SrlMetrics implements SrlMetricsMXBean {
+
+	/** Name of the MBean of the global metrics */
+	public static final String OBJECT_NAME = "gate.srl:type=SrlMetrics";
+
+	/**
+	 * Stages of processing of a document. Requests, parsing and resolving
+	 * run in parallel with each other in the concurrent and pipelined
+	 * modes, so their times can add up to more than the document time.
+	 */
+	public enum Stage {
+		/** Reading sentences (and tokens) of the document, making batches */
+		PREPARE("prepare"),
+		/** Getting answers: network and SRL server, or the backend;
+		 * includes the cache and parsing of text answers */
+		REQUEST("request"),
+		/** Parsing of text answers (responses from the cache) */
+		PARSE("parse"),
+		/** Sentence.processPredArguments */
+		PRED_ARGUMENTS("predArguments"),
+		/** Resolving roles to token spans */
+		RESOLVE("resolve"),
+		/** Aligning tokens to offsets of the document */
+		ALIGN("align"),
+		/** Adding annotations to the output set */
+		ANNOTATE("annotate"),
+		/** Whole execute() of a document */
+		DOCUMENT("document");
+
+		private final String name;
+
+		private Stage(String name) {
+			this.name = name;
+		}
+
+		/** Name used in JMX and in document features */
+		public String getName() {
+			return name;
+		}
+	}
+
+	private static SrlMetrics global;
+
+	private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+
+	private final AtomicLong documents = new AtomicLong();
+
+	private final AtomicLong sentences = new AtomicLong();
+
+	private final AtomicLong tokens = new AtomicLong();
+
+	private final AtomicLong predicates = new AtomicLong();
+
+	private final AtomicLong arguments = new AtomicLong();
+
+	private final AtomicLong failedSentences = new AtomicLong();
+
+	private final AtomicLong errors = new AtomicLong();
+
+	private final AtomicLong batchFallbacks = new AtomicLong();
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	public SrlMetrics() {
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * JVM-wide metrics, registered in the platform MBean server when first
+	 * asked for.
+	 *
+	 * @return global metrics
+	 */
+	public static synchronized SrlMetrics getGlobal() {
+		if (global == null) {
+			global = new SrlMetrics();
+			register(global);
+		}
+		return global;
+	}
+
+	/**
+	 * Registers the metrics as {@value #OBJECT_NAME}. An MBean left by
+	 * another class loader (plugin loaded again) is replaced.
+	 */
+	private static void register(SrlMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			try {
+				server.registerMBean(metrics, name);
+			} catch (InstanceAlreadyExistsException e) {
+				server.unregisterMBean(name);
+				server.registerMBean(metrics, name);
+			}
+		} catch (Exception e) {
+			// metrics are still recorded, only not visible through JMX
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records time of one execution of a stage.
+	 *
+	 * @param stage stage of processing
+	 * @param nanos duration in ns
+	 */
+	public void time(Stage stage, long nanos) {
+		stages[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Histogram of one stage.
+	 *
+	 * @param stage stage of processing
+	 * @return histogram of its times
+	 */
+	public LatencyHistogram getStage(Stage stage) {
+		return stages[stage.ordinal()];
+	}
+
+	public void addDocuments(long n) {
+		documents.addAndGet(n);
+	}
+
+	public void addSentences(long n) {
+		sentences.addAndGet(n);
+	}
+
+	public void addTokens(long n) {
+		tokens.addAndGet(n);
+	}
+
+	public void addPredicates(long n) {
+		predicates.addAndGet(n);
+	}
+
+	public void addArguments(long n) {
+		arguments.addAndGet(n);
+	}
+
+	public void addFailedSentences(long n) {
+		failedSentences.addAndGet(n);
+	}
+
+	public void addErrors(long n) {
+		errors.addAndGet(n);
+	}
+
+	public void addBatchFallbacks(long n) {
+		batchFallbacks.addAndGet(n);
+	}
+
+	public void addBytesSent(long n) {
+		bytesSent.addAndGet(n);
+	}
+
+	public void addBytesReceived(long n) {
+		bytesReceived.addAndGet(n);
+	}
+
+	public void reset() {
+		for (LatencyHistogram stage : stages) {
+			stage.reset();
+		}
+		documents.set(0);
+		sentences.set(0);
+		tokens.set(0);
+		predicates.set(0);
+		arguments.set(0);
+		failedSentences.set(0);
+		errors.set(0);
+		batchFallbacks.set(0);
+		bytesSent.set(0);
+		bytesReceived.set(0);
+	}
+
+	/**
+	 * Counters and stage times (total ms) as document features: keys are
+	 * the names of the counters and of the stages with "Ms".
+	 *
+	 * @return map of numbers, stages which were not timed are left out
+	 */
+	public Map<String, Object> toFeatures() {
+		Map<String, Object> features = new LinkedHashMap<String, Object>();
+		features.put("sentences", getSentences());
+		features.put("tokens", getTokens());
+		features.put("predicates", getPredicates());
+		features.put("arguments", getArguments());
+		features.put("failedSentences", getFailedSentences());
+		features.put("errors", getErrors());
+		features.put("batchFallbacks", getBatchFallbacks());
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getStage(stage);
+			if (histogram.getCount() > 0) {
+				features.put(stage.getName() + "Ms", histogram.getTotalMillis());
+			}
+		}
+		return features;
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	public long getDocuments() {
+		return documents.get();
+	}
+
+	public long getSentences() {
+		return sentences.get();
+	}
+
+	public long getTokens() {
+		return tokens.get();
+	}
+
+	public long getPredicates() {
+		return predicates.get();
+	}
+
+	public long getArguments() {
+		return arguments.get();
+	}
+
+	public long getFailedSentences() {
+		return failedSentences.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getBatchFallbacks() {
+		return batchFallbacks.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	public Map<String, StageStatistics> getStages() {
+		Map<String, StageStatistics> result = new LinkedHashMap<String, StageStatistics>();
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getStage(stage);
+			if (histogram.getCount() > 0) {
+				result.put(stage.getName(), new StageStatistics(histogram));
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * SrlMetricsMXBean.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Management interface of {@link SrlMetrics}, registered in the platform
+ * MBean server as {@value SrlMetrics#OBJECT_NAME}.
+ */
+public interface SrlMetricsMXBean {
+
+	/** Number of processed documents */
+	public long getDocuments();
+
+	/** Number of sentences of processed documents */
+	public long getSentences();
+
+	/** Number of tokens of labelled sentences */
+	public long getTokens();
+
+	/** Number of predicates of labelled sentences */
+	public long getPredicates();
+
+	/** Number of arguments of labelled sentences */
+	public long getArguments();
+
+	/** Number of sentences skipped after a failed request */
+	public long getFailedSentences();
+
+	/** Number of failed requests (after retries) */
+	public long getErrors();
+
+	/** Number of batches sent again sentence by sentence */
+	public long getBatchFallbacks();
+
+	/** Bytes of request bodies sent to SRL servers */
+	public long getBytesSent();
+
+	/** Bytes of response bodies received from SRL servers (as on the wire) */
+	public long getBytesReceived();
+
+	/**
+	 * Statistics of the stages of processing, key is the name of the stage
+	 * (see {@link SrlMetrics.Stage}).
+	 *
+	 * @return statistics of stages which were timed at least once
+	 */
+	public Map<String, StageStatistics> getStages();
+
+	/**
+	 * Sets all counters and histograms to zero.
+	 */
+	public void reset();
+
+	/**
+	 * Snapshot of the histogram of one stage.
+	 */
+	public static class StageStatistics {
+
+		private final long count;
+
+		private final double totalMillis;
+
+		private final double meanMillis;
+
+		private final double p50Millis;
+
+		private final double p99Millis;
+
+		private final double maxMillis;
+
+		@ConstructorProperties({"count", "totalMillis", "meanMillis",
+				"p50Millis", "p99Millis", "maxMillis"})
+		public StageStatistics(long count, double totalMillis, double meanMillis,
+				double p50Millis, double p99Millis, double maxMillis) {
+			this.count = count;
+			this.totalMillis = totalMillis;
+			this.meanMillis = meanMillis;
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+			this.maxMillis = maxMillis;
+		}
+
+		StageStatistics(LatencyHistogram histogram) {
+			this(histogram.getCount(), histogram.getTotalMillis(), histogram.getMeanMillis(),
+					histogram.percentile(50), histogram.percentile(99), histogram.getMaxMillis());
+		}
+
+		/** Number of timed executions of the stage */
+		public long getCount() {
+			return count;
+		}
+
+		/** Total time (ms) */
+		public double getTotalMillis() {
+			return totalMillis;
+		}
+
+		/** Average time (ms) */
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		/** Median time (ms, approximate) */
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		/** 99th percentile of time (ms, approximate) */
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		/** Longest time (ms) */
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+	}
+
+}
@@ -11,17 +11,55 @@ package gate.srl;
 
 import gate.util.GateRuntimeException;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import conll2009.parser.CoNLLReader;
+import conll2009.parser.CoNLLWriter;
+import conll2009.parser.Parser;
+import conll2009.parser.Sentence;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /** 
- * Requesting SLR server
+ * Requesting SLR server. One instance is a reusable, thread-safe client:
+ * connections are kept alive between requests and their number is bounded.
+ * Asynchronous requests (<code>query...Async</code>) don't hold a thread 
+ * while waiting for the answer, see {@link #queryAsync(String, long)}.
  */
 public class SrlPOSTRequest{
 	
@@ -50,16 +88,99 @@ public class SrlPOSTRequest{
      * */
     private final String ACCEPT = "text/xml";
     
+    /** 
+     * Value of <code>inputFormat</code> parameter telling the server 
+     * that sentences are CoNLL 2009 rows of already tokenized text
+     * (ID, FORM, PLEMMA, PPOS), so it skips its tokenizer and tagger.
+     */
+    private final String CONLL_INPUT_FORMAT = "conll2009";
+    
+    /** 
+     * Compact response format: CoNLL rows with the non-empty columns 
+     * only (see {@link CoNLLWriter}). Servers which don't know it answer 
+     * with ordinary CoNLL.
+     */
+    public static final String SPARSE_CONLL_TYPE = "text/x-conll2009-sparse";
+    
+    /** Accept header asking for the compact format */
+    private final String ACCEPT_SPARSE = SPARSE_CONLL_TYPE + ", " + ACCEPT + ";q=0.5";
+    
+    /** Accept-Encoding header asking for a compressed response */
+    private final String ACCEPT_ENCODING = "gzip, deflate";
+    
     /** Default language */
     private final String LANGUAGE = "en-US";
+
+    /** Sentence of health check requests (URL encoded) */
+    private final String PING_SENTENCE = "Test+.";
     
     /** SRL server, example: http://barbar.cs.lth.se:8081/parse */
     private URL srlUrl;
+    
+    /** Timeout (ms) for establishing the connection, 0 means no timeout */
+    private int connectTimeout;
+    
+    /** Timeout (ms) for reading the response, 0 means no timeout */
+    private int readTimeout;
+    
+    /** 
+     * Bounds the number of requests (and so sockets) open at once. 
+     * Finished connections are returned to the keep-alive cache of 
+     * HttpURLConnection, so the next request reuses the socket instead 
+     * of doing a new TCP handshake. Note that the JDK keeps at most 
+     * <code>http.maxConnections</code> (default 5) idle sockets per 
+     * server, the system property should be raised for bigger pools.
+     */
+    private Semaphore connectionPool;
+    
+    /** Sentences are sent as CoNLL rows instead of text */
+    private volatile boolean preTokenized;
+    
+    /** Ask for the compact (sparse) response format */
+    private volatile boolean compactFormat;
+    
+    /** Ask for gzip/deflate compressed responses */
+    private volatile boolean compression;
+    
+    /** Counts bytes sent and received, null = not counted */
+    private volatile SrlMetrics metrics;
+    
+    /** Client of asynchronous requests, created by the first one */
+    private volatile HttpClient asyncClient;
+    
+    /** Max. number of asynchronous requests in flight, others wait in a queue */
+    private volatile int maxAsyncRequests;
+    
+    /** Asynchronous requests in flight */
+    private final AtomicInteger asyncInFlight = new AtomicInteger();
+    
+    /** Asynchronous requests waiting to be sent */
+    private final ConcurrentLinkedQueue<Runnable> asyncWaiting = new ConcurrentLinkedQueue<Runnable>();
+    
+    /** Size of the buffer used for draining the response */
+    private static final int BUFFER_SIZE = 8192;
+    
+    /** Timeouts of asynchronous requests of all clients, created by the first one */
+    private static ScheduledThreadPoolExecutor timeouts;
 
     /**
 	 * Constructor method. 
 	 */
     public SrlPOSTRequest(String srlServerUrlString) {
+    	this(srlServerUrlString, 0, 0, 1);
+    }
+    
+    /**
+     * Constructor of a reusable client. One instance is meant to be shared
+     * by all requests of a processing resource.
+     * 
+     * @param srlServerUrlString	address of SRL server
+     * @param connectTimeout		connect timeout in ms (0 = infinite)
+     * @param readTimeout			read timeout in ms (0 = infinite)
+     * @param maxConnections		max. number of open connections
+     */
+    public SrlPOSTRequest(String srlServerUrlString, int connectTimeout, 
+    		int readTimeout, int maxConnections) {
     	srlServerUrlString = srlServerUrlString.trim();
 			
     	try {
@@ -69,6 +190,11 @@ public class SrlPOSTRequest{
     		e.printStackTrace();
     		throw new GateRuntimeException("Wrong URL format. \n");
     	}
+    	
+    	this.connectTimeout = Math.max(0, connectTimeout);
+    	this.readTimeout = Math.max(0, readTimeout);
+    	this.connectionPool = new Semaphore(Math.max(1, maxConnections), true);
+    	this.maxAsyncRequests = Math.max(1, maxConnections);
     }
     
     /**
@@ -80,59 +206,797 @@ public class SrlPOSTRequest{
 	 *  @return	string			Annotated text.
 	 */
     public String query(String sentence) {
+    	return post(sentenceParameters(sentence), TEXT, false);
+    }
+    
+    /**
+     * Same as {@link #query(String)}, but the response is parsed while 
+     * it is read from the connection, no String of the whole response 
+     * is created.
+     * 
+     * @param sentence text to annotate
+     * @return all rows of the response in one sentence 
+     * 		(see {@link Parser#parse(Reader)})
+     */
+    public Sentence queryParsed(String sentence) {
+    	return post(sentenceParameters(sentence), SENTENCE, compactFormat);
+    }
+    
+    /**
+     * Sends several sentences in one request (<code>sentence</code> 
+     * parameter repeated for each of them). The server answers with 
+     * sentences in CoNLL format separated by an empty line.
+     * 
+     * @param sentences texts to annotate
+     * @return annotated text of all the sentences
+     */
+    public String queryBatch(List<String> sentences) {
+    	return post(batchParameters(sentences), TEXT, false);
+    }
+    
+    /**
+     * Same as {@link #queryBatch(List)}, but sentences of the response 
+     * are parsed while it is read from the connection.
+     * 
+     * @param sentences texts to annotate
+     * @return parsed sentences in the order of the response
+     */
+    public List<Sentence> queryBatchParsed(List<String> sentences) {
+    	return post(batchParameters(sentences), SENTENCES, compactFormat);
+    }
+    
+    /**
+     * Same as {@link #query(String)}, but doesn't wait for the answer. 
+     * The timeout is the read timeout of the client.
+     * 
+     * @param sentence text to annotate
+     * @return future annotated text
+     */
+    public CompletableFuture<String> queryAsync(String sentence) {
+    	return queryAsync(sentence, readTimeout);
+    }
+    
+    /**
+     * <p>Same as {@link #query(String)}, but doesn't wait for the answer: 
+     * the request is sent by a non-blocking HTTP client, which uses HTTP/2 
+     * when the server offers it (many requests then share one connection), 
+     * otherwise HTTP/1.1 with kept-alive connections. Requests over 
+     * {@link #setMaxAsyncRequests(int)} wait in a queue, not in threads.</p>
+     * 
+     * <p>The future fails with {@link SrlRequestException} (retryable one 
+     * when the timeout runs out, the time in the queue counts too). 
+     * Cancelling the future or the timeout cancels the response body, the 
+     * HTTP client then drops its stream or connection. A request cancelled 
+     * before the response headers arrive is dropped when they arrive (on 
+     * JDK 16 and newer at once); waiting for the headers is bounded by the 
+     * timeout.</p>
+     * 
+     * @param sentence text to annotate
+     * @param timeoutMillis max. duration of the request in ms, 0 = no limit
+     * @return future annotated text
+     */
+    public CompletableFuture<String> queryAsync(String sentence, long timeoutMillis) {
+    	return postAsync(sentenceParameters(sentence), TEXT, false, timeoutMillis);
+    }
+    
+    /**
+     * Same as {@link #queryParsed(String)}, but doesn't wait for the 
+     * answer, see {@link #queryAsync(String, long)}.
+     * 
+     * @param sentence text to annotate
+     * @param timeoutMillis max. duration of the request in ms, 0 = no limit
+     * @return future sentence with all rows of the response
+     */
+    public CompletableFuture<Sentence> queryParsedAsync(String sentence, long timeoutMillis) {
+    	return postAsync(sentenceParameters(sentence), SENTENCE, compactFormat, timeoutMillis);
+    }
+    
+    /**
+     * Same as {@link #queryBatchParsed(List)}, but doesn't wait for the 
+     * answer, see {@link #queryAsync(String, long)}.
+     * 
+     * @param sentences texts to annotate
+     * @param timeoutMillis max. duration of the request in ms, 0 = no limit
+     * @return future parsed sentences in the order of the response
+     */
+    public CompletableFuture<List<Sentence>> queryBatchParsedAsync(List<String> sentences, 
+    		long timeoutMillis) {
+    	return postAsync(batchParameters(sentences), SENTENCES, compactFormat, timeoutMillis);
+    }
+    
+    /**
+     * Sends a short plain text sentence to find out if the server
+     * answers (health check). The response is read and dropped.
+     *
+     * @throws SrlRequestException if the server doesn't answer
+     */
+    public void ping() {
+    	post("sentence=" + PING_SENTENCE + "&returnType=" + RETURN_METHOD, TEXT, false);
+    }
+
+    /**
+     * Request body for one sentence.
+     */
+    private String sentenceParameters(String sentence) {
+    	try {
+    		return "sentence=" + URLEncoder.encode(sentence, CHARSET) +
+    				"&returnType=" + RETURN_METHOD + inputFormatParameter();
+    		
+    	} catch (UnsupportedEncodingException e) {
+    		throw new GateRuntimeException(e);
+    	}
+    }
+    
+    /**
+     * Input format parameter of pre-tokenized requests.
+     */
+    private String inputFormatParameter() {
+    	return preTokenized ? "&inputFormat=" + CONLL_INPUT_FORMAT : "";
+    }
+    
+    /**
+     * Sets whether sentences are sent as CoNLL 2009 rows of tokens 
+     * (one row per token, columns separated by TAB) instead of text.
+     * 
+     * @param preTokenized true for CoNLL rows
+     */
+    public void setPreTokenized(boolean preTokenized) {
+    	this.preTokenized = preTokenized;
+    }
+    
+    public boolean isPreTokenized() {
+    	return preTokenized;
+    }
+    
+    /**
+     * Sets whether the compact response format is requested for parsed 
+     * responses (<code>queryParsed</code>, <code>queryBatchParsed</code>). 
+     * Text responses are always ordinary CoNLL.
+     * 
+     * @param compactFormat true to ask for sparse CoNLL rows
+     */
+    public void setCompactFormat(boolean compactFormat) {
+    	this.compactFormat = compactFormat;
+    }
+    
+    public boolean isCompactFormat() {
+    	return compactFormat;
+    }
+    
+    /**
+     * Sets whether compressed (gzip, deflate) responses are accepted.
+     * 
+     * @param compression true to accept compressed responses
+     */
+    public void setCompression(boolean compression) {
+    	this.compression = compression;
+    }
+    
+    public boolean isCompression() {
+    	return compression;
+    }
+    
+    /**
+     * Sets the metrics counting bytes of requests and responses.
+     * 
+     * @param metrics metrics, null = not counted
+     */
+    public void setMetrics(SrlMetrics metrics) {
+    	this.metrics = metrics;
+    }
+    
+    public SrlMetrics getMetrics() {
+    	return metrics;
+    }
+    
+    /**
+     * Sets the max. number of asynchronous requests in flight, others 
+     * wait in a queue. It is <code>maxConnections</code> by default, 
+     * which suits HTTP/1.1 servers (one connection per request); HTTP/2 
+     * servers can take many more requests on one connection.
+     * 
+     * @param maxAsyncRequests max. number of requests in flight
+     */
+    public void setMaxAsyncRequests(int maxAsyncRequests) {
+    	this.maxAsyncRequests = Math.max(1, maxAsyncRequests);
+    	startWaiting();
+    }
+    
+    public int getMaxAsyncRequests() {
+    	return maxAsyncRequests;
+    }
+    
+    /**
+     * Request body for several sentences.
+     */
+    private String batchParameters(List<String> sentences) {
+    	StringBuilder urlParameters = new StringBuilder();
+    	try {
+    		for (String sentence : sentences) {
+    			urlParameters.append("sentence=");
+    			urlParameters.append(URLEncoder.encode(sentence, CHARSET));
+    			urlParameters.append('&');
+    		}
+    		
+    	} catch (UnsupportedEncodingException e) {
+    		throw new GateRuntimeException(e);
+    	}
+    	urlParameters.append("returnType=").append(RETURN_METHOD);
+    	urlParameters.append(inputFormatParameter());
+    	
+    	return urlParameters.toString();
+    }
+    
+    /**
+     * Sends form encoded parameters and reads the response.
+     * 
+     * @param urlParameters request body
+     * @param handler reads the response body
+     * @param compact ask for the compact response format
+     * @return result of the handler
+     */
+    private <T> T post(String urlParameters, ResponseHandler<T> handler, boolean compact) {
 	  	
 		HttpURLConnection connection = null;
+		
+		try {
+			connectionPool.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SrlRequestException("Interrupted while waiting for SRL server connection!", false);
+		}
 	
 		try {
 		    
 			//Establish connection
-			String urlParameters =
-					"sentence=" + URLEncoder.encode(sentence, CHARSET) +
-			        "&returnType=" + RETURN_METHOD;
+			byte[] body = urlParameters.getBytes(CHARSET);
 	
 	    	connection = (HttpURLConnection) srlUrl.openConnection();
 		    connection.setRequestMethod(METHOD);
+		    connection.setConnectTimeout(connectTimeout);
+		    connection.setReadTimeout(readTimeout);
 		    connection.setRequestProperty("Content-Type", CONTENT_TYPE);
-		    connection.setRequestProperty("Accept", ACCEPT);
+		    connection.setRequestProperty("Accept", compact ? ACCEPT_SPARSE : ACCEPT);
+		    if (compression) {
+		    	connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+		    }
 		    connection.setRequestProperty("Content-Length", "" + 
-		               Integer.toString(urlParameters.getBytes().length));
+		               Integer.toString(body.length));
 		    connection.setRequestProperty("Content-Language", LANGUAGE);  
+		    connection.setRequestProperty("Connection", "keep-alive");
 					
 		    connection.setUseCaches (false);
 		    connection.setDoInput(true);
 		    connection.setDoOutput(true);
+		    connection.setFixedLengthStreamingMode(body.length);
 
 		    //Send request
-		    DataOutputStream wr = new DataOutputStream (
-		                  connection.getOutputStream ());
-		    wr.writeBytes (urlParameters);
+		    OutputStream wr = connection.getOutputStream();
+		    wr.write(body);
 		    wr.flush ();
 		    wr.close ();
+		    
+		    SrlMetrics counter = metrics;
+		    if (counter != null) {
+		    	counter.addBytesSent(body.length);
+		    }
 
 		    //Get Response	
-		    InputStream is = connection.getInputStream();
-		    
-		    BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-		    String line;
-		    StringBuffer response = new StringBuffer(); 
+		    InputStream is;
+		    try {
+		    	is = counting(connection.getInputStream(), counter);
+		    } catch (IOException e) {
+		    	int status = connection.getResponseCode();
+		    	// the error body has to be consumed too, otherwise 
+		    	// the socket can't go back to the keep-alive cache
+		    	drain(connection.getErrorStream());
+		    	if (status > 0) {
+		    		throw new SrlRequestException("SRL server answered HTTP " + status, status, e);
+		    	}
+		    	throw e;
+		    }
 		    
-		    while((line = rd.readLine()) != null) {
-		    	response.append(line);
-		    	response.append('\r');
+		    // the body is decoded as it arrives and passed to the handler
+		    String contentType = connection.getContentType();
+		    boolean sparse = contentType != null && contentType.startsWith(SPARSE_CONLL_TYPE);
+		    Reader rd = new InputStreamReader(decompress(is, connection.getContentEncoding()), CHARSET);
+		    T response;
+		    try {
+		    	response = handler.read(rd, sparse);
+		    	// the rest of the body (if the handler stopped early) has to 
+		    	// be consumed, otherwise the socket can't be reused
+		    	drain(is);
+		    } finally {
+		    	// closing the fully read stream (without disconnect()) 
+		    	// keeps the connection alive for the next request
+		    	rd.close();
 		    }
-		    rd.close();
 		    
-		    // return response
-		    return response.toString();
+		    return response;
 	
+		} catch (SrlRequestException e) {
+			// error status, the connection itself is fine
+			throw e;
+			
 		} catch (Exception e) {
 			e.printStackTrace();
-			throw new GateRuntimeException("Error during communication with SRL server!");
-	
-		} finally {
+			// broken connection must not be reused
 			if (connection != null) {
 				connection.disconnect(); 
 		    }
+			throw new SrlRequestException("Error during communication with SRL server!", -1, e);
+	
+		} finally {
+			connectionPool.release();
 		}
     }
+    
+    /**
+     * Queues form encoded parameters for the non-blocking client, the 
+     * response is read when it has fully arrived.
+     * 
+     * @param urlParameters request body
+     * @param handler reads the response body
+     * @param compact ask for the compact response format
+     * @param timeoutMillis max. duration of the request in ms, 0 = no limit
+     * @return future result of the handler
+     */
+    private <T> CompletableFuture<T> postAsync(String urlParameters, 
+    		final ResponseHandler<T> handler, final boolean compact, long timeoutMillis) {
+    	final CompletableFuture<T> result = new CompletableFuture<T>();
+    	final byte[] body;
+    	try {
+    		body = urlParameters.getBytes(CHARSET);
+    	} catch (UnsupportedEncodingException e) {
+    		throw new GateRuntimeException(e);
+    	}
+    	
+    	final long deadline = (timeoutMillis > 0) ? System.currentTimeMillis() + timeoutMillis : 0;
+    	if (timeoutMillis > 0) {
+    		final ScheduledFuture<?> timeout = getTimeouts().schedule(new Runnable() {
+    			public void run() {
+    				result.completeExceptionally(new SrlRequestException("SRL request deadline exceeded", true));
+    			}
+    		}, timeoutMillis, TimeUnit.MILLISECONDS);
+    		// finished request leaves the queue of timeouts at once, so it 
+    		// doesn't keep the result reachable until the timeout runs out
+    		result.whenComplete(new BiConsumer<T, Throwable>() {
+    			public void accept(T response, Throwable error) {
+    				timeout.cancel(false);
+    			}
+    		});
+    	}
+    	
+    	asyncWaiting.add(new Runnable() {
+    		public void run() {
+    			if (result.isDone()) {
+    				// cancelled or timed out in the queue
+    				asyncInFlight.decrementAndGet();
+    				return;
+    			}
+    			sendAsync(result, body, handler, compact, deadline);
+    		}
+    	});
+    	startWaiting();
+    	return result;
+    }
+    
+    /**
+     * Sends waiting asynchronous requests while there is room for them.
+     */
+    private void startWaiting() {
+    	while (!asyncWaiting.isEmpty()) {
+    		int inFlight = asyncInFlight.get();
+    		if (inFlight >= maxAsyncRequests) {
+    			return;
+    		}
+    		if (!asyncInFlight.compareAndSet(inFlight, inFlight + 1)) {
+    			continue;
+    		}
+    		Runnable next = asyncWaiting.poll();
+    		if (next == null) {
+    			// taken by another thread
+    			asyncInFlight.decrementAndGet();
+    		} else {
+    			next.run();
+    		}
+    	}
+    }
+    
+    /**
+     * An asynchronous request ended, the next one can be sent.
+     */
+    private void finishAsync() {
+    	asyncInFlight.decrementAndGet();
+    	startWaiting();
+    }
+    
+    /**
+     * Sends an asynchronous request and completes its future.
+     * 
+     * @param result future of the request
+     * @param body request body
+     * @param handler reads the response body
+     * @param compact ask for the compact response format
+     * @param deadline time (ms) the request ends at, 0 = no limit
+     */
+    private <T> void sendAsync(final CompletableFuture<T> result, byte[] body, 
+    		final ResponseHandler<T> handler, boolean compact, long deadline) {
+    	final CompletableFuture<HttpResponse<byte[]>> exchange;
+    	final CancellableBody responseBody = new CancellableBody();
+    	final SrlMetrics counter = metrics;
+    	try {
+    		HttpRequest.Builder request = HttpRequest.newBuilder(srlUrl.toURI())
+    				.header("Content-Type", CONTENT_TYPE)
+    				.header("Accept", compact ? ACCEPT_SPARSE : ACCEPT)
+    				.header("Content-Language", LANGUAGE)
+    				.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    		if (compression) {
+    			request.header("Accept-Encoding", ACCEPT_ENCODING);
+    		}
+    		if (deadline > 0) {
+    			// until the response headers arrive
+    			request.timeout(Duration.ofMillis(Math.max(1, deadline - System.currentTimeMillis())));
+    		}
+    		exchange = getAsyncClient().sendAsync(request.build(), 
+    				new HttpResponse.BodyHandler<byte[]>() {
+    			public HttpResponse.BodySubscriber<byte[]> apply(HttpResponse.ResponseInfo info) {
+    				return responseBody;
+    			}
+    		});
+    		
+    	} catch (Exception e) {
+    		finishAsync();
+    		result.completeExceptionally(new SrlRequestException(
+    				"Error during communication with SRL server!", -1, e));
+    		return;
+    	}
+    	if (counter != null) {
+    		counter.addBytesSent(body.length);
+    	}
+    	
+    	exchange.whenComplete(new BiConsumer<HttpResponse<byte[]>, Throwable>() {
+    		public void accept(HttpResponse<byte[]> response, Throwable error) {
+    			finishAsync();
+    			if (error != null) {
+    				result.completeExceptionally(asyncError(error));
+    				return;
+    			}
+    			try {
+    				result.complete(read(response, handler, counter));
+    			} catch (SrlRequestException e) {
+    				result.completeExceptionally(e);
+    			} catch (Exception e) {
+    				result.completeExceptionally(new SrlRequestException(
+    						"Error during communication with SRL server!", -1, e));
+    			}
+    		}
+    	});
+    	
+    	// cancelled or timed out request stops the exchange: cancelling the 
+    	// body subscription releases the stream or connection (cancelling 
+    	// the future of sendAsync does so only since JDK 16)
+    	result.whenComplete(new BiConsumer<T, Throwable>() {
+    		public void accept(T response, Throwable error) {
+    			if (!exchange.isDone()) {
+    				responseBody.cancel();
+    				exchange.cancel(true);
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * Body of an asynchronous response collected into a byte array, 
+     * which can be cancelled while it arrives.
+     */
+    private static class CancellableBody implements HttpResponse.BodySubscriber<byte[]> {
+    	
+    	private final HttpResponse.BodySubscriber<byte[]> bytes = 
+    			HttpResponse.BodySubscribers.ofByteArray();
+    	
+    	/** Subscription of the body, null until the headers arrive */
+    	private Flow.Subscription subscription;
+    	
+    	private boolean cancelled;
+    	
+    	public CompletionStage<byte[]> getBody() {
+    		return bytes.getBody();
+    	}
+    	
+    	public void onSubscribe(Flow.Subscription subscription) {
+    		boolean cancel;
+    		synchronized (this) {
+    			this.subscription = subscription;
+    			cancel = cancelled;
+    		}
+    		if (cancel) {
+    			stop(subscription);
+    		} else {
+    			bytes.onSubscribe(subscription);
+    		}
+    	}
+    	
+    	public void onNext(List<ByteBuffer> item) {
+    		bytes.onNext(item);
+    	}
+    	
+    	public void onError(Throwable throwable) {
+    		bytes.onError(throwable);
+    	}
+    	
+    	public void onComplete() {
+    		bytes.onComplete();
+    	}
+    	
+    	/**
+    	 * Stops the body, at once or when the headers arrive.
+    	 */
+    	void cancel() {
+    		Flow.Subscription current;
+    		synchronized (this) {
+    			cancelled = true;
+    			current = subscription;
+    		}
+    		if (current != null) {
+    			stop(current);
+    		}
+    	}
+    	
+    	/**
+    	 * Cancels the subscription and ends the body, so that the 
+    	 * exchange completes (and frees its place among requests in flight).
+    	 */
+    	private void stop(Flow.Subscription current) {
+    		current.cancel();
+    		bytes.onError(new CancellationException("SRL request cancelled"));
+    	}
+    }
+    
+    /**
+     * Reads the fully arrived response of an asynchronous request.
+     * 
+     * @param response response with its body
+     * @param handler reads the response body
+     * @param counter metrics, null = not counted
+     * @return result of the handler
+     * @throws IOException if the body can't be decoded
+     */
+    private <T> T read(HttpResponse<byte[]> response, ResponseHandler<T> handler, 
+    		SrlMetrics counter) throws IOException {
+    	byte[] body = response.body();
+    	if (counter != null) {
+    		counter.addBytesReceived(body.length);
+    	}
+    	int status = response.statusCode();
+    	if (status >= 400) {
+    		throw new SrlRequestException("SRL server answered HTTP " + status, status, null);
+    	}
+    	
+    	String contentType = response.headers().firstValue("Content-Type").orElse(null);
+    	boolean sparse = contentType != null && contentType.startsWith(SPARSE_CONLL_TYPE);
+    	Reader rd = new InputStreamReader(decompress(new ByteArrayInputStream(body), 
+    			response.headers().firstValue("Content-Encoding").orElse(null)), CHARSET);
+    	try {
+    		return handler.read(rd, sparse);
+    	} finally {
+    		rd.close();
+    	}
+    }
+    
+    /**
+     * Failure of an asynchronous exchange as the exception of the 
+     * blocking requests.
+     */
+    private static Throwable asyncError(Throwable error) {
+    	if (error instanceof CompletionException && error.getCause() != null) {
+    		error = error.getCause();
+    	}
+    	if (error instanceof CancellationException || error instanceof SrlRequestException) {
+    		return error;
+    	}
+    	if (error instanceof HttpTimeoutException) {
+    		return new SrlRequestException("SRL request deadline exceeded", true);
+    	}
+    	return new SrlRequestException("Error during communication with SRL server!", -1, error);
+    }
+    
+    /**
+     * Returns the daemon thread ending asynchronous requests which run 
+     * out of time. Cancelled timeouts are removed from its queue.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getTimeouts() {
+    	if (timeouts == null) {
+    		timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread thread = new Thread(r, "SRL-timeouts");
+    				thread.setDaemon(true);
+    				return thread;
+    			}
+    		});
+    		timeouts.setRemoveOnCancelPolicy(true);
+    	}
+    	return timeouts;
+    }
+    
+    /**
+     * Returns the client of asynchronous requests. It asks for HTTP/2 
+     * (by ALPN over TLS, by an upgrade of the first request over plain 
+     * HTTP) and falls back to HTTP/1.1.
+     */
+    private HttpClient getAsyncClient() {
+    	HttpClient client = asyncClient;
+    	if (client == null) {
+    		synchronized (this) {
+    			if (asyncClient == null) {
+    				HttpClient.Builder builder = HttpClient.newBuilder()
+    						.version(HttpClient.Version.HTTP_2);
+    				if (connectTimeout > 0) {
+    					builder.connectTimeout(Duration.ofMillis(connectTimeout));
+    				}
+    				asyncClient = builder.build();
+    			}
+    			client = asyncClient;
+    		}
+    	}
+    	return client;
+    }
+    
+    /**
+     * Stream counting the bytes read from the response body.
+     * 
+     * @param is response stream
+     * @param counter metrics, null = not counted
+     * @return stream adding its bytes to the metrics when closed
+     */
+    private static InputStream counting(InputStream is, final SrlMetrics counter) {
+    	if (counter == null) {
+    		return is;
+    	}
+    	return new FilterInputStream(is) {
+    		
+    		/** Bytes read so far, added to the metrics once */
+    		private long count;
+    		
+    		public int read() throws IOException {
+    			int b = super.read();
+    			if (b != -1) {
+    				count++;
+    			}
+    			return b;
+    		}
+    		
+    		public int read(byte[] b, int off, int len) throws IOException {
+    			int read = super.read(b, off, len);
+    			if (read > 0) {
+    				count += read;
+    			}
+    			return read;
+    		}
+    		
+    		public long skip(long n) throws IOException {
+    			long skipped = super.skip(n);
+    			count += skipped;
+    			return skipped;
+    		}
+    		
+    		public void close() throws IOException {
+    			counter.addBytesReceived(count);
+    			count = 0;
+    			super.close();
+    		}
+    	};
+    }
+    
+    /**
+     * Stream of the response body without its content encoding.
+     * 
+     * @param is response stream
+     * @param contentEncoding Content-Encoding header, can be null
+     * @return decompressed stream
+     * @throws IOException if the gzip header is broken
+     */
+    private static InputStream decompress(InputStream is, String contentEncoding) throws IOException {
+    	if ("gzip".equalsIgnoreCase(contentEncoding)) {
+    		return new GZIPInputStream(is, BUFFER_SIZE);
+    	}
+    	if ("deflate".equalsIgnoreCase(contentEncoding)) {
+    		return new InflaterInputStream(is, new Inflater(), BUFFER_SIZE);
+    	}
+    	return is;
+    }
+    
+    /**
+     * Reads the response body.
+     */
+    private interface ResponseHandler<T> {
+    	
+    	/**
+    	 * @param body decoded response body
+    	 * @param sparse body is in the compact format
+    	 * @return result of the request
+    	 */
+    	T read(Reader body, boolean sparse) throws IOException;
+    }
+    
+    /** Whole response as a String (ordinary CoNLL) */
+    private static final ResponseHandler<String> TEXT = new ResponseHandler<String>() {
+    	public String read(Reader body, boolean sparse) throws IOException {
+    		if (sparse) {
+    			// not asked for, but rewrite it rather than fail
+    			StringWriter response = new StringWriter(BUFFER_SIZE);
+    			CoNLLWriter writer = new CoNLLWriter(response);
+    			for (Sentence sentence : SENTENCES.read(body, true)) {
+    				writer.write(sentence);
+    			}
+    			return response.toString();
+    		}
+    		
+    		StringBuilder response = new StringBuilder(BUFFER_SIZE);
+    		char[] buffer = new char[BUFFER_SIZE];
+    		int read;
+    		while ((read = body.read(buffer)) != -1) {
+    			response.append(buffer, 0, read);
+    		}
+    		return response.toString();
+    	}
+    };
+    
+    /** Sentences of the response separated by an empty line */
+    private static final ResponseHandler<List<Sentence>> SENTENCES = new ResponseHandler<List<Sentence>>() {
+    	public List<Sentence> read(Reader body, boolean sparse) {
+    		List<Sentence> sentences = new ArrayList<Sentence>();
+    		CoNLLReader reader = new CoNLLReader(body, BUFFER_SIZE);
+    		reader.setSparse(sparse);
+    		for (Sentence sentence : reader) {
+    			sentences.add(sentence);
+    		}
+    		return sentences;
+    	}
+    };
+    
+    /** All rows of the response in one sentence */
+    private static final ResponseHandler<Sentence> SENTENCE = new ResponseHandler<Sentence>() {
+    	public Sentence read(Reader body, boolean sparse) {
+    		CoNLLReader reader = new CoNLLReader(body, BUFFER_SIZE);
+    		reader.setSparse(sparse);
+    		return new Parser().parse(reader);
+    	}
+    };
+    
+    /**
+     * Reads the rest of the stream and closes it.
+     * 
+     * @param is stream to drain, can be null
+     */
+    private static void drain(InputStream is) {
+    	if (is == null) {
+    		return;
+    	}
+    	byte[] buffer = new byte[BUFFER_SIZE];
+    	try {
+    		while (is.read(buffer) != -1) {
+    			// nothing to do
+    		}
+    		is.close();
+    	} catch (IOException e) {
+    		// connection is dropped anyway
+    	}
+    }
+    
+    /*
+     * Getters
+     * */
+    
+    public URL getSrlUrl() {
+    	return srlUrl;
+    }
+    
+    public int getConnectTimeout() {
+    	return connectTimeout;
+    }
+    
+    public int getReadTimeout() {
+    	return readTimeout;
+    }
 }
\ No newline at end of file
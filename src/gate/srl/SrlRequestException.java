@@ -0,0 +1,67 @@
+/*
+ * SrlRequestException.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.util.GateRuntimeException;
+
+/**
+ * Failed request to SRL server: network error, error status of the
+ * server, exceeded deadline or a request refused by an open circuit
+ * breaker. Only retryable failures are worth sending again.
+ */
+public class SrlRequestException extends GateRuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/** HTTP status of the response, -1 if there was none */
+	private final int status;
+
+	/** Sending the request again may succeed */
+	private final boolean retryable;
+
+	/**
+	 * Failure with (or without) a response of the server. Network errors,
+	 * server errors (5xx), 408 and 429 are retryable.
+	 *
+	 * @param message description
+	 * @param status HTTP status, -1 if there was no response
+	 * @param cause original exception
+	 */
+	public SrlRequestException(String message, int status, Throwable cause) {
+		super(message, cause);
+		this.status = status;
+		this.retryable = status < 0 || status >= 500 || status == 408 || status == 429;
+	}
+
+	/**
+	 * Failure without a response of the server.
+	 *
+	 * @param message description
+	 * @param retryable sending the request again may succeed
+	 */
+	public SrlRequestException(String message, boolean retryable) {
+		super(message);
+		this.status = -1;
+		this.retryable = retryable;
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	/** HTTP status of the response, -1 if there was none */
+	public int getStatus() {
+		return status;
+	}
+
+	/** Sending the request again may succeed */
+	public boolean isRetryable() {
+		return retryable;
+	}
+
+}
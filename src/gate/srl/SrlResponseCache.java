@@ -0,0 +1,449 @@
+/*
+ * SrlResponseCache.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.util.GateRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Persistent cache of SRL server responses. The key is SHA-1 of the
+ * sentence text and of the namespace (server URL or model tag), the
+ * value is the CoNLL response compressed by deflate.</p>
+ *
+ * <p>Entries are appended to one file:
+ * <code>[20 B key][4 B length][4 B original length][data]</code>.
+ * The index (key to file position) is kept in memory and rebuilt by
+ * scanning the file when the cache is opened. When the file grows over
+ * the size limit, the most recently used entries (up to half of the
+ * limit) are rewritten to a new file and the rest is dropped.</p>
+ *
+ * <p>Caches opened on the same file in one JVM (e.g. by copies of the PR
+ * made for a multi-threaded corpus controller) share one open file and
+ * index, the size limit is the one of the first cache. The file is
+ * closed when the last of them is closed. Methods are thread-safe.</p>
+ */
+public class SrlResponseCache {
+
+	/** Encoding of keys and values */
+	private static final String CHARSET = "UTF-8";
+
+	/** Length of SHA-1 digest */
+	private static final int KEY_LENGTH = 20;
+
+	/** Length of record header (key + 2 lengths) */
+	private static final int HEADER_LENGTH = KEY_LENGTH + 8;
+
+	/** Open cache files, key is the canonical path */
+	private static final Map<String, Store> STORES = new HashMap<String, Store>();
+
+	/** Shared file and index */
+	private Store store;
+
+	/** Prefix of all keys (server URL or model tag) */
+	private String namespace;
+
+	/** Number of requests answered from the cache */
+	private AtomicLong hits = new AtomicLong();
+
+	/** Number of requests not found in the cache */
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Opens (or creates) the cache file, or joins the caches which have
+	 * it open already.
+	 *
+	 * @param file cache file
+	 * @param maxBytes max. size of the file
+	 * @param namespace server URL or model tag, responses of different
+	 * 			servers or models are not mixed
+	 * @throws IOException if the file can't be opened
+	 */
+	public SrlResponseCache(File file, long maxBytes, String namespace) throws IOException {
+		this.namespace = namespace;
+
+		String path = file.getCanonicalPath();
+		synchronized (STORES) {
+			Store shared = STORES.get(path);
+			if (shared == null) {
+				shared = new Store(file, maxBytes);
+				STORES.put(path, shared);
+			}
+			shared.users++;
+			this.store = shared;
+		}
+	}
+
+	/**
+	 * Returns cached response of the sentence.
+	 *
+	 * @param sentence sentence text
+	 * @return response or null if it is not cached
+	 */
+	public String get(String sentence) {
+		String response = store.get(key(sentence));
+		if (response == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return response;
+	}
+
+	/**
+	 * Stores response of the sentence.
+	 *
+	 * @param sentence sentence text
+	 * @param response response of SRL server
+	 */
+	public void put(String sentence, String response) {
+		store.put(key(sentence), response);
+	}
+
+	/**
+	 * Closes the cache, the file is closed when no other cache uses it.
+	 */
+	public void close() {
+		synchronized (STORES) {
+			if (store == null) {
+				return;
+			}
+			if (--store.users == 0) {
+				STORES.values().remove(store);
+				store.close();
+			}
+			store = null;
+		}
+	}
+
+	/**
+	 * Key of the sentence.
+	 */
+	private Key key(String sentence) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			sha1.update(namespace.getBytes(CHARSET));
+			sha1.update((byte) 0);
+			sha1.update(sentence.getBytes(CHARSET));
+			return new Key(sha1.digest());
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new GateRuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new GateRuntimeException(e);
+		}
+	}
+
+	private static byte[] deflate(byte[] original) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(original);
+		deflater.finish();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(original.length / 4 + 16);
+		byte[] buffer = new byte[4096];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	private static byte[] inflate(byte[] compressed, int originalLength) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+
+		byte[] original = new byte[originalLength];
+		int length = 0;
+		while (length < originalLength && !inflater.finished()) {
+			int read = inflater.inflate(original, length, originalLength - length);
+			if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+				break;
+			}
+			length += read;
+		}
+		inflater.end();
+
+		if (length != originalLength) {
+			throw new DataFormatException("Broken cache record");
+		}
+		return original;
+	}
+
+	/*
+	 * Getters
+	 * */
+
+	/** Number of requests answered from the cache */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Number of requests not found in the cache */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Number of cached responses (of all namespaces) */
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * Cache file opened by one or more caches.
+	 */
+	private static class Store {
+
+		/** Cache file */
+		private File file;
+
+		/** Opened cache file */
+		private RandomAccessFile data;
+
+		/** Max. size of the file in bytes */
+		private long maxBytes;
+
+		/** Size of the file which starts compaction, raised after a failed one */
+		private long compactAt;
+
+		/** Key -> record, iteration from least to most recently used */
+		private LinkedHashMap<Key, Entry> index;
+
+		/** Number of caches using the file, guarded by STORES */
+		private int users;
+
+		Store(File file, long maxBytes) throws IOException {
+			this.file = file;
+			this.maxBytes = maxBytes;
+			this.compactAt = maxBytes;
+			this.index = new LinkedHashMap<Key, Entry>(1024, 0.75f, true);
+
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			this.data = new RandomAccessFile(file, "rw");
+			load();
+		}
+
+		synchronized String get(Key key) {
+			Entry entry = index.get(key);
+			if (entry == null) {
+				return null;
+			}
+
+			try {
+				byte[] compressed = new byte[entry.length];
+				data.seek(entry.position + HEADER_LENGTH);
+				data.readFully(compressed);
+				return new String(inflate(compressed, entry.originalLength), CHARSET);
+
+			} catch (Exception e) {
+				// broken record, behave as if it was not there
+				e.printStackTrace();
+				index.remove(key);
+				return null;
+			}
+		}
+
+		synchronized void put(Key key, String response) {
+			try {
+				byte[] original = response.getBytes(CHARSET);
+				byte[] compressed = deflate(original);
+
+				long position = data.length();
+				data.seek(position);
+				data.write(key.digest);
+				data.writeInt(compressed.length);
+				data.writeInt(original.length);
+				data.write(compressed);
+
+				index.put(key, new Entry(position, compressed.length, original.length));
+
+				if (maxBytes > 0 && data.length() > compactAt) {
+					compact();
+				}
+
+			} catch (IOException e) {
+				throw new GateRuntimeException("Error writing SRL cache " + file, e);
+			}
+		}
+
+		synchronized int size() {
+			return index.size();
+		}
+
+		synchronized void close() {
+			try {
+				data.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Builds the index from the cache file. Incomplete record at the
+		 * end (e.g. after a crash) is cut off.
+		 */
+		private void load() throws IOException {
+			long position = 0;
+			long length = data.length();
+			byte[] digest = new byte[KEY_LENGTH];
+
+			data.seek(0);
+			try {
+				while (position + HEADER_LENGTH <= length) {
+					data.readFully(digest);
+					int compressedLength = data.readInt();
+					int originalLength = data.readInt();
+					if (compressedLength < 0 || originalLength < 0
+							|| position + HEADER_LENGTH + compressedLength > length) {
+						break;
+					}
+					data.seek(position + HEADER_LENGTH + compressedLength);
+
+					index.put(new Key(digest.clone()),
+							new Entry(position, compressedLength, originalLength));
+					position += HEADER_LENGTH + compressedLength;
+				}
+			} catch (EOFException e) {
+				// incomplete record
+			}
+
+			if (position < length) {
+				data.setLength(position);
+			}
+		}
+
+		/**
+		 * Rewrites the most recently used entries (up to half of the limit)
+		 * to a new file. If the file can't be replaced, the cache goes on
+		 * with the old file (or an empty one if the old one is gone) and
+		 * the next compaction waits until the file grows by the limit again.
+		 *
+		 * @throws GateRuntimeException if the file can't be replaced
+		 */
+		private void compact() throws IOException {
+			// from least to most recently used
+			List<Map.Entry<Key, Entry>> entries = new ArrayList<Map.Entry<Key, Entry>>(index.entrySet());
+			long budget = maxBytes / 2;
+
+			File tmpFile = new File(file.getPath() + ".tmp");
+			RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw");
+			tmp.setLength(0);
+			LinkedHashMap<Key, Entry> newIndex = new LinkedHashMap<Key, Entry>(1024, 0.75f, true);
+			List<Map.Entry<Key, Entry>> kept = new ArrayList<Map.Entry<Key, Entry>>();
+
+			// keep the most recently used entries
+			long size = 0;
+			for (int i = entries.size() - 1; i >= 0; i--) {
+				Entry entry = entries.get(i).getValue();
+				if (size + HEADER_LENGTH + entry.length > budget) {
+					break;
+				}
+				size += HEADER_LENGTH + entry.length;
+				kept.add(entries.get(i));
+			}
+
+			try {
+				// write in LRU -> MRU order, so the order survives reopening
+				for (int i = kept.size() - 1; i >= 0; i--) {
+					Entry entry = kept.get(i).getValue();
+					byte[] record = new byte[HEADER_LENGTH + entry.length];
+					data.seek(entry.position);
+					data.readFully(record);
+
+					long position = tmp.length();
+					tmp.seek(position);
+					tmp.write(record);
+					newIndex.put(kept.get(i).getKey(), new Entry(position, entry.length, entry.originalLength));
+				}
+			} finally {
+				tmp.close();
+			}
+
+			data.close();
+			// rename replaces the file at once where the system allows it
+			boolean replaced = tmpFile.renameTo(file) || (file.delete() && tmpFile.renameTo(file));
+			if (replaced) {
+				index = newIndex;
+			} else {
+				tmpFile.delete();
+				if (!file.exists()) {
+					index.clear();
+				}
+			}
+			data = new RandomAccessFile(file, "rw");
+
+			if (replaced) {
+				compactAt = maxBytes;
+			} else {
+				// not again for every put, each attempt copies half of the cache
+				compactAt = data.length() + maxBytes;
+				throw new GateRuntimeException("Can't replace SRL cache " + file + " by its compacted copy");
+			}
+		}
+	}
+
+	/**
+	 * SHA-1 digest usable as a map key.
+	 */
+	private static class Key {
+
+		private byte[] digest;
+
+		private int hash;
+
+		Key(byte[] digest) {
+			this.digest = digest;
+			this.hash = Arrays.hashCode(digest);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Key && Arrays.equals(digest, ((Key) other).digest);
+		}
+	}
+
+	/**
+	 * Position of a record in the file.
+	 */
+	private static class Entry {
+
+		private long position;
+
+		private int length;
+
+		private int originalLength;
+
+		Entry(long position, int length, int originalLength) {
+			this.position = position;
+			this.length = length;
+			this.originalLength = originalLength;
+		}
+	}
+
+}
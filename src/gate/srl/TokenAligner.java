@@ -0,0 +1,180 @@
+/*
+ * TokenAligner.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.Annotation;
+
+import java.util.List;
+
+/**
+ * <p>Maps words of a parsed sentence to character offsets in the
+ * document. Words are searched one after another from the start of
+ * the sentence, so the whole sentence is aligned in one linear pass
+ * and every word gets at most one position.</p>
+ *
+ * <p>Tokens the server normalised (e.g. brackets written as
+ * <code>-LRB-</code>, quotes as <code>``</code>) are matched against
+ * their original characters. Words which can't be found stay
+ * unaligned (offset -1).</p>
+ */
+public class TokenAligner {
+
+	/** Normalised token forms and their possible surface forms */
+	private static final String[][] SURFACE_FORMS = {
+		{"-LRB-", "("}, {"-RRB-", ")"},
+		{"-LSB-", "["}, {"-RSB-", "]"},
+		{"-LCB-", "{"}, {"-RCB-", "}"},
+		{"``", "\"", "\u201C", "``"}, {"''", "\"", "\u201D", "''"},
+		{"`", "'", "\u2018", "`"}, {"'", "'", "\u2019"}
+	};
+
+	/** Start offsets of words (position in sentence = index) */
+	private long[] starts;
+
+	/** End offsets of words (position in sentence = index) */
+	private long[] ends;
+
+	/**
+	 * Aligns the words with the text of the sentence.
+	 *
+	 * @param forms word forms of the sentence in the order of their ids
+	 * @param documentString document text
+	 * @param sentenceStart start offset of the sentence
+	 * @param sentenceEnd end offset of the sentence
+	 */
+	public TokenAligner(String[] forms, String documentString,
+			long sentenceStart, long sentenceEnd) {
+		this.starts = new long[forms.length];
+		this.ends = new long[forms.length];
+
+		int end = (int) Math.min(sentenceEnd, documentString.length());
+		int cursor = (int) sentenceStart;
+
+		for (int i = 0; i < forms.length; i++) {
+			starts[i] = -1;
+			ends[i] = -1;
+
+			// skip white spaces between the words
+			while (cursor < end && Character.isWhitespace(documentString.charAt(cursor))) {
+				cursor++;
+			}
+
+			String[] surfaces = surfaceForms(forms[i]);
+
+			// the word usually starts right at the cursor
+			for (int f = 0; f < surfaces.length && starts[i] < 0; f++) {
+				if (surfaces[f].length() > 0 && cursor + surfaces[f].length() <= end
+						&& documentString.startsWith(surfaces[f], cursor)) {
+					starts[i] = cursor;
+					ends[i] = cursor + surfaces[f].length();
+				}
+			}
+
+			// otherwise look further in the sentence (skipped characters)
+			for (int f = 0; f < surfaces.length && starts[i] < 0; f++) {
+				if (surfaces[f].length() == 0) {
+					continue;
+				}
+				int found = find(documentString, surfaces[f], cursor, end);
+				if (found >= 0) {
+					starts[i] = found;
+					ends[i] = found + surfaces[f].length();
+				}
+			}
+
+			if (starts[i] >= 0) {
+				cursor = (int) ends[i];
+			}
+		}
+	}
+
+	/**
+	 * Takes offsets of the words from token annotations the sentence
+	 * was built of (pre-tokenized input), no text is searched.
+	 *
+	 * @param tokens token annotations in the order of word ids
+	 */
+	public TokenAligner(List<Annotation> tokens) {
+		this.starts = new long[tokens.size()];
+		this.ends = new long[tokens.size()];
+
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = tokens.get(i).getStartNode().getOffset();
+			ends[i] = tokens.get(i).getEndNode().getOffset();
+		}
+	}
+
+	/**
+	 * Finds the form within the given part of the text.
+	 *
+	 * @param text text to search
+	 * @param form string to find
+	 * @param from start of the searched part
+	 * @param to end of the searched part
+	 * @return offset of the form, -1 if not found
+	 */
+	private static int find(String text, String form, int from, int to) {
+		for (int i = from; i + form.length() <= to; i++) {
+			if (text.startsWith(form, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Possible surface forms of a word.
+	 *
+	 * @param form word form given by the server
+	 * @return form itself and its un-normalised variants
+	 */
+	private static String[] surfaceForms(String form) {
+		for (String[] forms : SURFACE_FORMS) {
+			if (forms[0].equals(form)) {
+				String[] result = new String[forms.length - 1];
+				System.arraycopy(forms, 1, result, 0, result.length);
+				return result;
+			}
+		}
+		return new String[] {form};
+	}
+
+	/**
+	 * @param index position of the word in the sentence
+	 * @return start offset of the word, -1 if not aligned
+	 */
+	public long getStart(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * @param index position of the word in the sentence
+	 * @return end offset of the word, -1 if not aligned
+	 */
+	public long getEnd(int index) {
+		return ends[index];
+	}
+
+	/**
+	 * @param index position of the word in the sentence
+	 * @return true if the word was found in the text
+	 */
+	public boolean isAligned(int index) {
+		return index >= 0 && index < starts.length && starts[index] >= 0;
+	}
+
+	/**
+	 * Number of aligned words.
+	 *
+	 * @return size of the sentence
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+}
@@ -0,0 +1,238 @@
+/*
+ * IncrementalModeTest.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.Gate;
+import gate.corpora.DocumentContentImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Incremental mode on a document processed twice by the replay backend
+ * (no SRL server needed): SRL annotations of unchanged sentences survive,
+ * those of a moved sentence are shifted (or sent again when the structure
+ * is stored), those of an edited sentence or of a sentence with a missing
+ * annotation are replaced.
+ */
+public class IncrementalModeTest extends TestCase {
+
+	/** Type of the annotations made by the PR */
+	private static final String SRL_TYPE = "SRL";
+
+	private static final String TEXT =
+			"Alice loves pizza. Carol eats soup. Hello Dave sells cars. Bob hates tea. Bob hates tea.";
+
+	private Document document;
+
+	private SRL srl;
+
+	/** Sentences: losing an annotation, edited, without arguments, unchanged, moved */
+	private Annotation missing, edited, empty, unchanged, moved;
+
+	/** SRL annotation ids of the first run */
+	private List<Integer> missingIds, editedIds, unchangedIds, movedIds;
+
+	/** Starts of the SRL annotations of the moved sentence after the edits */
+	private List<Long> shifted;
+
+	protected void setUp() throws Exception {
+		if (!Gate.isInitialised()) {
+			Gate.init();
+		}
+		document = Factory.newDocument(TEXT);
+		missing = sentence("Alice loves pizza.");
+		edited = sentence("Carol eats soup.");
+		empty = sentence("Hello");
+		unchanged = sentence("Dave sells cars.");
+		// the second copy of the sentence stays without annotation
+		moved = sentence("Bob hates tea.");
+	}
+
+	protected void tearDown() {
+		if (srl != null) {
+			srl.cleanup();
+		}
+		Factory.deleteResource(document);
+	}
+
+	public void testSecondRun() throws Exception {
+		firstRun(false);
+		edit();
+		srl.execute();
+
+		// only the edited sentence and the one with the missing annotation are sent
+		assertEquals(2, sent());
+		assertSecondRun();
+	}
+
+	public void testSecondRunWithStructure() throws Exception {
+		firstRun(true);
+		edit();
+		srl.execute();
+
+		// the moved sentence has a new id, unknown to the stored structure
+		assertEquals(3, sent());
+		assertSecondRun();
+
+		// the structure has the arguments of the kept sentences too
+		SrlDocumentStructure structure = SrlDocumentStructure.get(document);
+		assertEquals(8, structure.getArgumentCount());
+		int movedIndex = structure.findSentence(moved.getStartNode().getOffset());
+		assertEquals(moved.getId().intValue(), structure.getSentenceId(movedIndex));
+		assertEquals(shifted.get(0).longValue(), structure.getPredicates(movedIndex)
+				.get(0).getArguments().get(0).getStart());
+		int unchangedIndex = structure.findSentence(unchanged.getStartNode().getOffset());
+		assertEquals(unchanged.getId().intValue(), structure.getSentenceId(unchangedIndex));
+	}
+
+	/**
+	 * Runs a new PR on the document and records the annotation ids.
+	 */
+	private void firstRun(boolean storeStructure) throws Exception {
+		srl = new SRL();
+		srl.setSrlBackend(SRL.BACKEND_REPLAY);
+		srl.setIncrementalMode(true);
+		srl.setStoreStructure(storeStructure);
+		srl.setMetricsDocumentFeatures(true);
+		srl.init();
+		srl.setDocument(document);
+		srl.execute();
+
+		assertEquals(5, sent());
+		assertEquals(2, ids(missing).size());
+		assertEquals(2, ids(edited).size());
+		assertEquals(0, ids(empty).size());
+		assertEquals(2, ids(unchanged).size());
+		assertEquals(2, ids(moved).size());
+		assertEquals(8, srlAnnotations().size());
+
+		missingIds = ids(missing);
+		editedIds = ids(edited);
+		unchangedIds = ids(unchanged);
+		movedIds = ids(moved);
+	}
+
+	/**
+	 * Removes an annotation of a sentence, edits another one and moves
+	 * the last one.
+	 */
+	private void edit() throws Exception {
+		List<Long> movedStarts = starts(movedIds);
+
+		// one annotation of the sentence is gone
+		document.getAnnotations().remove(document.getAnnotations().get(missingIds.get(1)));
+		// "soup" -> "bread", following sentences move by one character
+		int soup = TEXT.indexOf("soup");
+		document.edit((long) soup, (long) soup + 4, new DocumentContentImpl("bread"));
+		// the sentence annotation is made again on the second copy (as
+		// by a splitter on imported text), the SRL annotations stay behind
+		long delta = document.getContent().toString().lastIndexOf("Bob hates tea.") 
+				- moved.getStartNode().getOffset();
+		moved = moveSentence(moved, delta);
+
+		shifted = new ArrayList<Long>();
+		for (long start : movedStarts) {
+			shifted.add(start + 1 + delta);
+		}
+	}
+
+	/**
+	 * Checks the annotations after the second run.
+	 */
+	private void assertSecondRun() {
+		assertEquals(8, srlAnnotations().size());
+
+		assertEquals(unchangedIds, ids(unchanged));
+		assertEquals(0, ids(empty).size());
+
+		for (Integer id : missingIds) {
+			assertFalse(ids(missing).contains(id));
+			assertNull(document.getAnnotations().get(id));
+		}
+		assertEquals(2, ids(missing).size());
+
+		for (Integer id : editedIds) {
+			assertNull(document.getAnnotations().get(id));
+		}
+		assertEquals(2, ids(edited).size());
+		assertEquals("bread", document.getAnnotations().get(ids(edited).get(1)).getFeatures()
+				.get(SRL.ARGUMENT_STRING_FEATURE));
+
+		for (Integer id : movedIds) {
+			assertNull(document.getAnnotations().get(id));
+		}
+		assertEquals(shifted, starts(ids(moved)));
+		// nothing is left behind at the old place of the moved sentence
+		assertEquals(6, document.getAnnotations().getContained(0L, moved.getStartNode().getOffset())
+				.get(SRL_TYPE).size());
+	}
+
+	/**
+	 * Adds a Sentence annotation over the first occurrence of the text.
+	 */
+	private Annotation sentence(String text) throws Exception {
+		long start = TEXT.indexOf(text);
+		Integer id = document.getAnnotations().add(start, start + text.length(), "Sentence",
+				Factory.newFeatureMap());
+		return document.getAnnotations().get(id);
+	}
+
+	/**
+	 * Makes the sentence again at another offset with its features.
+	 */
+	private Annotation moveSentence(Annotation sentence, long delta) throws Exception {
+		FeatureMap features = Factory.newFeatureMap();
+		features.putAll(sentence.getFeatures());
+		document.getAnnotations().remove(sentence);
+		Integer id = document.getAnnotations().add(sentence.getStartNode().getOffset() + delta,
+				sentence.getEndNode().getOffset() + delta, "Sentence", features);
+		return document.getAnnotations().get(id);
+	}
+
+	private AnnotationSet srlAnnotations() {
+		return document.getAnnotations().get(SRL_TYPE);
+	}
+
+	/**
+	 * Ids of SRL annotations recorded in the sentence.
+	 */
+	private static List<Integer> ids(Annotation sentence) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Object id : (Collection<?>) sentence.getFeatures().get(SRL.SENTENCE_ANNOTATIONS_FEATURE)) {
+			ids.add((Integer) id);
+		}
+		return ids;
+	}
+
+	private List<Long> starts(List<Integer> ids) {
+		List<Long> starts = new ArrayList<Long>();
+		for (Integer id : ids) {
+			starts.add(document.getAnnotations().get(id).getStartNode().getOffset());
+		}
+		return starts;
+	}
+
+	/**
+	 * Number of sentences sent in the last run.
+	 */
+	private int sent() {
+		Map<?, ?> metrics = (Map<?, ?>) document.getFeatures().get(SRL.METRICS_FEATURE);
+		return ((Number) metrics.get("sentences")).intValue();
+	}
+
+}
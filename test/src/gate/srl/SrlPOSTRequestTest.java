@@ -0,0 +1,166 @@
+/*
+ * SrlPOSTRequestTest.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl;
+
+import gate.srl.server.ReferenceServer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import conll2009.parser.CoNLLWriter;
+import conll2009.parser.Sentence;
+
+/**
+ * Round trips of {@link SrlPOSTRequest} to the {@link ReferenceServer}:
+ * dense, sparse and gzip responses must give the same sentences, and
+ * the negotiated formats must really be used.
+ */
+public class SrlPOSTRequestTest extends TestCase {
+
+	private HttpServer server;
+
+	/** Content-Type and Content-Encoding of each response, in order */
+	private BlockingQueue<String[]> responses;
+
+	private List<String> sentences;
+
+	/** Sentences as analysed by the server, in dense CoNLL */
+	private String expected;
+
+	protected void setUp() throws IOException {
+		final ReferenceServer reference = new ReferenceServer(null);
+		responses = new LinkedBlockingQueue<String[]>();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(ReferenceServer.DEFAULT_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				reference.handle(exchange);
+				responses.add(new String[] {
+						exchange.getResponseHeaders().getFirst("Content-Type"),
+						exchange.getResponseHeaders().getFirst("Content-Encoding")});
+			}
+		});
+		server.start();
+
+		sentences = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			sentences.add("Alice" + i + " loves pizza and Bob" + i + " hates it.");
+		}
+		expected = conll(new ReplaySrlBackend().queryBatchParsed(sentences));
+	}
+
+	protected void tearDown() {
+		server.stop(0);
+	}
+
+	public void testDenseResponse() throws Exception {
+		SrlPOSTRequest client = client(false, false);
+		assertEquals(expected, conll(client.queryBatchParsed(sentences)));
+		assertResponse(false, false);
+
+		assertEquals(expected, client.queryBatch(sentences));
+		assertResponse(false, false);
+
+		assertEquals(conll(new ReplaySrlBackend().queryBatchParsed(sentences.subList(0, 1))),
+				conll(singleton(client.queryParsed(sentences.get(0)))));
+		assertResponse(false, false);
+	}
+
+	public void testSparseResponse() throws Exception {
+		SrlPOSTRequest client = client(true, false);
+		assertEquals(expected, conll(client.queryBatchParsed(sentences)));
+		assertResponse(true, false);
+
+		// text is always asked for in dense rows
+		assertEquals(expected, client.queryBatch(sentences));
+		assertResponse(false, false);
+	}
+
+	public void testGzipResponse() throws Exception {
+		long dense = received(client(false, false));
+		assertResponse(false, false);
+
+		SrlPOSTRequest client = client(false, true);
+		assertEquals(expected, conll(client.queryBatchParsed(sentences)));
+		assertResponse(false, true);
+		assertTrue(received(client) < dense);
+		assertResponse(false, true);
+
+		// the text response is decompressed too
+		assertEquals(expected, client.queryBatch(sentences));
+		assertResponse(false, true);
+	}
+
+	public void testSparseGzipAsyncResponse() throws Exception {
+		SrlPOSTRequest client = client(true, true);
+		assertEquals(expected, conll(client.queryBatchParsedAsync(sentences, 60000).get()));
+		assertResponse(true, true);
+	}
+
+	/**
+	 * Checks the format the server answered the next request in.
+	 */
+	private void assertResponse(boolean sparse, boolean gzip) throws InterruptedException {
+		String[] headers = responses.poll(10, TimeUnit.SECONDS);
+		assertNotNull("no response", headers);
+		assertEquals(sparse, headers[0].startsWith(SrlPOSTRequest.SPARSE_CONLL_TYPE));
+		assertEquals(gzip, "gzip".equals(headers[1]));
+	}
+
+	/**
+	 * Client of the server with its own metrics.
+	 */
+	private SrlPOSTRequest client(boolean sparse, boolean gzip) {
+		SrlPOSTRequest client = new SrlPOSTRequest("http://localhost:" + server.getAddress().getPort()
+				+ ReferenceServer.DEFAULT_PATH, 10000, 60000, 2);
+		client.setCompactFormat(sparse);
+		client.setCompression(gzip);
+		client.setMetrics(new SrlMetrics());
+		return client;
+	}
+
+	/**
+	 * Bytes of one batch response received by the client.
+	 */
+	private long received(SrlPOSTRequest client) {
+		long before = client.getMetrics().getBytesReceived();
+		client.queryBatchParsed(sentences);
+		return client.getMetrics().getBytesReceived() - before;
+	}
+
+	private static List<Sentence> singleton(Sentence sentence) {
+		List<Sentence> list = new ArrayList<Sentence>();
+		list.add(sentence);
+		return list;
+	}
+
+	/**
+	 * Sentences in dense CoNLL 2009.
+	 */
+	private static String conll(List<Sentence> sentences) throws IOException {
+		StringWriter text = new StringWriter();
+		CoNLLWriter writer = new CoNLLWriter(text);
+		for (Sentence sentence : sentences) {
+			writer.write(sentence);
+		}
+		writer.close();
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ * ReferenceServer.java
+ *
+ * Part of Semantic Role Labeling tagger, plugin for GATE.
+ *
+ */
+
+package gate.srl.server;
+
+import gate.srl.ReplaySrlBackend;
+import gate.srl.SrlPOSTRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import conll2009.parser.CoNLLWriter;
+
+/**
+ * <p>Local stand-in of mate-tools SRL server for testing the plugin and
+ * its wire formats without the real models. It speaks the same protocol
+ * as the server used by {@link SrlPOSTRequest}:</p>
+ * <ul>
+ * <li>POST of form parameters, <code>sentence</code> repeated for each
+ * sentence of a batch,</li>
+ * <li><code>inputFormat=conll2009</code> for pre-tokenized sentences
+ * (CoNLL rows with FORM, PLEMMA and PPOS),</li>
+ * <li>CoNLL 2009 response, sentences separated by an empty line; sparse
+ * rows if the <code>Accept</code> header asks for
+ * {@link SrlPOSTRequest#SPARSE_CONLL_TYPE}, gzip if
+ * <code>Accept-Encoding</code> allows it.</li>
+ * </ul>
+ *
+ * <p>Sentences are analysed by {@link ReplaySrlBackend}: those found in
+ * the optional CoNLL file get their analysis from the file, others a
+ * trivial one.</p>
+ *
+ * <p>It is part of the tests, not of the plugin:</p>
+ *
+ * <pre>
+ * java -cp SRL.jar:test/classes gate.srl.server.ReferenceServer [port] [file.conll]
+ * </pre>
+ */
+public class ReferenceServer implements HttpHandler {
+
+	/** Port of the default SRL server URL */
+	public static final int DEFAULT_PORT = 8072;
+
+	/** Path of the default SRL server URL */
+	public static final String DEFAULT_PATH = "/parse";
+
+	/** Encoding of requests and responses */
+	private static final String CHARSET = "UTF-8";
+
+	/** Value of inputFormat parameter for pre-tokenized sentences */
+	private static final String CONLL_INPUT_FORMAT = "conll2009";
+
+	/** Analysis of the sentences */
+	private final ReplaySrlBackend backend;
+
+	/** Running server */
+	private HttpServer server;
+
+	/** Threads handling requests */
+	private ExecutorService executor;
+
+	/**
+	 * @param conllFile sentences answered with their own analysis, can be null
+	 * @throws IOException if the file can't be read
+	 */
+	public ReferenceServer(File conllFile) throws IOException {
+		this.backend = new ReplaySrlBackend(conllFile);
+	}
+
+	/**
+	 * Starts listening.
+	 *
+	 * @param port port, 0 for any free port
+	 * @throws IOException if the port can't be bound
+	 */
+	public synchronized void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(DEFAULT_PATH, this);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return port the server listens on
+	 */
+	public synchronized int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Answers one request.
+	 */
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+				respond(exchange, 405, "text/plain", "Only POST is supported\n".getBytes(CHARSET), false);
+				return;
+			}
+
+			Map<String, List<String>> parameters = parameters(readBody(exchange.getRequestBody()));
+			List<String> sentences = parameters.get("sentence");
+			boolean preTokenized = parameters.containsKey("inputFormat")
+					&& CONLL_INPUT_FORMAT.equals(parameters.get("inputFormat").get(0));
+
+			String accept = exchange.getRequestHeaders().getFirst("Accept");
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			boolean sparse = accept != null && accept.contains(SrlPOSTRequest.SPARSE_CONLL_TYPE);
+			boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			CoNLLWriter writer = new CoNLLWriter(new OutputStreamWriter(body, CHARSET), sparse);
+			if (sentences != null) {
+				for (String sentence : sentences) {
+					writer.write(backend.analyse(sentence, preTokenized));
+				}
+			}
+			writer.close();
+
+			respond(exchange, 200, sparse ? SrlPOSTRequest.SPARSE_CONLL_TYPE : "text/plain",
+					body.toByteArray(), gzip);
+
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			respond(exchange, 500, "text/plain", (e.toString() + "\n").getBytes(CHARSET), false);
+		}
+	}
+
+	/**
+	 * Sends the response and closes the exchange.
+	 */
+	private static void respond(HttpExchange exchange, int status, String contentType,
+			byte[] body, boolean gzip) throws IOException {
+		if (gzip) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+			GZIPOutputStream out = new GZIPOutputStream(compressed);
+			out.write(body);
+			out.close();
+			body = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=" + CHARSET);
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+	/**
+	 * Reads the whole request body.
+	 */
+	private static String readBody(InputStream is) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		is.close();
+		return body.toString(CHARSET);
+	}
+
+	/**
+	 * Decodes form parameters, a name can be repeated.
+	 *
+	 * @param body form encoded request body
+	 * @return name -> values in the order of the request
+	 */
+	static Map<String, List<String>> parameters(String body) throws IOException {
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		for (String pair : body.split("&")) {
+			if (pair.length() == 0) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), CHARSET);
+			String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), CHARSET);
+
+			List<String> values = parameters.get(name);
+			if (values == null) {
+				values = new ArrayList<String>();
+				parameters.put(name, values);
+			}
+			values.add(value);
+		}
+		return parameters;
+	}
+
+	/**
+	 * Runs the server until the process is killed.
+	 *
+	 * @param args [port] [CoNLL file with known sentences]
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		File file = (args.length > 1) ? new File(args[1]) : null;
+
+		ReferenceServer server = new ReferenceServer(file);
+		server.start(port);
+
+		System.out.println("SRL reference server: http://localhost:" + server.getPort() + DEFAULT_PATH);
+	}
+
+}